@@ -1,5 +1,6 @@
 package me.jellysquid.mods.sodium.client.gl;
 
+import me.jellysquid.mods.sodium.client.util.staging.StagingRing;
 import net.minecraft.client.render.VertexFormat;
 
 import java.nio.ByteBuffer;
@@ -8,8 +9,68 @@ public class BufferUploadData {
     public final VertexFormat format;
     public final ByteBuffer buffer;
 
+    /**
+     * The range of bytes in the buffer which have changed since the previous upload, or [0, 0) if the entire buffer
+     * must be uploaded. This range can only be used if the buffer's size has not changed since the previous upload.
+     */
+    public final int dirtyStart, dirtyEnd;
+
+    // The copy of the data in a staging buffer, if one was made by the worker thread which built it
+    private GlStagingBuffer stagingBuffer;
+    private StagingRing.Range stagingRange;
+
     public BufferUploadData(ByteBuffer buffer, VertexFormat format) {
+        this(buffer, format, 0, 0);
+    }
+
+    public BufferUploadData(ByteBuffer buffer, VertexFormat format, int dirtyStart, int dirtyEnd) {
         this.format = format;
         this.buffer = buffer;
+        this.dirtyStart = dirtyStart;
+        this.dirtyEnd = dirtyEnd;
+    }
+
+    public boolean isPartial() {
+        return this.dirtyEnd > this.dirtyStart;
+    }
+
+    /**
+     * Copies the data into a staging buffer so that it can be uploaded without going through the driver. If the staging
+     * buffer is full, the data will be uploaded from system memory as usual.
+     */
+    public void stage(GlStagingBuffer stagingBuffer) {
+        StagingRing.Range range = stagingBuffer.write(this.buffer);
+
+        if (range != null) {
+            this.stagingBuffer = stagingBuffer;
+            this.stagingRange = range;
+        }
+    }
+
+    public boolean isStaged() {
+        return this.stagingRange != null && this.stagingBuffer.isHandleValid();
+    }
+
+    /**
+     * Copies {@param length} bytes of the staged data starting at {@param offset} to the same offset of the buffer bound
+     * to {@param target}.
+     */
+    public void copyStaged(int target, int offset, int length) {
+        this.stagingBuffer.copy(this.stagingRange, offset, target, offset, length);
+    }
+
+    /**
+     * Gives up the staged copy of the data, if there is one. This must be called once the data has been uploaded or
+     * will no longer be uploaded, as otherwise the space in the staging buffer will never be re-used.
+     *
+     * @param copied True if the staged data was copied from by {@link BufferUploadData#copyStaged(int, int, int)}
+     */
+    public void releaseStaged(boolean copied) {
+        if (this.stagingRange != null) {
+            this.stagingBuffer.release(this.stagingRange, copied);
+
+            this.stagingBuffer = null;
+            this.stagingRange = null;
+        }
     }
 }
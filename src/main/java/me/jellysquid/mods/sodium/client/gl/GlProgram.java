@@ -0,0 +1,53 @@
+package me.jellysquid.mods.sodium.client.gl;
+
+import org.lwjgl.opengl.GL20;
+
+public class GlProgram extends GlHandle {
+    /**
+     * Links a program from the given shaders. The shaders are no longer needed once the program has been linked and
+     * can be deleted by the caller.
+     */
+    public GlProgram(String name, GlShader... shaders) {
+        int handle = GL20.glCreateProgram();
+
+        for (GlShader shader : shaders) {
+            GL20.glAttachShader(handle, shader.handle());
+        }
+
+        GL20.glLinkProgram(handle);
+
+        for (GlShader shader : shaders) {
+            GL20.glDetachShader(handle, shader.handle());
+        }
+
+        if (GL20.glGetProgrami(handle, GL20.GL_LINK_STATUS) != GL20.GL_TRUE) {
+            String log = GL20.glGetProgramInfoLog(handle);
+            GL20.glDeleteProgram(handle);
+
+            throw new RuntimeException("Failed to link program " + name + ": " + log);
+        }
+
+        this.setHandle(handle);
+    }
+
+    /**
+     * @return The location of the uniform, or -1 if the program does not use it
+     */
+    public int getUniformLocation(String name) {
+        return GL20.glGetUniformLocation(this.handle(), name);
+    }
+
+    public void bind() {
+        GL20.glUseProgram(this.handle());
+    }
+
+    public void unbind() {
+        GL20.glUseProgram(0);
+    }
+
+    public void delete() {
+        GL20.glDeleteProgram(this.handle());
+
+        this.invalidateHandle();
+    }
+}
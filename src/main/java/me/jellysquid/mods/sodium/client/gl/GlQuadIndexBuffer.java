@@ -0,0 +1,120 @@
+package me.jellysquid.mods.sodium.client.gl;
+
+import net.minecraft.client.util.GlAllocationUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An element buffer which splits every quad (four consecutive vertices) into two triangles. Since the indices only
+ * depend on the number of quads being drawn, a single buffer is shared by every chunk and grown when a larger mesh is
+ * uploaded.
+ */
+public class GlQuadIndexBuffer extends GlHandle {
+    // The initial capacity of the buffer, enough for most chunk layers
+    private static final int INITIAL_QUAD_CAPACITY = 4096;
+
+    // The largest number of quads which can be addressed with unsigned short indices
+    private static final int MAX_SHORT_QUADS = 65536 / 4;
+
+    private int quadCapacity;
+    private int indexType;
+
+    public GlQuadIndexBuffer() {
+        this.setHandle(GlVertexBuffer.FUNC.glGenBuffers());
+    }
+
+    /**
+     * Makes sure that the buffer contains indices for at least {@param quadCount} quads. This must not be called while
+     * a vertex array is bound, as it would replace the element buffer of that array.
+     */
+    public void ensureCapacity(int quadCount) {
+        if (quadCount <= this.quadCapacity) {
+            return;
+        }
+
+        int capacity = Math.max(INITIAL_QUAD_CAPACITY, this.quadCapacity);
+
+        while (capacity < quadCount) {
+            capacity *= 2;
+        }
+
+        int indexType = capacity <= MAX_SHORT_QUADS ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+
+        ByteBuffer buffer = GlAllocationUtils.allocateByteBuffer(capacity * 6 * getIndexSize(indexType));
+
+        for (int quad = 0; quad < capacity; quad++) {
+            int vertex = quad * 4;
+
+            putIndex(buffer, indexType, vertex);
+            putIndex(buffer, indexType, vertex + 1);
+            putIndex(buffer, indexType, vertex + 2);
+
+            putIndex(buffer, indexType, vertex + 2);
+            putIndex(buffer, indexType, vertex + 3);
+            putIndex(buffer, indexType, vertex);
+        }
+
+        buffer.flip();
+
+        GlVertexBuffer.FUNC.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, this.handle());
+        GlVertexBuffer.FUNC.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+        GlVertexBuffer.FUNC.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        this.quadCapacity = capacity;
+        this.indexType = indexType;
+    }
+
+    public void bind() {
+        GlVertexBuffer.FUNC.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, this.handle());
+    }
+
+    public void unbind() {
+        GlVertexBuffer.FUNC.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Draws a range of quads from the currently bound vertex data as triangles. This buffer must be bound as the element
+     * buffer, either directly or through the bound vertex array.
+     */
+    public void drawQuads(int firstVertex, int vertexCount) {
+        int firstQuad = firstVertex / 4;
+        int quadCount = vertexCount / 4;
+
+        if (firstQuad + quadCount > this.quadCapacity) {
+            throw new IllegalStateException("Index buffer has capacity for " + this.quadCapacity + " quads, but " + (firstQuad + quadCount) + " were drawn");
+        }
+
+        GL11.glDrawElements(GL11.GL_TRIANGLES, quadCount * 6, this.indexType, this.getIndexPointer(firstVertex));
+    }
+
+    public int getIndexType() {
+        return this.indexType;
+    }
+
+    /**
+     * @return The byte offset of the first index for the quad starting at {@param firstVertex}
+     */
+    public long getIndexPointer(int firstVertex) {
+        return (long) (firstVertex / 4) * 6 * getIndexSize(this.indexType);
+    }
+
+    public void delete() {
+        GlVertexBuffer.FUNC.glDeleteBuffers(this.handle());
+
+        this.invalidateHandle();
+    }
+
+    private static int getIndexSize(int indexType) {
+        return indexType == GL11.GL_UNSIGNED_SHORT ? 2 : 4;
+    }
+
+    private static void putIndex(ByteBuffer buffer, int indexType, int index) {
+        if (indexType == GL11.GL_UNSIGNED_SHORT) {
+            buffer.putShort((short) index);
+        } else {
+            buffer.putInt(index);
+        }
+    }
+}
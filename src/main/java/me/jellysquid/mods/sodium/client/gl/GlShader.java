@@ -0,0 +1,38 @@
+package me.jellysquid.mods.sodium.client.gl;
+
+import org.lwjgl.opengl.GL20;
+
+public class GlShader extends GlHandle {
+    private final String name;
+
+    /**
+     * @param type The type of shader, such as {@link GL20#GL_VERTEX_SHADER}
+     * @param name The name of the shader, which is only used in error messages
+     */
+    public GlShader(int type, String name, String source) {
+        this.name = name;
+
+        int handle = GL20.glCreateShader(type);
+        GL20.glShaderSource(handle, source);
+        GL20.glCompileShader(handle);
+
+        if (GL20.glGetShaderi(handle, GL20.GL_COMPILE_STATUS) != GL20.GL_TRUE) {
+            String log = GL20.glGetShaderInfoLog(handle);
+            GL20.glDeleteShader(handle);
+
+            throw new RuntimeException("Failed to compile shader " + name + ": " + log);
+        }
+
+        this.setHandle(handle);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void delete() {
+        GL20.glDeleteShader(this.handle());
+
+        this.invalidateHandle();
+    }
+}
@@ -0,0 +1,125 @@
+package me.jellysquid.mods.sodium.client.gl;
+
+import me.jellysquid.mods.sodium.client.util.staging.StagingRing;
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A buffer which stays mapped into system memory for its entire lifetime, allowing worker threads to write vertex data
+ * into it directly. The render thread then only needs to issue copy commands into the destination buffers. Space in
+ * the buffer is managed by a {@link StagingRing}, which uses fences to find out when the GPU has finished copying.
+ */
+public class GlStagingBuffer extends GlHandle {
+    private static final int MAP_FLAGS = GL30.GL_MAP_WRITE_BIT | ARBBufferStorage.GL_MAP_PERSISTENT_BIT | ARBBufferStorage.GL_MAP_COHERENT_BIT;
+
+    private final StagingRing ring;
+
+    public GlStagingBuffer(int capacity) {
+        this.setHandle(GL15.glGenBuffers());
+
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, this.handle());
+        ARBBufferStorage.glBufferStorage(GL31.GL_COPY_READ_BUFFER, capacity, MAP_FLAGS);
+
+        ByteBuffer memory = GL30.glMapBufferRange(GL31.GL_COPY_READ_BUFFER, 0L, capacity, MAP_FLAGS);
+
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+
+        if (memory == null) {
+            GL15.glDeleteBuffers(this.handle());
+
+            throw new RuntimeException("Failed to map staging buffer");
+        }
+
+        this.ring = new StagingRing(memory, new GlFenceSource());
+    }
+
+    /**
+     * Copies {@param data} into the staging buffer. This can be called from any thread.
+     *
+     * @return The range of the buffer which holds the data, or null if the buffer is full
+     */
+    public StagingRing.Range write(ByteBuffer data) {
+        return this.ring.write(data);
+    }
+
+    /**
+     * Copies part of a staged range into the buffer bound to {@param target}. The range should be released afterwards.
+     */
+    public void copy(StagingRing.Range range, int offset, int target, long dstOffset, int length) {
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, this.handle());
+        GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, target, range.getOffset() + offset, dstOffset, length);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+    }
+
+    /**
+     * Returns a range to the buffer once it has been copied from, or discards it if it never was.
+     */
+    public void release(StagingRing.Range range, boolean copied) {
+        // Ranges which outlived the buffer have nothing to return to
+        if (!this.isHandleValid()) {
+            return;
+        }
+
+        if (copied) {
+            this.ring.release(range);
+        } else {
+            this.ring.discard(range);
+        }
+    }
+
+    /**
+     * Fences the copies issued this frame and re-claims the space of any copies which have completed. This must be
+     * called once per frame after uploads have been performed.
+     */
+    public void endFrame() {
+        this.ring.endFrame();
+    }
+
+    public void delete() {
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, this.handle());
+        GL15.glUnmapBuffer(GL31.GL_COPY_READ_BUFFER);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+
+        GL15.glDeleteBuffers(this.handle());
+
+        this.invalidateHandle();
+        this.ring.delete();
+    }
+
+    public String getDebugString() {
+        return String.format("Staging buffer: %dKB/%dKB in use, %d fences pending, %d overflows", this.ring.getReservedBytes() / 1024,
+                this.ring.getCapacity() / 1024, this.ring.getPendingFenceCount(), this.ring.getFailedReservations());
+    }
+
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+
+        return caps.OpenGL44 || (caps.OpenGL32 && caps.GL_ARB_buffer_storage);
+    }
+
+    private static class GlFenceSource implements StagingRing.FenceSource {
+        @Override
+        public long createFence() {
+            return GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+
+        @Override
+        public boolean isSignaled(long fence) {
+            int result = GL32.glClientWaitSync(fence, 0, 0L);
+
+            return result == GL32.GL_ALREADY_SIGNALED || result == GL32.GL_CONDITION_SATISFIED;
+        }
+
+        @Override
+        public void deleteFence(long fence) {
+            GL32.glDeleteSync(fence);
+        }
+    }
+}
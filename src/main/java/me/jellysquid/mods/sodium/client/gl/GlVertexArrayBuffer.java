@@ -8,18 +8,17 @@ import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL30;
 
 public class GlVertexArrayBuffer {
-    private final VertexFormat format;
-
     private final GlVertexBuffer vertexBuffer;
     private final GlVertexArray vertexArray;
+    private final GlQuadIndexBuffer indexBuffer;
 
-    private boolean init = false;
+    // The vertex format which the array's state was last set up for
+    private VertexFormat format;
 
-    public GlVertexArrayBuffer(VertexFormat format, GlVertexBuffer vertexBuffer, GlVertexArray vertexArray) {
+    public GlVertexArrayBuffer(GlVertexBuffer vertexBuffer, GlVertexArray vertexArray, GlQuadIndexBuffer indexBuffer) {
         this.vertexBuffer = vertexBuffer;
         this.vertexArray = vertexArray;
-
-        this.format = format;
+        this.indexBuffer = indexBuffer;
     }
 
     public void unbind() {
@@ -34,20 +33,35 @@ public class GlVertexArrayBuffer {
     public void bind() {
         this.vertexArray.bind();
 
-        if (!this.init) {
-            this.setup();
+        VertexFormat format = this.vertexBuffer.getVertexFormat();
+
+        // The array state needs to be set up again if data of a different format has been uploaded
+        if (this.format != format) {
+            this.setup(format);
 
-            this.init = true;
+            this.format = format;
         }
     }
 
-    private void setup() {
+    public VertexFormat getVertexFormat() {
+        return this.vertexBuffer.getVertexFormat();
+    }
+
+    private void setup(VertexFormat format) {
+        if (this.format != null) {
+            this.format.endDrawing();
+        } else {
+            // The element buffer binding is part of the vertex array's state, so it only needs to be bound once. The
+            // buffer is shared and never unbound while the array is bound.
+            this.indexBuffer.bind();
+        }
+
         this.vertexBuffer.bind();
 
-        int size = this.format.getVertexSize();
+        int size = format.getVertexSize();
         int pointer = 0;
 
-        for (VertexFormatElement element : this.format.getElements()) {
+        for (VertexFormatElement element : format.getElements()) {
             setupVertexArrayState(element.getIndex(), element.getType(), element.getFormat(), element.getCount(), pointer, size);
             pointer += element.getSize();
         }
@@ -55,12 +69,9 @@ public class GlVertexArrayBuffer {
         this.vertexBuffer.unbind();
     }
 
-    public void draw(int mode) {
-        this.vertexBuffer.drawInline(mode);
-    }
-
     public void upload(BufferUploadData buffer) {
         this.vertexBuffer.upload(buffer);
+        this.indexBuffer.ensureCapacity(this.vertexBuffer.getVertexCount() / 4);
     }
 
     private static void setupVertexArrayState(int index, VertexFormatElement.Type type, VertexFormatElement.Format format, int count, long pointer, int stride) {
@@ -11,9 +11,15 @@ import org.lwjgl.opengl.GLCapabilities;
 import java.nio.ByteBuffer;
 
 public class GlVertexBuffer extends GlHandle {
-    private static final VertexBufferFunctions FUNC = VertexBufferFunctions.pickBest(GL.getCapabilities());
+    static final VertexBufferFunctions FUNC = VertexBufferFunctions.pickBest(GL.getCapabilities());
+
+    // Counts how often uploads could write into the existing storage of a buffer instead of allocating new storage.
+    // Buffers are only uploaded to from the render thread.
+    private static long reallocations, reallocationsAvoided;
 
     private int vertexCount = 0;
+    private int capacity = 0;
+    private VertexFormat vertexFormat;
 
     private final int target;
 
@@ -42,10 +48,16 @@ public class GlVertexBuffer extends GlHandle {
         RenderSystem.drawArrays(mode, 0, this.vertexCount);
     }
 
+    public int getVertexCount() {
+        return this.vertexCount;
+    }
+
     public void delete() {
         FUNC.glDeleteBuffers(this.handle());
 
         this.invalidateHandle();
+
+        this.capacity = 0;
     }
 
     public static boolean isSupported() {
@@ -56,14 +68,82 @@ public class GlVertexBuffer extends GlHandle {
         ByteBuffer buffer = data.buffer;
         VertexFormat format = data.format;
 
-        this.vertexCount = buffer.remaining() / format.getVertexSize();
+        int size = buffer.remaining();
+        int vertexCount = size / format.getVertexSize();
 
         FUNC.glBindBuffer(this.target, this.handle());
-        FUNC.glBufferData(this.target, buffer, GL15.GL_STATIC_DRAW);
+
+        // If only part of the data has changed and the buffer is still the same size, we can avoid re-specifying the
+        // entire buffer's storage
+        if (data.isPartial() && vertexCount == this.vertexCount && format == this.vertexFormat) {
+            ByteBuffer range = buffer.duplicate();
+            range.limit(buffer.position() + data.dirtyEnd);
+            range.position(buffer.position() + data.dirtyStart);
+
+            this.write(data, range, data.dirtyStart);
+
+            reallocationsAvoided++;
+        } else if (size <= this.capacity && size >= this.capacity / 4) {
+            // The data fits into the existing storage without wasting too much of it
+            this.write(data, buffer, 0);
+
+            reallocationsAvoided++;
+        } else {
+            // Buffers which have already been uploaded to once are likely to be uploaded to again, so leave some room
+            // for the mesh to grow. Specifying new storage orphans the old storage, which the driver can release once
+            // any pending draws have finished with it.
+            int capacity = this.capacity > 0 ? size + (size / 4) : size;
+
+            FUNC.glBufferData(this.target, capacity, GL15.GL_DYNAMIC_DRAW);
+            this.write(data, buffer, 0);
+
+            this.capacity = capacity;
+
+            reallocations++;
+        }
+
         FUNC.glBindBuffer(this.target, 0);
+
+        data.releaseStaged(true);
+
+        this.vertexCount = vertexCount;
+        this.vertexFormat = format;
+    }
+
+    /**
+     * Writes {@param src} into the bound buffer at {@param offset}, which is also the offset of the source within the
+     * upload's data. Staged data is copied on the GPU instead of being passed through the driver.
+     */
+    private void write(BufferUploadData data, ByteBuffer src, int offset) {
+        if (data.isStaged()) {
+            data.copyStaged(this.target, offset, src.remaining());
+        } else {
+            FUNC.glBufferSubData(this.target, offset, src);
+        }
     }
 
-    private enum VertexBufferFunctions {
+    /**
+     * @return The number of bytes of storage allocated for this buffer, which may be more than is used
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public static String getUploadStatistics() {
+        long total = reallocations + reallocationsAvoided;
+
+        return String.format("Buffer uploads: %d re-allocations, %d avoided (%.1f%%)", reallocations, reallocationsAvoided,
+                total > 0 ? (reallocationsAvoided * 100.0D) / total : 0.0D);
+    }
+
+    /**
+     * @return The vertex format of the data last uploaded to this buffer, or null if nothing has been uploaded
+     */
+    public VertexFormat getVertexFormat() {
+        return this.vertexFormat;
+    }
+
+    enum VertexBufferFunctions {
         BASE {
             @Override
             public void glBindBuffer(int target, int id) {
@@ -84,6 +164,16 @@ public class GlVertexBuffer extends GlHandle {
             public void glBufferData(int target, ByteBuffer data, int usage) {
                 GL15.glBufferData(target, data, usage);
             }
+
+            @Override
+            public void glBufferData(int target, long size, int usage) {
+                GL15.glBufferData(target, size, usage);
+            }
+
+            @Override
+            public void glBufferSubData(int target, long offset, ByteBuffer data) {
+                GL15.glBufferSubData(target, offset, data);
+            }
         },
         ARB {
             @Override
@@ -105,6 +195,16 @@ public class GlVertexBuffer extends GlHandle {
             public void glBufferData(int target, ByteBuffer data, int usage) {
                 ARBVertexBufferObject.glBufferDataARB(target, data, usage);
             }
+
+            @Override
+            public void glBufferData(int target, long size, int usage) {
+                ARBVertexBufferObject.glBufferDataARB(target, size, usage);
+            }
+
+            @Override
+            public void glBufferSubData(int target, long offset, ByteBuffer data) {
+                ARBVertexBufferObject.glBufferSubDataARB(target, offset, data);
+            }
         },
         UNSUPPORTED {
             @Override
@@ -126,6 +226,16 @@ public class GlVertexBuffer extends GlHandle {
             public void glBufferData(int target, ByteBuffer data, int usage) {
                 throw new UnsupportedOperationException();
             }
+
+            @Override
+            public void glBufferData(int target, long size, int usage) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void glBufferSubData(int target, long offset, ByteBuffer data) {
+                throw new UnsupportedOperationException();
+            }
         };
 
         public static VertexBufferFunctions pickBest(GLCapabilities capabilities) {
@@ -145,6 +255,10 @@ public class GlVertexBuffer extends GlHandle {
         public abstract void glDeleteBuffers(int id);
 
         public abstract void glBufferData(int target, ByteBuffer data, int usage);
+
+        public abstract void glBufferData(int target, long size, int usage);
+
+        public abstract void glBufferSubData(int target, long offset, ByteBuffer data);
     }
 
 }
@@ -2,6 +2,7 @@ package me.jellysquid.mods.sodium.client.gui;
 
 import com.google.common.collect.ImmutableList;
 import me.jellysquid.mods.sodium.client.gl.GlHelper;
+import me.jellysquid.mods.sodium.client.gl.GlStagingBuffer;
 import me.jellysquid.mods.sodium.client.gl.GlVertexArray;
 import me.jellysquid.mods.sodium.client.gui.options.*;
 import me.jellysquid.mods.sodium.client.gui.options.binding.compat.VanillaBooleanOptionBinding;
@@ -11,6 +12,8 @@ import me.jellysquid.mods.sodium.client.gui.options.control.SliderControl;
 import me.jellysquid.mods.sodium.client.gui.options.control.TickBoxControl;
 import me.jellysquid.mods.sodium.client.gui.options.storage.MinecraftOptionsStorage;
 import me.jellysquid.mods.sodium.client.gui.options.storage.SodiumOptionsStorage;
+import me.jellysquid.mods.sodium.client.render.backends.ChunkProgram;
+import me.jellysquid.mods.sodium.client.render.backends.multidraw.ChunkRenderBackendMultiDraw;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.options.AttackIndicator;
 import net.minecraft.client.options.ParticlesOption;
@@ -247,13 +250,14 @@ public class SodiumGameOptionPages {
                 .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
                         .setName("Large Chunk Buffers")
                         .setTooltip("If enabled, chunks will be batched into larger vertex buffers to avoid expensive buffer switches while rendering chunks. " +
-                                "This can provide a huge boost at high render distances when CPU-bound." +
-                                "\n\nRequires OpenGL 3.1+ or support for the ARB_copy_buffer extension.")
+                                "This can provide a huge boost at high render distances when CPU-bound. This option has no effect while the compact " +
+                                "vertex format is enabled." +
+                                "\n\nRequires OpenGL 3.2+ or support for the ARB_copy_buffer and ARB_draw_elements_base_vertex extensions.")
                         .setControl(TickBoxControl::new)
                         .setBinding((opts, value) -> opts.performance.useLargeBuffers = value, opts -> opts.performance.useLargeBuffers)
                         .setImpact(OptionImpact.HIGH)
                         .setFlags(OptionFlag.REQUIRES_RENDERER_RELOAD)
-                        .setEnabled(false)
+                        .setEnabled(ChunkRenderBackendMultiDraw.isSupported())
                         .build())
                 .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
                         .setName("Fog Chunk Occlusion")
@@ -267,6 +271,17 @@ public class SodiumGameOptionPages {
                         .setEnabled(GlHelper.supportsNvFog())
                         .build()
                 )
+                .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
+                        .setName("Asynchronous Chunk Culling")
+                        .setTooltip("If enabled, the search for chunks which can be seen from the camera will be performed on a separate thread while " +
+                                "the previous frame is being rendered. This can greatly improve frame rates at high render distances, but chunks may " +
+                                "take an extra frame to appear when moving quickly.")
+                        .setControl(TickBoxControl::new)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .setBinding((opts, value) -> opts.performance.useAsyncChunkTraversal = value, opts -> opts.performance.useAsyncChunkTraversal)
+                        .setFlags(OptionFlag.REQUIRES_RENDERER_RELOAD)
+                        .build()
+                )
                 .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
                         .setName("Animate Only Visible Textures")
                         .setTooltip("If enabled, only animated textures determined to be visible will be updated. This can provide a significant boost to frame " +
@@ -276,6 +291,111 @@ public class SodiumGameOptionPages {
                         .setBinding((opts, value) -> opts.performance.animateOnlyVisibleTextures = value, opts -> opts.performance.animateOnlyVisibleTextures)
                         .build()
                 )
+                .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
+                        .setName("Compact Vertex Format")
+                        .setTooltip("If enabled, a smaller vertex format will be used for opaque chunk geometry, reducing the amount of video memory " +
+                                "used by chunks by over a third. This slightly reduces the precision of block model positions and textures, " +
+                                "which may cause rare visual issues with some models.")
+                        .setControl(TickBoxControl::new)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .setBinding((opts, value) -> opts.performance.useCompactVertexFormat = value, opts -> opts.performance.useCompactVertexFormat)
+                        .setFlags(OptionFlag.REQUIRES_RENDERER_RELOAD)
+                        .build()
+                )
+                .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
+                        .setName("Chunk Shaders")
+                        .setTooltip("If enabled, chunks will be drawn with a simple shader program instead of the fixed-function pipeline. " +
+                                "This avoids loading a new matrix for every chunk which is drawn, reducing the CPU overhead of rendering." +
+                                "\n\nRequires OpenGL 2.1+.")
+                        .setControl(TickBoxControl::new)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .setBinding((opts, value) -> opts.performance.useChunkShaders = value, opts -> opts.performance.useChunkShaders)
+                        .setFlags(OptionFlag.REQUIRES_RENDERER_RELOAD)
+                        .setEnabled(ChunkProgram.isSupported())
+                        .build()
+                )
+                .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
+                        .setName("Streaming Chunk Uploads")
+                        .setTooltip("If enabled, chunk builder threads will write finished chunks directly into a 32MB staging buffer in video " +
+                                "memory, leaving the main thread with only a copy to perform. This can reduce stuttering while many chunks are " +
+                                "being loaded. This option has no effect when Large Chunk Buffers are in use." +
+                                "\n\nRequires OpenGL 4.4+ or OpenGL 3.2+ with support for the ARB_buffer_storage extension.")
+                        .setControl(TickBoxControl::new)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .setBinding((opts, value) -> opts.performance.useStreamingUploads = value, opts -> opts.performance.useStreamingUploads)
+                        .setFlags(OptionFlag.REQUIRES_RENDERER_RELOAD)
+                        .setEnabled(GlStagingBuffer.isSupported())
+                        .build()
+                )
+                .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
+                        .setName("Chunk Mesh Cache")
+                        .setTooltip("If enabled, up to 64MB of recently built chunks will be kept in memory, allowing chunks which are " +
+                                "unloaded and loaded again without changing to be shown without being built again. This adds a small cost " +
+                                "to the first build of every chunk, which can outweigh the benefit if you rarely return to the same area.")
+                        .setControl(TickBoxControl::new)
+                        .setImpact(OptionImpact.LOW)
+                        .setBinding((opts, value) -> opts.performance.useMeshCache = value, opts -> opts.performance.useMeshCache)
+                        .setFlags(OptionFlag.REQUIRES_RENDERER_RELOAD)
+                        .build()
+                )
+                .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
+                        .setName("Persistent Chunk Cache")
+                        .setTooltip("If enabled, the chunks you have seen will be saved to disk, allowing them to be loaded without being " +
+                                "built again when you return to the same world. This can make re-joining a world or teleporting to a " +
+                                "familiar place much faster, but uses up to 512MB of disk space for each world and dimension." +
+                                "\n\nRequires Chunk Mesh Cache to be enabled.")
+                        .setControl(TickBoxControl::new)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .setBinding((opts, value) -> opts.performance.useMeshDiskCache = value, opts -> opts.performance.useMeshDiskCache)
+                        .setFlags(OptionFlag.REQUIRES_RENDERER_RELOAD)
+                        .build()
+                )
+                .build());
+
+        groups.add(OptionGroup.createBuilder()
+                .add(OptionImpl.createBuilder(boolean.class, sodiumOpts)
+                        .setName("Adaptive Chunk Updates")
+                        .setTooltip("If enabled, the number of chunk rebuilds and uploads performed each frame will be adjusted to keep the game " +
+                                "running at the Chunk Update Target frame rate. This can reduce stuttering while chunks are loading, but chunks will " +
+                                "load more slowly whenever the game is running below the target for any reason, including when limited by V-Sync.")
+                        .setControl(TickBoxControl::new)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .setBinding((opts, value) -> opts.performance.useAdaptiveChunkUpdates = value, opts -> opts.performance.useAdaptiveChunkUpdates)
+                        .build())
+                .add(OptionImpl.createBuilder(int.class, sodiumOpts)
+                        .setName("Chunk Update Target")
+                        .setTooltip("The frame rate which the game will try to stay at or above while performing chunk updates, if Adaptive " +
+                                "Chunk Updates is enabled. Chunk rebuilds and uploads will be spread out over more frames when the game is running " +
+                                "slower than this, and more will be performed at once when it is running faster. Lower values will load chunks " +
+                                "faster at the cost of more stuttering.")
+                        .setControl(option -> new SliderControl(option, 30, 240, 10, ControlValueFormatter.quanity("FPS")))
+                        .setBinding((opts, value) -> opts.performance.chunkUpdateTargetFrameRate = value, opts -> opts.performance.chunkUpdateTargetFrameRate)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .build())
+                .add(OptionImpl.createBuilder(int.class, sodiumOpts)
+                        .setName("Max Chunk Uploads")
+                        .setTooltip("The largest amount of chunk data which can be uploaded to graphics memory in a single frame. Any remaining " +
+                                "chunk data will be uploaded in later frames, starting with the chunks closest to you.")
+                        .setControl(option -> new SliderControl(option, 1, 64, 1, ControlValueFormatter.quanity("MB")))
+                        .setBinding((opts, value) -> opts.performance.chunkUploadMaxMegabytes = value, opts -> opts.performance.chunkUploadMaxMegabytes)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .build())
+                .add(OptionImpl.createBuilder(int.class, sodiumOpts)
+                        .setName("Max Chunk Upload Time")
+                        .setTooltip("The longest amount of time which can be spent uploading chunk data to graphics memory in a single frame.")
+                        .setControl(option -> new SliderControl(option, 1, 16, 1, ControlValueFormatter.quanity("ms")))
+                        .setBinding((opts, value) -> opts.performance.chunkUploadMaxMillis = value, opts -> opts.performance.chunkUploadMaxMillis)
+                        .setImpact(OptionImpact.MEDIUM)
+                        .build())
+                .add(OptionImpl.createBuilder(int.class, sodiumOpts)
+                        .setName("Block Update Wait")
+                        .setTooltip("The longest amount of time a frame will wait for nearby chunks to be rebuilt after a block changes. If a " +
+                                "rebuild takes longer than this, the old chunk will be displayed until it completes. Higher values reduce flickering " +
+                                "when placing or breaking blocks, but can cause stuttering when many blocks change at once.")
+                        .setControl(option -> new SliderControl(option, 0, 10000, 500, ControlValueFormatter.quanity("us")))
+                        .setBinding((opts, value) -> opts.performance.importantRebuildMaxWaitMicros = value, opts -> opts.performance.importantRebuildMaxWaitMicros)
+                        .setImpact(OptionImpact.LOW)
+                        .build())
                 .build());
 
         return new OptionPage("Performance", ImmutableList.copyOf(groups));
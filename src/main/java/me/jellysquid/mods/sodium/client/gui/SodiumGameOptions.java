@@ -23,6 +23,17 @@ public class SodiumGameOptions {
         public boolean useFogChunkCulling = true;
         public boolean animateOnlyVisibleTextures = true;
         public boolean useAdvancedEntityCulling = true;
+        public boolean useMeshCache = false;
+        public boolean useMeshDiskCache = false;
+        public boolean useCompactVertexFormat = false;
+        public boolean useStreamingUploads = false;
+        public boolean useChunkShaders = false;
+        public boolean useAsyncChunkTraversal = false;
+        public boolean useAdaptiveChunkUpdates = false;
+        public int chunkUpdateTargetFrameRate = 60;
+        public int chunkUploadMaxMegabytes = 16;
+        public int chunkUploadMaxMillis = 4;
+        public int importantRebuildMaxWaitMicros = 2000;
     }
 
     public static class QualitySettings {
@@ -1,21 +1,62 @@
 package me.jellysquid.mods.sodium.client.render.backends;
 
 import com.mojang.blaze3d.systems.RenderSystem;
+import me.jellysquid.mods.sodium.client.SodiumClientMod;
+import me.jellysquid.mods.sodium.client.gl.GlQuadIndexBuffer;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
+import me.jellysquid.mods.sodium.client.render.chunk.format.ChunkVertexFormats;
+import me.jellysquid.mods.sodium.client.render.chunk.format.CompactVertexEncoder;
+import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuadFacing;
 import me.jellysquid.mods.sodium.common.util.matrix.Matrix4fExtended;
 import me.jellysquid.mods.sodium.common.util.matrix.MatrixUtil;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.util.GlAllocationUtils;
 import net.minecraft.client.util.math.Matrix4f;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.util.math.BlockPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
 
 import java.nio.FloatBuffer;
+import java.util.List;
 
 public abstract class AbstractChunkRenderBackend<T extends ChunkRenderState> implements ChunkRenderBackend<T> {
+    private static final Logger LOGGER = LogManager.getLogger("ChunkRenderBackend");
+
+    // The index buffer used to draw the quads of every chunk as triangles
+    protected final GlQuadIndexBuffer indexBuffer = new GlQuadIndexBuffer();
+
     private Matrix4f modelMatrix;
     private Matrix4fExtended modelMatrixExt;
     private FloatBuffer matrixBuffer;
 
+    // The model matrix with the scale of compact vertex positions applied, used for meshes in the compact format
+    private final FloatBuffer compactMatrixBuffer = GlAllocationUtils.allocateFloatBuffer(16);
+
+    private boolean compactTextureMatrix;
+
+    // The program used in place of the fixed-function pipeline, or null if shaders are disabled
+    private final ChunkProgram program;
+
+    protected AbstractChunkRenderBackend() {
+        this.program = SodiumClientMod.options().performance.useChunkShaders && ChunkProgram.isSupported() ? createProgram() : null;
+    }
+
+    /**
+     * @return The chunk program, or null if it could not be created, in which case the fixed-function pipeline is used
+     */
+    private static ChunkProgram createProgram() {
+        try {
+            return ChunkProgram.create();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to create chunk shaders, falling back to the fixed-function pipeline", e);
+
+            return null;
+        }
+    }
+
     @Override
     public void begin(MatrixStack matrixStack) {
         RenderSystem.pushMatrix();
@@ -24,10 +65,28 @@ public abstract class AbstractChunkRenderBackend<T extends ChunkRenderState> imp
         this.modelMatrix = matrixStack.peek().getModel();
         this.modelMatrixExt = ((Matrix4fExtended) (Object) this.modelMatrix);
         this.matrixBuffer = MatrixUtil.writeToBuffer(this.modelMatrix);
+
+        // Scaling the first three columns of the matrix is equivalent to multiplying it by a scale matrix, and the
+        // translation column is written separately for each chunk
+        float scale = 1.0f / CompactVertexEncoder.POSITION_SCALE;
+
+        for (int i = 0; i < 16; i++) {
+            this.compactMatrixBuffer.put(i, i < 12 ? this.matrixBuffer.get(i) * scale : this.matrixBuffer.get(i));
+        }
+
+        if (this.program != null) {
+            this.program.begin(this.matrixBuffer);
+        }
     }
 
     @Override
     public void end(MatrixStack matrixStack) {
+        if (this.program != null) {
+            this.program.end();
+        }
+
+        this.setCompactTextureMatrix(false);
+
         this.matrixBuffer = null;
         this.modelMatrixExt = null;
         this.modelMatrix = null;
@@ -36,15 +95,157 @@ public abstract class AbstractChunkRenderBackend<T extends ChunkRenderState> imp
         RenderSystem.popMatrix();
     }
 
-    protected void beginChunkRender(ChunkRender<T> chunk, double x, double y, double z) {
+    @Override
+    public void delete() {
+        this.indexBuffer.delete();
+
+        if (this.program != null) {
+            this.program.delete();
+        }
+    }
+
+    @Override
+    public void tick() {
+
+    }
+
+    @Override
+    public void addDebugStrings(List<String> list) {
+
+    }
+
+    protected void beginChunkRender(ChunkRender<T> chunk, double x, double y, double z, VertexFormat format) {
         BlockPos origin = chunk.getOrigin();
 
-        float offsetX = (float) (origin.getX() - x);
-        float offsetY = (float) (origin.getY() - y);
-        float offsetZ = (float) (origin.getZ() - z);
+        this.loadModelMatrix(origin.getX(), origin.getY(), origin.getZ(), x, y, z, format);
+    }
+
+    /**
+     * Loads the model-view matrix for drawing vertices of the given format which are relative to the block position
+     * ({@param originX}, {@param originY}, {@param originZ}).
+     */
+    protected void loadModelMatrix(int originX, int originY, int originZ, double x, double y, double z, VertexFormat format) {
+        float offsetX = (float) (originX - x);
+        float offsetY = (float) (originY - y);
+        float offsetZ = (float) (originZ - z);
+
+        boolean compact = ChunkVertexFormats.isCompact(format);
+
+        if (this.program != null) {
+            float offset = compact ? CompactVertexEncoder.POSITION_OFFSET : 0.0f;
+
+            this.program.setModelTransform(compact ? 1.0f / CompactVertexEncoder.POSITION_SCALE : 1.0f,
+                    offsetX + offset, offsetY + offset, offsetZ + offset);
+        } else if (compact) {
+            float offset = CompactVertexEncoder.POSITION_OFFSET;
+
+            this.modelMatrixExt.writeTranslation(this.compactMatrixBuffer, offsetX + offset, offsetY + offset, offsetZ + offset);
+
+            GL11.glLoadMatrixf(this.compactMatrixBuffer);
+        } else {
+            this.modelMatrixExt.writeTranslation(this.matrixBuffer, offsetX, offsetY, offsetZ);
+
+            GL11.glLoadMatrixf(this.matrixBuffer);
+        }
+
+        this.setCompactTextureMatrix(compact);
+    }
+
+    /**
+     * @return The bitmask of facings which contain quads that could be facing the camera at ({@param x}, {@param y},
+     * {@param z}). Every assigned quad lies on a plane within the bounds of its section, so a facing can only be seen if
+     * the camera is on the front side of the section's nearest plane for that facing.
+     */
+    protected static int getVisibleFaces(ChunkRender<?> chunk, double x, double y, double z) {
+        BlockPos origin = chunk.getOrigin();
+
+        int faces = ModelQuadFacing.UNASSIGNED.bit();
+
+        if (y > origin.getY()) {
+            faces |= ModelQuadFacing.UP.bit();
+        }
+
+        if (y < origin.getY() + 16) {
+            faces |= ModelQuadFacing.DOWN.bit();
+        }
+
+        if (x > origin.getX()) {
+            faces |= ModelQuadFacing.EAST.bit();
+        }
+
+        if (x < origin.getX() + 16) {
+            faces |= ModelQuadFacing.WEST.bit();
+        }
+
+        if (z > origin.getZ()) {
+            faces |= ModelQuadFacing.SOUTH.bit();
+        }
+
+        if (z < origin.getZ() + 16) {
+            faces |= ModelQuadFacing.NORTH.bit();
+        }
+
+        return faces;
+    }
+
+    /**
+     * Draws the quads of the bound vertex data which belong to the facings in {@param faces}. Facings which are next to
+     * each other in the buffer are drawn with a single call.
+     */
+    protected void drawFaces(int[] facingOffsets, int faces) {
+        int start = -1;
+
+        for (int facing = 0; facing < ModelQuadFacing.COUNT; facing++) {
+            int first = facingOffsets[facing];
+
+            // Empty facings don't split up the range being drawn
+            if (first == facingOffsets[facing + 1]) {
+                continue;
+            }
+
+            if ((faces & (1 << facing)) != 0) {
+                if (start < 0) {
+                    start = first;
+                }
+            } else if (start >= 0) {
+                this.drawQuads(start, first - start);
+
+                start = -1;
+            }
+        }
+
+        if (start >= 0) {
+            this.drawQuads(start, facingOffsets[ModelQuadFacing.COUNT] - start);
+        }
+    }
+
+    protected void drawQuads(int firstVertex, int vertexCount) {
+        this.indexBuffer.drawQuads(firstVertex, vertexCount);
+    }
+
+    /**
+     * Compact vertices store texture coordinates as non-normalized shorts, which the texture matrix needs to scale back
+     * into the [0, 1] range.
+     */
+    private void setCompactTextureMatrix(boolean compact) {
+        if (this.compactTextureMatrix == compact) {
+            return;
+        }
+
+        RenderSystem.activeTexture(GL13.GL_TEXTURE0);
+        RenderSystem.matrixMode(GL11.GL_TEXTURE);
+
+        if (compact) {
+            float scale = 1.0f / CompactVertexEncoder.TEXTURE_SCALE;
+
+            RenderSystem.pushMatrix();
+            RenderSystem.scalef(scale, scale, 1.0f);
+        } else {
+            RenderSystem.popMatrix();
+        }
 
-        this.modelMatrixExt.writeTranslation(this.matrixBuffer, offsetX, offsetY, offsetZ);
+        RenderSystem.matrixMode(GL11.GL_MODELVIEW);
 
-        GL11.glLoadMatrixf(this.matrixBuffer);
+        this.compactTextureMatrix = compact;
     }
 }
@@ -0,0 +1,152 @@
+package me.jellysquid.mods.sodium.client.render.backends;
+
+import me.jellysquid.mods.sodium.client.gl.GlHelper;
+import me.jellysquid.mods.sodium.client.gl.GlProgram;
+import me.jellysquid.mods.sodium.client.gl.GlShader;
+import org.apache.commons.io.IOUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The shader program used to draw chunk geometry in place of the fixed-function pipeline. The camera's model-view matrix
+ * only needs to be uploaded once per layer, after which each draw only needs to update the offset of its vertices.
+ */
+public class ChunkProgram {
+    private final GlProgram program;
+
+    private final int uModelViewMatrix;
+    private final int uModelScale;
+    private final int uModelOffset;
+    private final int uFogMode;
+
+    private float modelScale = Float.NaN;
+
+    private ChunkProgram(GlProgram program) {
+        this.program = program;
+
+        this.uModelViewMatrix = program.getUniformLocation("u_ModelViewMatrix");
+        this.uModelScale = program.getUniformLocation("u_ModelScale");
+        this.uModelOffset = program.getUniformLocation("u_ModelOffset");
+        this.uFogMode = program.getUniformLocation("u_FogMode");
+
+        // The samplers always read from the texture units used by the fixed-function pipeline
+        program.bind();
+
+        GL20.glUniform1i(program.getUniformLocation("u_BlockTex"), 0);
+        GL20.glUniform1i(program.getUniformLocation("u_LightTex"), 2);
+
+        program.unbind();
+    }
+
+    public static ChunkProgram create() {
+        // Vanilla switches fog over to radial distance when the driver supports it
+        String defines = GlHelper.supportsNvFog() ? "#define USE_RADIAL_FOG\n" : "";
+
+        GlShader vertShader = null;
+        GlShader fragShader = null;
+
+        GlProgram program = null;
+
+        try {
+            vertShader = new GlShader(GL20.GL_VERTEX_SHADER, "chunk.v.glsl", getShaderSource("chunk.v.glsl", defines));
+            fragShader = new GlShader(GL20.GL_FRAGMENT_SHADER, "chunk.f.glsl", getShaderSource("chunk.f.glsl", defines));
+
+            program = new GlProgram("chunk", vertShader, fragShader);
+
+            return new ChunkProgram(program);
+        } catch (RuntimeException e) {
+            if (program != null) {
+                program.delete();
+            }
+
+            throw e;
+        } finally {
+            // The shaders are no longer needed once linked, and must also be cleaned up if anything failed
+            if (vertShader != null) {
+                vertShader.delete();
+            }
+
+            if (fragShader != null) {
+                fragShader.delete();
+            }
+        }
+    }
+
+    /**
+     * Loads the source of a shader, inserting {@param defines} after the version directive.
+     */
+    private static String getShaderSource(String name, String defines) {
+        String path = "/assets/sodium/shaders/" + name;
+
+        try (InputStream in = ChunkProgram.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new RuntimeException("Shader not found: " + path);
+            }
+
+            String source = IOUtils.toString(in, StandardCharsets.UTF_8);
+            int split = source.indexOf('\n') + 1;
+
+            return source.substring(0, split) + defines + source.substring(split);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read shader: " + path, e);
+        }
+    }
+
+    /**
+     * Binds the program and sets up the state which is shared by every draw in a layer.
+     */
+    public void begin(FloatBuffer modelViewMatrix) {
+        this.program.bind();
+
+        GL20.glUniformMatrix4fv(this.uModelViewMatrix, false, modelViewMatrix);
+        GL20.glUniform1i(this.uFogMode, getFogMode());
+
+        this.modelScale = Float.NaN;
+    }
+
+    public void end() {
+        this.program.unbind();
+    }
+
+    public void setModelTransform(float scale, float offsetX, float offsetY, float offsetZ) {
+        // The scale only changes along with the vertex format
+        if (this.modelScale != scale) {
+            GL20.glUniform1f(this.uModelScale, scale);
+
+            this.modelScale = scale;
+        }
+
+        GL20.glUniform3f(this.uModelOffset, offsetX, offsetY, offsetZ);
+    }
+
+    public void delete() {
+        this.program.delete();
+    }
+
+    private static int getFogMode() {
+        if (!GL11.glIsEnabled(GL11.GL_FOG)) {
+            return 0;
+        }
+
+        switch (GL11.glGetInteger(GL11.GL_FOG_MODE)) {
+            case GL11.GL_LINEAR:
+                return 1;
+            case GL11.GL_EXP:
+                return 2;
+            case GL11.GL_EXP2:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    public static boolean isSupported() {
+        return GL.getCapabilities().OpenGL21;
+    }
+}
@@ -4,12 +4,23 @@ import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
 import net.minecraft.client.render.RenderLayer;
 import net.minecraft.client.util.math.MatrixStack;
 
+import java.util.List;
+
 public interface ChunkRenderBackend<T extends ChunkRenderState> {
-    T createRenderState();
+    T createRenderState(int chunkX, int chunkY, int chunkZ);
 
     void begin(MatrixStack matrixStack);
 
     void render(ChunkRender<T> chunk, RenderLayer layer, MatrixStack matrixStack, double x, double y, double z);
 
     void end(MatrixStack matrixStack);
+
+    void delete();
+
+    /**
+     * Called once per frame after chunk meshes have been uploaded, outside of any render pass.
+     */
+    void tick();
+
+    void addDebugStrings(List<String> list);
 }
@@ -0,0 +1,78 @@
+package me.jellysquid.mods.sodium.client.render.backends.multidraw;
+
+import net.minecraft.client.util.GlAllocationUtils;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL32;
+
+import java.nio.IntBuffer;
+
+/**
+ * A list of indexed draw commands which are submitted together with a single call to glMultiDrawElementsBaseVertex.
+ */
+public class ChunkDrawBatch {
+    private IntBuffer counts;
+    private IntBuffer baseVertices;
+    private PointerBuffer pointers;
+
+    private int capacity;
+    private int size;
+
+    public ChunkDrawBatch(int capacity) {
+        this.allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        IntBuffer counts = GlAllocationUtils.allocateByteBuffer(capacity * 4).asIntBuffer();
+        IntBuffer baseVertices = GlAllocationUtils.allocateByteBuffer(capacity * 4).asIntBuffer();
+        PointerBuffer pointers = PointerBuffer.allocateDirect(capacity);
+
+        for (int i = 0; i < this.size; i++) {
+            counts.put(i, this.counts.get(i));
+            baseVertices.put(i, this.baseVertices.get(i));
+            pointers.put(i, this.pointers.get(i));
+        }
+
+        this.counts = counts;
+        this.baseVertices = baseVertices;
+        this.pointers = pointers;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param pointer The byte offset of the first index in the bound element buffer
+     * @param count The number of indices to draw
+     * @param baseVertex The value added to each index before fetching the vertex
+     */
+    public void add(long pointer, int count, int baseVertex) {
+        if (this.size >= this.capacity) {
+            this.allocate(this.capacity * 2);
+        }
+
+        this.pointers.put(this.size, pointer);
+        this.counts.put(this.size, count);
+        this.baseVertices.put(this.size, baseVertex);
+
+        this.size++;
+    }
+
+    public void draw(int indexType) {
+        this.counts.position(0).limit(this.size);
+        this.baseVertices.position(0).limit(this.size);
+        this.pointers.position(0).limit(this.size);
+
+        GL32.glMultiDrawElementsBaseVertex(GL11.GL_TRIANGLES, this.counts, indexType, this.pointers, this.baseVertices);
+
+        this.counts.clear();
+        this.baseVertices.clear();
+        this.pointers.clear();
+    }
+
+    public boolean isEmpty() {
+        return this.size <= 0;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+}
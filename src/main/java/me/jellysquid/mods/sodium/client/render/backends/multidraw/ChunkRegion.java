@@ -0,0 +1,108 @@
+package me.jellysquid.mods.sodium.client.render.backends.multidraw;
+
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceArrayMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMap;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import java.util.Collection;
+
+/**
+ * A group of neighbouring sections whose meshes are stored in the same vertex buffers, allowing all of them to be
+ * drawn with a single call.
+ */
+public class ChunkRegion {
+    // The size of a region in sections along each axis, which must be powers of two
+    public static final int WIDTH = 8;
+    public static final int HEIGHT = 4;
+    public static final int LENGTH = 8;
+
+    private static final int WIDTH_SHIFT = Integer.numberOfTrailingZeros(WIDTH);
+    private static final int HEIGHT_SHIFT = Integer.numberOfTrailingZeros(HEIGHT);
+    private static final int LENGTH_SHIFT = Integer.numberOfTrailingZeros(LENGTH);
+
+    private final int x, y, z;
+
+    private final Reference2ReferenceArrayMap<RenderLayer, ChunkRegionBuffer> buffers = new Reference2ReferenceArrayMap<>();
+    private final ChunkDrawBatch batch = new ChunkDrawBatch(WIDTH * HEIGHT * LENGTH);
+
+    public ChunkRegion(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public static long getRegionKey(int chunkX, int chunkY, int chunkZ) {
+        return ChunkSectionPos.asLong(chunkX >> WIDTH_SHIFT, chunkY >> HEIGHT_SHIFT, chunkZ >> LENGTH_SHIFT);
+    }
+
+    public static ChunkRegion forChunk(int chunkX, int chunkY, int chunkZ) {
+        return new ChunkRegion(chunkX >> WIDTH_SHIFT, chunkY >> HEIGHT_SHIFT, chunkZ >> LENGTH_SHIFT);
+    }
+
+    public ChunkRegionBuffer getOrCreateBuffer(RenderLayer layer, VertexFormat format) {
+        ChunkRegionBuffer buffer = this.buffers.get(layer);
+
+        if (buffer == null) {
+            this.buffers.put(layer, buffer = new ChunkRegionBuffer(format));
+        } else if (buffer.getVertexFormat() != format) {
+            throw new IllegalArgumentException("All meshes of a layer within a region must use the same vertex format");
+        }
+
+        return buffer;
+    }
+
+    public ChunkRegionBuffer getBuffer(RenderLayer layer) {
+        return this.buffers.get(layer);
+    }
+
+    public Collection<ChunkRegionBuffer> getBuffers() {
+        return this.buffers.values();
+    }
+
+    public void deleteEmptyBuffers() {
+        ObjectIterator<Reference2ReferenceMap.Entry<RenderLayer, ChunkRegionBuffer>> it = this.buffers.reference2ReferenceEntrySet().iterator();
+
+        while (it.hasNext()) {
+            ChunkRegionBuffer buffer = it.next().getValue();
+
+            if (buffer.isEmpty()) {
+                buffer.delete();
+                it.remove();
+            }
+        }
+    }
+
+    public void delete() {
+        for (ChunkRegionBuffer buffer : this.buffers.values()) {
+            buffer.delete();
+        }
+
+        this.buffers.clear();
+    }
+
+    public boolean isEmpty() {
+        return this.buffers.isEmpty();
+    }
+
+    public ChunkDrawBatch getBatch() {
+        return this.batch;
+    }
+
+    /**
+     * @return The block position of the region's origin along the x-axis
+     */
+    public int getOriginX() {
+        return this.x << (WIDTH_SHIFT + 4);
+    }
+
+    public int getOriginY() {
+        return this.y << (HEIGHT_SHIFT + 4);
+    }
+
+    public int getOriginZ() {
+        return this.z << (LENGTH_SHIFT + 4);
+    }
+}
@@ -0,0 +1,163 @@
+package me.jellysquid.mods.sodium.client.render.backends.multidraw;
+
+import me.jellysquid.mods.sodium.client.gl.GlHandle;
+import me.jellysquid.mods.sodium.client.util.arena.ArenaAllocator;
+import net.minecraft.client.render.VertexFormat;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A large vertex buffer which holds the meshes of every section in a region for a single render layer. The ranges of
+ * the buffer are handed out by an {@link ArenaAllocator}, which is aligned to the vertex size so that each mesh starts
+ * on a whole vertex. When no free range is large enough, the buffer is either defragmented or grown in place.
+ */
+public class ChunkRegionBuffer extends GlHandle {
+    private static final int INITIAL_CAPACITY = 512 * 1024;
+
+    private final VertexFormat format;
+    private final ArenaAllocator arena;
+
+    public ChunkRegionBuffer(VertexFormat format) {
+        this.format = format;
+        this.arena = new ArenaAllocator(INITIAL_CAPACITY, format.getVertexSize());
+
+        this.setHandle(GL15.glGenBuffers());
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.handle());
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.arena.getCapacity(), GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    public Segment upload(ByteBuffer data) {
+        int length = data.remaining();
+
+        ArenaAllocator.Allocation allocation = this.arena.allocate(length);
+
+        // Moving everything to the start of the buffer is cheaper than growing it when there is enough space in total
+        if (allocation == null && this.arena.getFreeBytes() >= length) {
+            this.defragment(Integer.MAX_VALUE);
+
+            allocation = this.arena.allocate(length);
+        }
+
+        if (allocation == null) {
+            this.grow(length);
+
+            allocation = this.arena.allocate(length);
+        }
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.handle());
+        GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, allocation.getOffset(), data);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+        return new Segment(allocation);
+    }
+
+    public void free(Segment segment) {
+        if (segment.getBuffer() != this) {
+            throw new IllegalArgumentException("Segment does not belong to this buffer");
+        }
+
+        this.arena.free(segment.allocation);
+    }
+
+    /**
+     * Creates a new allocation which has at least {@param extra} more bytes of free space at the end and copies the
+     * contents of this buffer into it. Segments keep their offsets.
+     */
+    private void grow(int extra) {
+        int prevCapacity = this.arena.getCapacity();
+        int capacity = prevCapacity * 2;
+
+        while (capacity < prevCapacity + extra) {
+            capacity *= 2;
+        }
+
+        int handle = GL15.glGenBuffers();
+
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, handle);
+        GL15.glBufferData(GL31.GL_COPY_WRITE_BUFFER, capacity, GL15.GL_DYNAMIC_DRAW);
+
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, this.handle());
+        GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, 0, prevCapacity);
+
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+        GL15.glDeleteBuffers(this.handle());
+
+        this.setHandle(handle);
+        this.arena.grow(capacity);
+    }
+
+    /**
+     * Moves up to {@param maxBytes} of segments into earlier gaps of the buffer. The source and destination of each move
+     * never overlap, so the data can be copied within the same buffer.
+     *
+     * @return The number of bytes which were moved
+     */
+    public int defragment(int maxBytes) {
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, this.handle());
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, this.handle());
+
+        int moved = this.arena.defragment(maxBytes, (allocation, from, to, size) ->
+                GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, from, to, size));
+
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+        return moved;
+    }
+
+    public void bind() {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.handle());
+    }
+
+    public void unbind() {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    public void delete() {
+        GL15.glDeleteBuffers(this.handle());
+
+        this.invalidateHandle();
+    }
+
+    public boolean isEmpty() {
+        return this.arena.isEmpty();
+    }
+
+    public VertexFormat getVertexFormat() {
+        return this.format;
+    }
+
+    public ArenaAllocator getArena() {
+        return this.arena;
+    }
+
+    public class Segment {
+        private final ArenaAllocator.Allocation allocation;
+
+        private Segment(ArenaAllocator.Allocation allocation) {
+            this.allocation = allocation;
+        }
+
+        /**
+         * @return The first vertex of this segment within the buffer, which can change whenever the buffer is
+         * defragmented
+         */
+        public int getStartVertex() {
+            return this.allocation.getOffset() / ChunkRegionBuffer.this.format.getVertexSize();
+        }
+
+        public int getVertexCount() {
+            return this.allocation.getSize() / ChunkRegionBuffer.this.format.getVertexSize();
+        }
+
+        public ChunkRegionBuffer getBuffer() {
+            return ChunkRegionBuffer.this;
+        }
+    }
+}
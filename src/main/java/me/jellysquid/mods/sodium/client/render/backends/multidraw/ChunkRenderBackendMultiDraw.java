@@ -0,0 +1,264 @@
+package me.jellysquid.mods.sodium.client.render.backends.multidraw;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import me.jellysquid.mods.sodium.client.gl.BufferUploadData;
+import me.jellysquid.mods.sodium.client.gui.SodiumGameOptions;
+import me.jellysquid.mods.sodium.client.render.backends.AbstractChunkRenderBackend;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
+import me.jellysquid.mods.sodium.client.render.chunk.format.ChunkVertexFormats;
+import me.jellysquid.mods.sodium.client.util.arena.ArenaAllocator;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.util.GlAllocationUtils;
+import net.minecraft.client.util.math.MatrixStack;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A chunk renderer which stores the meshes of nearby sections in shared buffers (see {@link ChunkRegion}) and draws
+ * every visible section of a region with a single multi-draw call. The fixed-function pipeline has no way to move each
+ * draw to its section, so vertices are translated into the region's space when they are uploaded, and the model-view
+ * matrix only needs to be loaded once per region.
+ */
+public class ChunkRenderBackendMultiDraw extends AbstractChunkRenderBackend<ChunkRenderStateMultiDraw> {
+    // The maximum number of bytes which will be moved by defragmentation each frame
+    private static final int DEFRAGMENT_BYTES_PER_FRAME = 1024 * 1024;
+
+    // Buffers are only defragmented once this much of their free space is outside of the largest free range
+    private static final float DEFRAGMENT_THRESHOLD = 0.25f;
+
+    private final Long2ObjectOpenHashMap<ChunkRegion> regions = new Long2ObjectOpenHashMap<>();
+
+    // The regions which have draw commands waiting in their batches
+    private final ObjectArrayList<ChunkRegion> pendingBatches = new ObjectArrayList<>();
+
+    // Holds translated vertex data before it is uploaded
+    private ByteBuffer scratchBuffer = GlAllocationUtils.allocateByteBuffer(256 * 1024);
+
+    private RenderLayer currentLayer;
+    private ChunkDrawBatch currentBatch;
+    private int currentBaseVertex;
+
+    private double cameraX, cameraY, cameraZ;
+
+    @Override
+    public ChunkRenderStateMultiDraw createRenderState(int chunkX, int chunkY, int chunkZ) {
+        return new ChunkRenderStateMultiDraw(this, chunkX, chunkY, chunkZ);
+    }
+
+    @Override
+    public void begin(MatrixStack matrixStack) {
+        super.begin(matrixStack);
+
+        this.indexBuffer.bind();
+    }
+
+    @Override
+    public void render(ChunkRender<ChunkRenderStateMultiDraw> chunk, RenderLayer layer, MatrixStack matrixStack, double x, double y, double z) {
+        ChunkRenderStateMultiDraw data = chunk.getRenderState();
+        ChunkRegionBuffer.Segment segment = data.getSegmentForLayer(layer);
+
+        if (segment == null) {
+            return;
+        }
+
+        ChunkRegion region = data.getRegion();
+
+        // Translucent geometry needs to be drawn in the order given, so the pending commands have to be drawn before
+        // moving onto a different region
+        if (layer == RenderLayer.getTranslucent() && !this.pendingBatches.isEmpty() && this.pendingBatches.top() != region) {
+            this.drawBatches();
+        }
+
+        ChunkDrawBatch batch = region.getBatch();
+
+        if (batch.isEmpty()) {
+            this.pendingBatches.push(region);
+        }
+
+        this.currentLayer = layer;
+        this.currentBatch = batch;
+        this.currentBaseVertex = segment.getStartVertex();
+
+        this.cameraX = x;
+        this.cameraY = y;
+        this.cameraZ = z;
+
+        this.drawFaces(data.getFacingOffsetsForLayer(layer), getVisibleFaces(chunk, x, y, z));
+    }
+
+    @Override
+    protected void drawQuads(int firstVertex, int vertexCount) {
+        this.currentBatch.add(this.indexBuffer.getIndexPointer(firstVertex), (vertexCount / 4) * 6, this.currentBaseVertex);
+    }
+
+    private void drawBatches() {
+        VertexFormat lastFormat = null;
+
+        for (ChunkRegion region : this.pendingBatches) {
+            ChunkDrawBatch batch = region.getBatch();
+
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            ChunkRegionBuffer buffer = region.getBuffer(this.currentLayer);
+            VertexFormat format = buffer.getVertexFormat();
+
+            this.loadModelMatrix(region.getOriginX(), region.getOriginY(), region.getOriginZ(), this.cameraX, this.cameraY, this.cameraZ, format);
+
+            buffer.bind();
+            format.startDrawing(0L);
+
+            batch.draw(this.indexBuffer.getIndexType());
+            batch.clear();
+
+            lastFormat = format;
+        }
+
+        this.pendingBatches.clear();
+
+        if (lastFormat != null) {
+            lastFormat.endDrawing();
+        }
+    }
+
+    @Override
+    public void end(MatrixStack matrixStack) {
+        this.drawBatches();
+
+        super.end(matrixStack);
+
+        this.indexBuffer.unbind();
+
+        this.currentLayer = null;
+        this.currentBatch = null;
+    }
+
+    @Override
+    public void delete() {
+        super.delete();
+
+        for (ChunkRegion region : this.regions.values()) {
+            region.delete();
+        }
+
+        this.regions.clear();
+    }
+
+    @Override
+    public void tick() {
+        int budget = DEFRAGMENT_BYTES_PER_FRAME;
+
+        for (ChunkRegion region : this.regions.values()) {
+            for (ChunkRegionBuffer buffer : region.getBuffers()) {
+                if (budget <= 0) {
+                    return;
+                }
+
+                if (buffer.getArena().getFragmentation() > DEFRAGMENT_THRESHOLD) {
+                    budget -= buffer.defragment(budget);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addDebugStrings(List<String> list) {
+        long used = 0;
+        long capacity = 0;
+        long free = 0;
+        long largestFree = 0;
+        int buffers = 0;
+
+        for (ChunkRegion region : this.regions.values()) {
+            for (ChunkRegionBuffer buffer : region.getBuffers()) {
+                ArenaAllocator arena = buffer.getArena();
+
+                used += arena.getUsedBytes();
+                capacity += arena.getCapacity();
+                free += arena.getFreeBytes();
+                largestFree += arena.getLargestFreeBlock();
+                buffers++;
+            }
+        }
+
+        list.add(String.format("Chunk regions: %d (%d buffers), %dMB/%dMB used, %.1f%% fragmented", this.regions.size(),
+                buffers, used / 1024L / 1024L, capacity / 1024L / 1024L, free > 0 ? (1.0D - ((double) largestFree / free)) * 100.0D : 0.0D));
+    }
+
+    ChunkRegion getOrCreateRegion(int chunkX, int chunkY, int chunkZ) {
+        return this.regions.computeIfAbsent(ChunkRegion.getRegionKey(chunkX, chunkY, chunkZ), key -> ChunkRegion.forChunk(chunkX, chunkY, chunkZ));
+    }
+
+    void releaseRegion(ChunkRegion region, int chunkX, int chunkY, int chunkZ) {
+        if (region.isEmpty()) {
+            this.regions.remove(ChunkRegion.getRegionKey(chunkX, chunkY, chunkZ));
+        }
+    }
+
+    /**
+     * Moves the vertices of a section's mesh into the space of its region and uploads them into the region's buffer for
+     * the layer.
+     */
+    ChunkRegionBuffer.Segment upload(ChunkRegion region, RenderLayer layer, BufferUploadData upload, int chunkX, int chunkY, int chunkZ) {
+        VertexFormat format = upload.format;
+
+        // Compact positions don't have the range to cover a whole region
+        if (ChunkVertexFormats.isCompact(format)) {
+            throw new UnsupportedOperationException("Compact vertices can't be used with multi-draw rendering");
+        }
+
+        // The vertices need to be translated before upload, so any staged copy can't be used as-is
+        upload.releaseStaged(false);
+
+        ByteBuffer src = upload.buffer;
+        int length = src.remaining();
+
+        if (this.scratchBuffer.capacity() < length) {
+            this.scratchBuffer = GlAllocationUtils.allocateByteBuffer(Math.max(length, this.scratchBuffer.capacity() * 2));
+        }
+
+        ByteBuffer dst = this.scratchBuffer;
+        dst.clear();
+        dst.put(src.duplicate());
+        dst.flip();
+
+        float offsetX = (chunkX << 4) - region.getOriginX();
+        float offsetY = (chunkY << 4) - region.getOriginY();
+        float offsetZ = (chunkZ << 4) - region.getOriginZ();
+
+        int stride = format.getVertexSize();
+
+        // The position is always the first element of the vertex format
+        for (int i = 0; i < length; i += stride) {
+            dst.putFloat(i, dst.getFloat(i) + offsetX);
+            dst.putFloat(i + 4, dst.getFloat(i + 4) + offsetY);
+            dst.putFloat(i + 8, dst.getFloat(i + 8) + offsetZ);
+        }
+
+        ChunkRegionBuffer.Segment segment = region.getOrCreateBuffer(layer, format).upload(dst);
+
+        this.indexBuffer.ensureCapacity(segment.getVertexCount() / 4);
+
+        return segment;
+    }
+
+    /**
+     * @return True if the given settings will cause this renderer to be used
+     */
+    public static boolean isEnabled(SodiumGameOptions.PerformanceSettings settings) {
+        // Compact vertices can't be moved into the space of a region
+        return settings.useLargeBuffers && !settings.useCompactVertexFormat && isSupported();
+    }
+
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+
+        return caps.OpenGL32 || (caps.OpenGL15 && caps.GL_ARB_copy_buffer && caps.GL_ARB_draw_elements_base_vertex);
+    }
+}
@@ -0,0 +1,103 @@
+package me.jellysquid.mods.sodium.client.render.backends.multidraw;
+
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceArrayMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMap;
+import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderState;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkLayerInfo;
+import net.minecraft.client.render.RenderLayer;
+
+import java.util.Collection;
+
+public class ChunkRenderStateMultiDraw implements ChunkRenderState {
+    private final ChunkRenderBackendMultiDraw backend;
+    private final int chunkX, chunkY, chunkZ;
+
+    private final Reference2ReferenceArrayMap<RenderLayer, ChunkRegionBuffer.Segment> segments = new Reference2ReferenceArrayMap<>();
+    private final Reference2ReferenceArrayMap<RenderLayer, int[]> facingOffsets = new Reference2ReferenceArrayMap<>();
+
+    // The region which this section's meshes are stored in, or null if there are no meshes
+    private ChunkRegion region;
+
+    public ChunkRenderStateMultiDraw(ChunkRenderBackendMultiDraw backend, int chunkX, int chunkY, int chunkZ) {
+        this.backend = backend;
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.chunkZ = chunkZ;
+    }
+
+    public ChunkRegionBuffer.Segment getSegmentForLayer(RenderLayer layer) {
+        return this.segments.get(layer);
+    }
+
+    public int[] getFacingOffsetsForLayer(RenderLayer layer) {
+        return this.facingOffsets.get(layer);
+    }
+
+    public ChunkRegion getRegion() {
+        return this.region;
+    }
+
+    @Override
+    public void clearData() {
+        for (ChunkRegionBuffer.Segment segment : this.segments.values()) {
+            segment.getBuffer().free(segment);
+        }
+
+        this.segments.clear();
+        this.facingOffsets.clear();
+
+        this.releaseRegion();
+    }
+
+    @Override
+    public void uploadData(Collection<ChunkLayerInfo> layers) {
+        if (this.region == null) {
+            this.region = this.backend.getOrCreateRegion(this.chunkX, this.chunkY, this.chunkZ);
+        }
+
+        ObjectIterator<Reference2ReferenceMap.Entry<RenderLayer, ChunkRegionBuffer.Segment>> it = this.segments.reference2ReferenceEntrySet().iterator();
+
+        while (it.hasNext()) {
+            Reference2ReferenceMap.Entry<RenderLayer, ChunkRegionBuffer.Segment> entry = it.next();
+
+            if (!ChunkLayerInfo.containsLayer(layers, entry.getKey())) {
+                ChunkRegionBuffer.Segment segment = entry.getValue();
+                segment.getBuffer().free(segment);
+
+                this.facingOffsets.remove(entry.getKey());
+
+                it.remove();
+            }
+        }
+
+        for (ChunkLayerInfo entry : layers) {
+            ChunkRegionBuffer.Segment prev = this.segments.get(entry.getLayer());
+
+            if (prev != null) {
+                prev.getBuffer().free(prev);
+            }
+
+            ChunkRegionBuffer.Segment segment = this.backend.upload(this.region, entry.getLayer(), entry.takePendingUpload(),
+                    this.chunkX, this.chunkY, this.chunkZ);
+
+            this.segments.put(entry.getLayer(), segment);
+            this.facingOffsets.put(entry.getLayer(), entry.getFacingOffsets());
+        }
+
+        this.releaseRegion();
+    }
+
+    private void releaseRegion() {
+        if (this.region == null) {
+            return;
+        }
+
+        this.region.deleteEmptyBuffers();
+
+        if (this.segments.isEmpty()) {
+            this.backend.releaseRegion(this.region, this.chunkX, this.chunkY, this.chunkZ);
+            this.region = null;
+        }
+    }
+}
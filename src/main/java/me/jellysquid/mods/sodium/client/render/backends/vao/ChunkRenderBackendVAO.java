@@ -2,18 +2,20 @@ package me.jellysquid.mods.sodium.client.render.backends.vao;
 
 import me.jellysquid.mods.sodium.client.gl.GlVertexArray;
 import me.jellysquid.mods.sodium.client.gl.GlVertexArrayBuffer;
+import me.jellysquid.mods.sodium.client.gl.GlVertexBuffer;
 import me.jellysquid.mods.sodium.client.render.backends.AbstractChunkRenderBackend;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
 import net.minecraft.client.render.RenderLayer;
 import net.minecraft.client.util.math.MatrixStack;
-import org.lwjgl.opengl.GL11;
+
+import java.util.List;
 
 public class ChunkRenderBackendVAO extends AbstractChunkRenderBackend<ChunkRenderStateVAO> {
     private GlVertexArrayBuffer lastRender;
 
     @Override
-    public ChunkRenderStateVAO createRenderState() {
-        return new ChunkRenderStateVAO();
+    public ChunkRenderStateVAO createRenderState(int chunkX, int chunkY, int chunkZ) {
+        return new ChunkRenderStateVAO(this.indexBuffer);
     }
 
     @Override
@@ -25,10 +27,11 @@ public class ChunkRenderBackendVAO extends AbstractChunkRenderBackend<ChunkRende
             return;
         }
 
-        this.beginChunkRender(chunk, x, y, z);
+        this.beginChunkRender(chunk, x, y, z, vao.getVertexFormat());
 
         vao.bind();
-        vao.draw(GL11.GL_QUADS);
+
+        this.drawFaces(data.getFacingOffsetsForLayer(layer), getVisibleFaces(chunk, x, y, z));
 
         this.lastRender = vao;
     }
@@ -46,4 +49,9 @@ public class ChunkRenderBackendVAO extends AbstractChunkRenderBackend<ChunkRende
     public static boolean isSupported() {
         return GlVertexArray.isSupported();
     }
+
+    @Override
+    public void addDebugStrings(List<String> list) {
+        list.add(GlVertexBuffer.getUploadStatistics());
+    }
 }
@@ -1,56 +1,93 @@
 package me.jellysquid.mods.sodium.client.render.backends.vao;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceArrayMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMap;
+import me.jellysquid.mods.sodium.client.gl.GlQuadIndexBuffer;
 import me.jellysquid.mods.sodium.client.gl.GlVertexArray;
 import me.jellysquid.mods.sodium.client.gl.GlVertexArrayBuffer;
 import me.jellysquid.mods.sodium.client.gl.GlVertexBuffer;
 import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderState;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkLayerInfo;
 import net.minecraft.client.render.RenderLayer;
-import net.minecraft.client.render.VertexFormat;
-import net.minecraft.client.render.VertexFormats;
 import org.lwjgl.opengl.GL15;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 public class ChunkRenderStateVAO implements ChunkRenderState {
-    private static final VertexFormat VERTEX_FORMAT = VertexFormats.POSITION_COLOR_TEXTURE_LIGHT_NORMAL;
+    // The maximum number of buffers kept around for layers which may come back in a later rebuild
+    private static final int MAX_IDLE_BUFFERS = 2;
 
     private final Reference2ReferenceArrayMap<RenderLayer, GlVertexArrayBuffer> vaos = new Reference2ReferenceArrayMap<>();
+    private final Reference2ReferenceArrayMap<RenderLayer, int[]> facingOffsets = new Reference2ReferenceArrayMap<>();
+    private final ObjectArrayList<GlVertexArrayBuffer> idleBuffers = new ObjectArrayList<>(MAX_IDLE_BUFFERS);
+    private final GlQuadIndexBuffer indexBuffer;
+
+    public ChunkRenderStateVAO(GlQuadIndexBuffer indexBuffer) {
+        this.indexBuffer = indexBuffer;
+    }
 
     public GlVertexArrayBuffer getVertexArrayForLayer(RenderLayer layer) {
         return this.vaos.get(layer);
     }
 
+    public int[] getFacingOffsetsForLayer(RenderLayer layer) {
+        return this.facingOffsets.get(layer);
+    }
+
     @Override
     public void clearData() {
         for (GlVertexArrayBuffer buffer : this.vaos.values()) {
             buffer.delete();
         }
 
+        for (GlVertexArrayBuffer buffer : this.idleBuffers) {
+            buffer.delete();
+        }
+
         this.vaos.clear();
+        this.facingOffsets.clear();
+        this.idleBuffers.clear();
     }
 
     @Override
     public void uploadData(Collection<ChunkLayerInfo> layers) {
-        List<RenderLayer> removed = new ArrayList<>(this.vaos.keySet());
+        // Release the buffers of removed layers first so that they can be re-used by any new layers
+        ObjectIterator<Reference2ReferenceMap.Entry<RenderLayer, GlVertexArrayBuffer>> it = this.vaos.reference2ReferenceEntrySet().iterator();
+
+        while (it.hasNext()) {
+            Reference2ReferenceMap.Entry<RenderLayer, GlVertexArrayBuffer> entry = it.next();
+
+            if (!ChunkLayerInfo.containsLayer(layers, entry.getKey())) {
+                this.releaseBuffer(entry.getValue());
+                this.facingOffsets.remove(entry.getKey());
+
+                it.remove();
+            }
+        }
 
         for (ChunkLayerInfo entry : layers) {
             GlVertexArrayBuffer buffer = this.vaos.computeIfAbsent(entry.getLayer(), this::createData);
             buffer.upload(entry.takePendingUpload());
 
-            removed.remove(entry.getLayer());
+            this.facingOffsets.put(entry.getLayer(), entry.getFacingOffsets());
         }
+    }
 
-        for (RenderLayer layer : removed) {
-            GlVertexArrayBuffer buffer = this.vaos.remove(layer);
+    private void releaseBuffer(GlVertexArrayBuffer buffer) {
+        if (this.idleBuffers.size() < MAX_IDLE_BUFFERS) {
+            this.idleBuffers.add(buffer);
+        } else {
             buffer.delete();
         }
     }
 
     private GlVertexArrayBuffer createData(RenderLayer layer) {
-        return new GlVertexArrayBuffer(VERTEX_FORMAT, new GlVertexBuffer(GL15.GL_ARRAY_BUFFER), new GlVertexArray());
+        if (!this.idleBuffers.isEmpty()) {
+            return this.idleBuffers.pop();
+        }
+
+        return new GlVertexArrayBuffer(new GlVertexBuffer(GL15.GL_ARRAY_BUFFER), new GlVertexArray(), this.indexBuffer);
     }
 }
@@ -4,16 +4,18 @@ import me.jellysquid.mods.sodium.client.gl.GlVertexBuffer;
 import me.jellysquid.mods.sodium.client.render.backends.AbstractChunkRenderBackend;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
 import net.minecraft.client.render.RenderLayer;
-import net.minecraft.client.render.VertexFormats;
+import net.minecraft.client.render.VertexFormat;
 import net.minecraft.client.util.math.MatrixStack;
-import org.lwjgl.opengl.GL11;
+
+import java.util.List;
 
 public class ChunkRenderBackendVBO extends AbstractChunkRenderBackend<ChunkRenderStateVBO> {
     private GlVertexBuffer lastRender;
+    private VertexFormat lastFormat;
 
     @Override
-    public ChunkRenderStateVBO createRenderState() {
-        return new ChunkRenderStateVBO();
+    public ChunkRenderStateVBO createRenderState(int chunkX, int chunkY, int chunkZ) {
+        return new ChunkRenderStateVBO(this.indexBuffer);
     }
 
     @Override
@@ -25,22 +27,50 @@ public class ChunkRenderBackendVBO extends AbstractChunkRenderBackend<ChunkRende
             return;
         }
 
-        this.beginChunkRender(chunk, x, y, z);
+        VertexFormat format = vbo.getVertexFormat();
+
+        this.beginChunkRender(chunk, x, y, z, format);
+
+        // Disable any arrays used by the previous format which this one doesn't have
+        if (this.lastFormat != null && this.lastFormat != format) {
+            this.lastFormat.endDrawing();
+        }
 
         vbo.bind();
-        VertexFormats.POSITION_COLOR_TEXTURE_LIGHT_NORMAL.startDrawing(0L);
-        vbo.drawInline(GL11.GL_QUADS);
+        format.startDrawing(0L);
+
+        this.drawFaces(data.getFacingOffsetsForLayer(layer), getVisibleFaces(chunk, x, y, z));
 
         this.lastRender = vbo;
+        this.lastFormat = format;
+    }
+
+    @Override
+    public void begin(MatrixStack matrixStack) {
+        super.begin(matrixStack);
+
+        this.indexBuffer.bind();
     }
 
     @Override
     public void end(MatrixStack matrixStack) {
         super.end(matrixStack);
 
+        this.indexBuffer.unbind();
+
         if (this.lastRender != null) {
             this.lastRender.unbind();
             this.lastRender = null;
         }
+
+        if (this.lastFormat != null) {
+            this.lastFormat.endDrawing();
+            this.lastFormat = null;
+        }
+    }
+
+    @Override
+    public void addDebugStrings(List<String> list) {
+        list.add(GlVertexBuffer.getUploadStatistics());
     }
 }
@@ -1,50 +1,93 @@
 package me.jellysquid.mods.sodium.client.render.backends.vbo;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceArrayMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMap;
+import me.jellysquid.mods.sodium.client.gl.GlQuadIndexBuffer;
 import me.jellysquid.mods.sodium.client.gl.GlVertexBuffer;
 import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderState;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkLayerInfo;
 import net.minecraft.client.render.RenderLayer;
 import org.lwjgl.opengl.GL15;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 public class ChunkRenderStateVBO implements ChunkRenderState {
+    // The maximum number of buffers kept around for layers which may come back in a later rebuild
+    private static final int MAX_IDLE_BUFFERS = 2;
+
     private final Reference2ReferenceArrayMap<RenderLayer, GlVertexBuffer> vbos = new Reference2ReferenceArrayMap<>();
+    private final Reference2ReferenceArrayMap<RenderLayer, int[]> facingOffsets = new Reference2ReferenceArrayMap<>();
+    private final ObjectArrayList<GlVertexBuffer> idleBuffers = new ObjectArrayList<>(MAX_IDLE_BUFFERS);
+    private final GlQuadIndexBuffer indexBuffer;
+
+    public ChunkRenderStateVBO(GlQuadIndexBuffer indexBuffer) {
+        this.indexBuffer = indexBuffer;
+    }
 
     public GlVertexBuffer getVertexBufferForLayer(RenderLayer layer) {
         return this.vbos.get(layer);
     }
 
+    public int[] getFacingOffsetsForLayer(RenderLayer layer) {
+        return this.facingOffsets.get(layer);
+    }
+
     @Override
     public void clearData() {
         for (GlVertexBuffer buffer : this.vbos.values()) {
             buffer.delete();
         }
 
+        for (GlVertexBuffer buffer : this.idleBuffers) {
+            buffer.delete();
+        }
+
         this.vbos.clear();
+        this.facingOffsets.clear();
+        this.idleBuffers.clear();
     }
 
     @Override
     public void uploadData(Collection<ChunkLayerInfo> layers) {
-        List<RenderLayer> removed = new ArrayList<>(this.vbos.keySet());
+        // Release the buffers of removed layers first so that they can be re-used by any new layers
+        ObjectIterator<Reference2ReferenceMap.Entry<RenderLayer, GlVertexBuffer>> it = this.vbos.reference2ReferenceEntrySet().iterator();
+
+        while (it.hasNext()) {
+            Reference2ReferenceMap.Entry<RenderLayer, GlVertexBuffer> entry = it.next();
+
+            if (!ChunkLayerInfo.containsLayer(layers, entry.getKey())) {
+                this.releaseBuffer(entry.getValue());
+                this.facingOffsets.remove(entry.getKey());
+
+                it.remove();
+            }
+        }
 
         for (ChunkLayerInfo entry : layers) {
             GlVertexBuffer buffer = this.vbos.computeIfAbsent(entry.getLayer(), this::createData);
             buffer.upload(entry.takePendingUpload());
 
-            removed.remove(entry.getLayer());
+            this.indexBuffer.ensureCapacity(buffer.getVertexCount() / 4);
+
+            this.facingOffsets.put(entry.getLayer(), entry.getFacingOffsets());
         }
+    }
 
-        for (RenderLayer layer : removed) {
-            GlVertexBuffer buffer = this.vbos.remove(layer);
+    private void releaseBuffer(GlVertexBuffer buffer) {
+        if (this.idleBuffers.size() < MAX_IDLE_BUFFERS) {
+            this.idleBuffers.add(buffer);
+        } else {
             buffer.delete();
         }
     }
 
     private GlVertexBuffer createData(RenderLayer layer) {
+        if (!this.idleBuffers.isEmpty()) {
+            return this.idleBuffers.pop();
+        }
+
         return new GlVertexBuffer(GL15.GL_ARRAY_BUFFER);
     }
 }
@@ -1,11 +1,11 @@
 package me.jellysquid.mods.sodium.client.render.chunk;
 
-import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectArrayFIFOQueue;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
-import it.unimi.dsi.fastutil.objects.ObjectListIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectArrayMap;
 import me.jellysquid.mods.sodium.client.SodiumClientMod;
 import me.jellysquid.mods.sodium.client.gl.GlHelper;
 import me.jellysquid.mods.sodium.client.gui.SodiumGameOptions;
@@ -13,14 +13,11 @@ import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderBackend;
 import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderState;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.ChunkBuilder;
 import me.jellysquid.mods.sodium.client.world.ChunkStatusListener;
-import me.jellysquid.mods.sodium.common.util.DirectionUtil;
-import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.render.Camera;
 import net.minecraft.client.render.Frustum;
 import net.minecraft.client.render.RenderLayer;
-import net.minecraft.client.render.chunk.ChunkOcclusionDataBuilder;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.client.util.math.Vector3f;
 import net.minecraft.util.math.*;
@@ -29,6 +26,9 @@ import net.minecraft.world.chunk.ChunkSection;
 import net.minecraft.world.chunk.WorldChunk;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListener {
     private final ChunkBuilder chunkBuilder;
@@ -39,18 +39,42 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
     private final ObjectList<ChunkRender<T>> visibleChunks = new ObjectArrayList<>();
     private final ObjectList<ChunkRender<T>> drawableChunks = new ObjectArrayList<>();
 
+    // The drawable chunks which have geometry in each block layer, in the order they were visited
+    private final Reference2ObjectArrayMap<RenderLayer, ObjectArrayList<ChunkRender<T>>> drawableChunksByLayer = new Reference2ObjectArrayMap<>();
+
     private final ObjectList<BlockEntity> visibleBlockEntities = new ObjectArrayList<>();
 
-    private final ObjectArrayFIFOQueue<ChunkRender<T>> iterationQueue = new ObjectArrayFIFOQueue<>();
+    private final ChunkGraphGrid<T> grid;
+
+    private final ChunkOpenFacesCache openFacesCache = new ChunkOpenFacesCache();
+
+    // The grid indices of the sections which are waiting to be visited
+    private final IntArrayFIFOQueue iterationQueue = new IntArrayFIFOQueue();
 
     private final ChunkRenderManager renderManager;
     private final World world;
 
-    private int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
     private int renderDistance;
     private int lastFrame;
 
-    private boolean useCulling;
+    // The last traversal which has completed, whose reachable sections are filtered to find the visible sections
+    private ChunkGraphTraversal traversal;
+
+    // The renders of the sections reached by the last traversal which has completed
+    private final ObjectArrayList<ChunkRender<T>> reachableChunks = new ObjectArrayList<>();
+
+    // The traversal which is running on the traversal thread, if any
+    private CompletableFuture<ChunkGraphTraversal> pendingTraversal;
+
+    // The list of reachable sections from the traversal before last, which can be re-used by the next traversal
+    private IntArrayList spareReachableSections;
+
+    // Incremented for every traversal so that the visited sections of previous traversals can be told apart
+    private int traversalCount;
+
+    // The executor which traversals are run on, or null if they are run on the main thread
+    private final ExecutorService traversalExecutor;
+
     private boolean useFogCulling;
 
     public ChunkGraph(ChunkBuilder chunkBuilder, ChunkRenderBackend<T> chunkRenderer, ChunkRenderManager renderManager, World world, int renderDistance) {
@@ -59,111 +83,172 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
         this.renderManager = renderManager;
         this.world = world;
         this.renderDistance = renderDistance;
+        this.grid = new ChunkGraphGrid<>(renderDistance);
 
         SodiumGameOptions options = SodiumClientMod.options();
 
         this.useFogCulling = GlHelper.supportsNvFog() && this.renderDistance > 4 && options.quality.enableFog && options.performance.useFogChunkCulling;
+
+        if (options.performance.useAsyncChunkTraversal) {
+            this.traversalExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Chunk Graph Traversal");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+        } else {
+            this.traversalExecutor = null;
+        }
+
+        for (RenderLayer layer : RenderLayer.getBlockLayers()) {
+            this.drawableChunksByLayer.put(layer, new ObjectArrayList<>());
+        }
     }
 
+    /**
+     * Finds every section which can be reached from the camera's section and then filters them against the frustum.
+     * This must be called whenever the graph changes or {@link #canReuseTraversal(BlockPos, boolean)} returns false.
+     */
     public void calculateVisible(Camera camera, Vec3d cameraPos, BlockPos blockPos, int frame, Frustum frustum, boolean spectator) {
-        int maxDistBlocks = this.renderDistance * 16;
+        this.finishTraversal();
 
-        this.minChunkX = MathHelper.floor(cameraPos.x - maxDistBlocks) >> 4;
-        this.minChunkZ = MathHelper.floor(cameraPos.z - maxDistBlocks) >> 4;
+        this.publishTraversal(this.traverse(this.createTraversal(camera, cameraPos, blockPos, spectator)));
 
-        this.maxChunkX = MathHelper.floor(cameraPos.x + maxDistBlocks) >> 4;
-        this.maxChunkZ = MathHelper.floor(cameraPos.z + maxDistBlocks) >> 4;
+        this.updateVisible(frame, frustum);
+    }
 
-        this.lastFrame = frame;
+    /**
+     * Starts a traversal from the camera's current position on the traversal thread. The grid is prepared on the main
+     * thread first, so the traversal thread only ever reads the grid and never the world. Its results will be used once
+     * {@link #finishTraversal()} is called, which must happen before the graph is next modified.
+     */
+    public void startTraversal(Camera camera, Vec3d cameraPos, BlockPos blockPos, boolean spectator) {
+        if (this.traversalExecutor == null) {
+            throw new IllegalStateException("Traversals are not being run asynchronously");
+        }
 
-        this.visibleChunks.clear();
-        this.drawableChunks.clear();
-        this.visibleBlockEntities.clear();
+        this.finishTraversal();
 
-        this.init(blockPos, camera, cameraPos, frustum, frame, spectator);
+        ChunkGraphTraversal traversal = this.createTraversal(camera, cameraPos, blockPos, spectator);
 
-        boolean fogCulling = this.useCulling && this.useFogCulling;
+        this.pendingTraversal = CompletableFuture.supplyAsync(() -> this.traverse(traversal), this.traversalExecutor);
+    }
 
-        int maxChunkDistance = (this.renderDistance * 16) + 16;
+    /**
+     * Waits for the traversal running on the traversal thread to complete, if there is one, and makes its results
+     * available to {@link #updateVisible(int, Frustum)}.
+     *
+     * @return True if the results of a traversal were made available
+     */
+    public boolean finishTraversal() {
+        if (this.pendingTraversal == null) {
+            return false;
+        }
 
-        while (!this.iterationQueue.isEmpty()) {
-            ChunkRender<T> render = this.iterationQueue.dequeue();
+        ChunkGraphTraversal traversal = this.pendingTraversal.join();
 
-            this.markVisible(render);
+        this.pendingTraversal = null;
+        this.publishTraversal(traversal);
 
-            if (fogCulling && !render.getOrigin().isWithinDistance(cameraPos, maxChunkDistance)) {
-                continue;
-            }
+        return true;
+    }
 
-            this.addNeighbors(render, frustum, frame);
+    private void publishTraversal(ChunkGraphTraversal traversal) {
+        if (this.traversal != null) {
+            this.spareReachableSections = this.traversal.getReachableSections();
         }
-    }
 
-    private void markVisible(ChunkRender<T> render) {
-        render.setLastVisibleFrame(this.lastFrame);
+        this.traversal = traversal;
+        this.reachableChunks.clear();
 
-        this.visibleChunks.add(render);
+        IntArrayList sections = traversal.getReachableSections();
+        int size = sections.size();
 
-        if (!render.isEmpty()) {
-            this.drawableChunks.add(render);
+        for (int i = 0; i < size; i++) {
+            ChunkRender<T> render = this.grid.getRender(sections.getInt(i));
+
+            if (render != null) {
+                this.reachableChunks.add(render);
+            }
         }
+    }
 
-        Collection<BlockEntity> blockEntities = render.getMeshInfo().getBlockEntities();
+    public boolean isTraversalAsync() {
+        return this.traversalExecutor != null;
+    }
 
-        if (!blockEntities.isEmpty()) {
-            this.visibleBlockEntities.addAll(blockEntities);
-        }
+    public boolean hasTraversal() {
+        return this.traversal != null;
     }
 
-    private void addNeighbors(ChunkRender<T> render, Frustum frustum, int frame) {
-        for (Direction adjDir : DirectionUtil.ALL_DIRECTIONS) {
-            ChunkRender<T> adjRender = this.getAdjacentRender(render, adjDir);
+    /**
+     * @return True if the sections found by the last traversal are still reachable from the camera, in which case only
+     * {@link #updateVisible(int, Frustum)} needs to be called when the camera moves
+     */
+    public boolean canReuseTraversal(BlockPos blockPos, boolean spectator) {
+        ChunkGraphTraversal traversal = this.traversal;
 
-            if (adjRender == null || adjRender.getRebuildFrame() == frame) {
-                continue;
-            }
+        return traversal != null && traversal.isUsingCulling() == this.isCullingEnabled(blockPos, spectator) &&
+                traversal.isStartedFrom(blockPos.getX() >> 4, blockPos.getY() >> 4, blockPos.getZ() >> 4);
+    }
 
-            if (this.useCulling && !this.isVisible(render, adjRender, adjDir, frustum, frame)) {
-                continue;
-            }
+    /**
+     * Rebuilds the lists of visible chunks from the sections found by the last traversal which are within the frustum.
+     */
+    public void updateVisible(int frame, Frustum frustum) {
+        this.lastFrame = frame;
 
-            if (!adjRender.hasChunkNeighbors(this)) {
-                continue;
-            }
+        this.clearVisibleLists();
 
-            adjRender.setDirection(adjDir);
-            adjRender.setRebuildFrame(frame);
-            adjRender.updateCullingState(render.cullingState, adjDir);
+        if (this.traversal == null) {
+            return;
+        }
+
+        ObjectArrayList<ChunkRender<T>> reachableChunks = this.reachableChunks;
+        int size = reachableChunks.size();
 
-            this.iterationQueue.enqueue(adjRender);
+        for (int i = 0; i < size; i++) {
+            ChunkRender<T> render = reachableChunks.get(i);
+
+            if (this.isInFrustum(render, frustum, frame)) {
+                this.markVisible(render);
+            }
         }
     }
 
-    private boolean isVisible(ChunkRender<T> render, ChunkRender<T> adjRender, Direction dir, Frustum frustum, int frame) {
-        if (render.canCull(dir.getOpposite())) {
-            return false;
-        }
+    private void markVisible(ChunkRender<T> render) {
+        render.setLastVisibleFrame(this.lastFrame);
 
-        if (render.direction != null && !render.isVisibleThrough(render.direction.getOpposite(), dir)) {
-            return false;
-        }
+        this.visibleChunks.add(render);
 
-        return adjRender.isVisible(frustum, frame);
-    }
+        if (!render.isEmpty()) {
+            this.drawableChunks.add(render);
+
+            for (ChunkLayerInfo layer : render.getMeshInfo().getLayers()) {
+                this.drawableChunksByLayer.get(layer.getLayer()).add(render);
+            }
+        }
 
-    private void init(BlockPos blockPos, Camera camera, Vec3d cameraPos, Frustum frustum, int frame, boolean spectator) {
-        MinecraftClient client = MinecraftClient.getInstance();
-        ObjectArrayFIFOQueue<ChunkRender<T>> queue = this.iterationQueue;
+        Collection<BlockEntity> blockEntities = render.getMeshInfo().getBlockEntities();
 
-        boolean cull = client.chunkCullingEnabled;
+        if (!blockEntities.isEmpty()) {
+            this.visibleBlockEntities.addAll(blockEntities);
+        }
+    }
 
-        ChunkRender<T> node = this.getOrCreateRender(blockPos);
+    /**
+     * Captures the inputs of a traversal which can only be accessed on the main thread, and loads everything the
+     * traversal can reach into the grid. Nothing which the traversal reads may touch the world after this returns.
+     */
+    private ChunkGraphTraversal createTraversal(Camera camera, Vec3d cameraPos, BlockPos blockPos, boolean spectator) {
+        // The camera's block position is mutable and will change while the traversal runs
+        BlockPos pos = blockPos.toImmutable();
 
-        if (node != null) {
-            node.resetGraphState();
+        boolean visitCameraSection = spectator;
+        int sectionY = pos.getY() >> 4;
 
-            // Player is within bounds and inside a node
-            Set<Direction> openFaces = this.getOpenChunkFaces(blockPos);
+        if (!visitCameraSection && sectionY >= 0 && sectionY < 16) {
+            Set<Direction> openFaces = this.getOpenChunkFaces(pos);
 
             if (openFaces.size() == 1) {
                 Vector3f vector3f = camera.getHorizontalPlane();
@@ -172,60 +257,96 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
                 openFaces.remove(direction);
             }
 
-            if (!openFaces.isEmpty() || spectator) {
-                if (spectator && this.world.getBlockState(blockPos).isFullOpaque(this.world, blockPos)) {
-                    cull = false;
-                }
+            visitCameraSection = !openFaces.isEmpty();
+        }
 
-                node.setRebuildFrame(frame);
-            }
+        IntArrayList reachableSections = this.spareReachableSections;
 
-            queue.enqueue(node);
+        if (reachableSections == null) {
+            reachableSections = new IntArrayList();
         } else {
-            // Player is out-of-bounds
-            int y = blockPos.getY() > 0 ? 248 : 8;
+            reachableSections.clear();
+        }
 
-            int x = MathHelper.floor(cameraPos.x / 16.0D) * 16;
-            int z = MathHelper.floor(cameraPos.z / 16.0D) * 16;
+        this.spareReachableSections = null;
 
-            List<ChunkRender<T>> list = Lists.newArrayList();
+        ChunkGraphTraversal traversal = new ChunkGraphTraversal(cameraPos.x, cameraPos.y, cameraPos.z, pos.getX(), pos.getY(), pos.getZ(),
+                this.renderDistance, ++this.traversalCount, this.isCullingEnabled(pos, spectator), this.useFogCulling,
+                visitCameraSection, reachableSections);
 
-            for (int x2 = -this.renderDistance; x2 <= this.renderDistance; ++x2) {
-                for (int z2 = -this.renderDistance; z2 <= this.renderDistance; ++z2) {
-                    ChunkRender<T> chunk = this.getOrCreateRender(new BlockPos(x + (x2 << 4) + 8, y, z + (z2 << 4) + 8));
+        this.prepareGrid(traversal);
 
-                    if (chunk == null || !frustum.isVisible(chunk.getBoundingBox())) {
-                        continue;
-                    }
+        return traversal;
+    }
 
-                    chunk.setRebuildFrame(frame);
-                    chunk.resetGraphState();
+    /**
+     * Finds every section which can be reached from the camera's section. This only reads the grid, so it can be run on
+     * any thread as long as the graph is not modified until it completes.
+     */
+    private ChunkGraphTraversal traverse(ChunkGraphTraversal traversal) {
+        traversal.run(this.grid, this.iterationQueue);
 
-                    list.add(chunk);
+        return traversal;
+    }
+
+    /**
+     * Loads every column which the traversal could visit or check the neighbours of into the grid, and takes a snapshot
+     * of which of those columns have all of their neighbouring chunks loaded. This creates renders and columns, which
+     * look up chunks in the world, so it must be called on the main thread.
+     */
+    private void prepareGrid(ChunkGraphTraversal traversal) {
+        int minX = traversal.getMinChunkX();
+        int minZ = traversal.getMinChunkZ();
+        int maxX = traversal.getMaxChunkX();
+        int maxZ = traversal.getMaxChunkZ();
+
+        for (int x = minX - 1; x <= maxX + 1; x++) {
+            for (int z = minZ - 1; z <= maxZ + 1; z++) {
+                if (!this.grid.holdsColumn(x, z)) {
+                    this.loadColumn(x, z);
                 }
             }
+        }
 
-            list.sort(Comparator.comparingDouble(o -> blockPos.getSquaredDistance(o.getOrigin().add(8, 8, 8))));
+        this.grid.updateColumnNeighbors(minX, minZ, maxX, maxZ);
+    }
 
-            for (ChunkRender<T> n : list) {
-                queue.enqueue(n);
-            }
+    private void loadColumn(int x, int z) {
+        ColumnRender<T> column = this.getOrCreateColumn(x, z);
+
+        this.grid.setColumn(x, z, column.isChunkPresent());
+
+        for (int y = 0; y < 16; y++) {
+            this.grid.setRender(column.getOrCreateChunk(y, this::createChunkRender));
         }
+    }
+
+    private boolean isInFrustum(ChunkRender<T> render, Frustum frustum, int frame) {
+        int index = this.grid.getIndex(render.getChunkX(), render.getChunkY(), render.getChunkZ());
 
-        this.useCulling = cull;
+        // Every section in a column shares the result, so it only needs to be tested once per frame
+        if (!this.grid.isColumnTested(index, frame)) {
+            this.grid.setColumnVisible(index, frame, frustum.isVisible(render.getColumn().getBoundingBox()));
+        }
+
+        return this.grid.isColumnVisible(index) && frustum.isVisible(render.getBoundingBox());
     }
 
-    public ChunkRender<T> getOrCreateRender(BlockPos pos) {
-        return this.getOrCreateRender(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+    private boolean isCullingEnabled(BlockPos blockPos, boolean spectator) {
+        // Spectators inside of opaque blocks would otherwise not be able to see anything
+        if (spectator && this.world.getBlockState(blockPos).isFullOpaque(this.world, blockPos)) {
+            return false;
+        }
+
+        return MinecraftClient.getInstance().chunkCullingEnabled;
     }
 
-    public ChunkRender<T> getOrCreateRender(int x, int y, int z) {
-        return this.columns.computeIfAbsent(ChunkPos.toLong(x, z), this::createColumn)
-                .getOrCreateChunk(y, this::createChunkRender);
+    private ColumnRender<T> getOrCreateColumn(int x, int z) {
+        return this.columns.computeIfAbsent(ChunkPos.toLong(x, z), this::createColumn);
     }
 
     private ChunkRender<T> createChunkRender(ColumnRender<T> column, int x, int y, int z) {
-        return new ChunkRender<>(this.renderManager, this.chunkBuilder, this.chunkRenderer.createRenderState(), column, x, y, z);
+        return new ChunkRender<>(this.renderManager, this.chunkBuilder, this.chunkRenderer.createRenderState(x, y, z), column, x, y, z);
     }
 
     public ChunkRender<T> getRender(int x, int y, int z) {
@@ -242,22 +363,6 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
         return new ColumnRender<>(this.world, ChunkPos.getPackedX(pos), ChunkPos.getPackedZ(pos));
     }
 
-    private ChunkRender<T> getAdjacentRender(ChunkRender<T> render, Direction direction) {
-        int x = render.getChunkX() + direction.getOffsetX();
-        int y = render.getChunkY() + direction.getOffsetY();
-        int z = render.getChunkZ() + direction.getOffsetZ();
-
-        if (!this.isWithinRenderBounds(x, y, z)) {
-            return null;
-        }
-
-        return render.getAdjacent(this, direction);
-    }
-
-    private boolean isWithinRenderBounds(int x, int y, int z) {
-        return y >= 0 && y < 16 && x >= this.minChunkX && x <= this.maxChunkX && z >= this.minChunkZ && z <= this.maxChunkZ;
-    }
-
     private Set<Direction> getOpenChunkFaces(BlockPos pos) {
         WorldChunk chunk = this.world.getChunk(pos.getX() >> 4, pos.getZ() >> 4);
 
@@ -267,36 +372,46 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
             return EnumSet.allOf(Direction.class);
         }
 
-        ChunkOcclusionDataBuilder occlusionBuilder = new ChunkOcclusionDataBuilder();
-
-        BlockPos.Mutable mpos = new BlockPos.Mutable();
+        return this.openFacesCache.getOpenFaces(this.world, this.getRender(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4), section, pos);
+    }
 
-        for (int x = 0; x < 16; x++) {
-            for (int y = 0; y < 16; y++) {
-                for (int z = 0; z < 16; z++) {
-                    BlockState state = section.getBlockState(x, y, z);
-                    mpos.set(x + pos.getX(), y + pos.getY(), z + pos.getZ());
+    public void reset() {
+        this.finishTraversal();
 
-                    if (state.isFullOpaque(this.world, mpos)) {
-                        occlusionBuilder.markClosed(mpos);
-                    }
-                }
-            }
+        if (this.traversalExecutor != null) {
+            this.traversalExecutor.shutdown();
         }
 
-        return occlusionBuilder.getOpenFaces(pos);
-    }
-
-    public void reset() {
         for (ColumnRender<T> column : this.columns.values()) {
             column.deleteData();
         }
 
         this.columns.clear();
+
+        this.grid.reset();
+        this.openFacesCache.reset();
+        this.clearVisibleLists();
+
+        this.traversal = null;
+        this.reachableChunks.clear();
+        this.spareReachableSections = null;
+        this.unloadQueue.clear();
+
+        this.chunkRenderer.delete();
+    }
+
+    private void clearVisibleLists() {
         this.visibleChunks.clear();
         this.drawableChunks.clear();
         this.visibleBlockEntities.clear();
-        this.unloadQueue.clear();
+
+        for (ObjectArrayList<ChunkRender<T>> list : this.drawableChunksByLayer.values()) {
+            list.clear();
+        }
+    }
+
+    public ChunkRenderBackend<T> getRenderBackend() {
+        return this.chunkRenderer;
     }
 
     public ObjectList<ChunkRender<T>> getVisibleChunks() {
@@ -328,6 +443,10 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
     private void removeRenderer(ChunkRender<T> render) {
         render.deleteData();
 
+        this.chunkBuilder.getMeshCache().onSectionUnloaded(render.getChunkX(), render.getChunkY(), render.getChunkZ());
+
+        this.grid.removeRender(render);
+
         ColumnRender<T> column = render.getColumn();
         column.remove(render);
 
@@ -347,6 +466,8 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
         if (column != null) {
             column.setChunkPresent(true);
         }
+
+        this.grid.setChunkPresent(x, z, true);
     }
 
     @Override
@@ -358,6 +479,15 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
 
             this.unloadQueue.add(column);
         }
+
+        this.grid.setChunkPresent(x, z, false);
+    }
+
+    /**
+     * Called when a new mesh has been uploaded for a section, after which the traversal will use its visibility.
+     */
+    public void onMeshUpdated(ChunkRender<?> render, ChunkMeshInfo meshInfo) {
+        this.grid.setVisibility(render, meshInfo.getFaceVisibility());
     }
 
     private ColumnRender<T> getRenderColumn(int x, int z) {
@@ -365,25 +495,22 @@ public class ChunkGraph<T extends ChunkRenderState> implements ChunkStatusListen
     }
 
     public void renderLayer(MatrixStack matrixStack, RenderLayer renderLayer, double x, double y, double z) {
-        boolean notTranslucent = renderLayer != RenderLayer.getTranslucent();
+        ObjectArrayList<ChunkRender<T>> list = this.drawableChunksByLayer.get(renderLayer);
 
-        ObjectList<ChunkRender<T>> list = this.getDrawableChunks();
-        ObjectListIterator<ChunkRender<T>> it = list.listIterator(notTranslucent ? 0 : list.size());
-
-        this.chunkRenderer.begin(matrixStack);
+        // Skip setting up the backend entirely when no visible chunk has geometry in this layer
+        if (list == null || list.isEmpty()) {
+            return;
+        }
 
+        boolean notTranslucent = renderLayer != RenderLayer.getTranslucent();
         boolean needManualTicking = SodiumClientMod.options().performance.animateOnlyVisibleTextures;
 
-        while (true) {
-            if (notTranslucent) {
-                if (!it.hasNext()) {
-                    break;
-                }
-            } else if (!it.hasPrevious()) {
-                break;
-            }
+        int size = list.size();
+
+        this.chunkRenderer.begin(matrixStack);
 
-            ChunkRender<T> render = notTranslucent ? it.next() : it.previous();
+        for (int i = 0; i < size; i++) {
+            ChunkRender<T> render = list.get(notTranslucent ? i : size - 1 - i);
 
             if (needManualTicking) {
                 render.tickTextures();
@@ -0,0 +1,284 @@
+package me.jellysquid.mods.sodium.client.render.chunk;
+
+import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderState;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.Arrays;
+
+/**
+ * Holds the state used by the visibility traversal for every section within render distance in flat arrays. Sections
+ * are indexed by their coordinates wrapped around the width of the grid, so the grid never needs to be moved along with
+ * the camera. As the grid is wider than the render distance, no two sections which are within render distance of the
+ * camera can share a cell.
+ *
+ * Each column of cells is held by a single chunk column at a time, which must be loaded into the grid with
+ * {@link #setColumn(int, int, boolean)} before a traversal can visit it. The traversal only ever reads the arrays held
+ * here, and never the renders themselves.
+ */
+public class ChunkGraphGrid<T extends ChunkRenderState> {
+    // The coordinate of a column which isn't held by any chunk column
+    private static final int EMPTY_COLUMN = Integer.MIN_VALUE;
+
+    private final int width, mask;
+
+    private final ChunkRender<T>[] renders;
+
+    // The visibility between each pair of faces of every section, see #isVisibleThrough(long, int, int)
+    private final long[] visibility;
+
+    // The frame in which each section was last added to the traversal
+    private final int[] rebuildFrames;
+
+    // The directions which the traversal has travelled in to reach each section
+    private final byte[] cullingStates;
+
+    // The ordinal of the direction each section was entered through, or -1 if it was the first section visited
+    private final byte[] directions;
+
+    // The coordinates of the chunk column which holds each column of cells
+    private final int[] columnX, columnZ;
+
+    // Whether the chunk of each column is loaded, and whether the chunks on every horizontal side of it are loaded
+    private final boolean[] columnPresent;
+    private final boolean[] columnNeighborsPresent;
+
+    // The frame in which the visibility of each column was last tested, and the result of the test
+    private final int[] columnFrames;
+    private final boolean[] columnVisible;
+
+    @SuppressWarnings("unchecked")
+    public ChunkGraphGrid(int renderDistance) {
+        // The traversal covers (2 * renderDistance) + 1 columns along each axis, and some extra room is left for the
+        // neighbours which are checked at the edges
+        this.width = MathHelper.smallestEncompassingPowerOfTwo((renderDistance * 2) + 3);
+        this.mask = this.width - 1;
+
+        int columns = this.width * this.width;
+        int sections = columns * 16;
+
+        this.renders = new ChunkRender[sections];
+        this.visibility = new long[sections];
+        this.rebuildFrames = new int[sections];
+        this.cullingStates = new byte[sections];
+        this.directions = new byte[sections];
+
+        this.columnX = new int[columns];
+        this.columnZ = new int[columns];
+
+        this.columnPresent = new boolean[columns];
+        this.columnNeighborsPresent = new boolean[columns];
+
+        this.columnFrames = new int[columns];
+        this.columnVisible = new boolean[columns];
+
+        this.reset();
+    }
+
+    /**
+     * @return The index of the cell for the section at the given coordinates, where {@param y} must be within 0..15
+     */
+    public int getIndex(int x, int y, int z) {
+        return ((((x & this.mask) * this.width) + (z & this.mask)) << 4) | y;
+    }
+
+    public static int getColumnIndex(int index) {
+        return index >> 4;
+    }
+
+    public int getChunkX(int index) {
+        return this.columnX[getColumnIndex(index)];
+    }
+
+    public static int getChunkY(int index) {
+        return index & 15;
+    }
+
+    public int getChunkZ(int index) {
+        return this.columnZ[getColumnIndex(index)];
+    }
+
+    /**
+     * @return True if the cells of the chunk column at the given coordinates are held by it
+     */
+    public boolean holdsColumn(int x, int z) {
+        int column = getColumnIndex(this.getIndex(x, 0, z));
+
+        return this.columnX[column] == x && this.columnZ[column] == z;
+    }
+
+    /**
+     * Gives the cells of the chunk column at the given coordinates to it, clearing the state left behind by the column
+     * which previously held them. The renders of the column should then be added with {@link #setRender(ChunkRender)}.
+     */
+    public void setColumn(int x, int z, boolean present) {
+        int index = this.getIndex(x, 0, z);
+        int column = getColumnIndex(index);
+
+        this.columnX[column] = x;
+        this.columnZ[column] = z;
+
+        this.columnPresent[column] = present;
+        this.columnNeighborsPresent[column] = false;
+        this.columnFrames[column] = -1;
+
+        for (int y = 0; y < 16; y++) {
+            this.renders[index + y] = null;
+            this.visibility[index + y] = 0L;
+            this.rebuildFrames[index + y] = -1;
+
+            this.resetGraphState(index + y);
+        }
+    }
+
+    public void setChunkPresent(int x, int z, boolean present) {
+        if (this.holdsColumn(x, z)) {
+            this.columnPresent[getColumnIndex(this.getIndex(x, 0, z))] = present;
+        }
+    }
+
+    /**
+     * Updates whether the chunks on every horizontal side of each column in the given range are loaded. Every column in
+     * the range and the columns bordering it must already be held by the grid.
+     */
+    public void updateColumnNeighbors(int minX, int minZ, int maxX, int maxZ) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                this.columnNeighborsPresent[getColumnIndex(this.getIndex(x, 0, z))] =
+                        this.isChunkPresent(x - 1, z) && this.isChunkPresent(x + 1, z) &&
+                        this.isChunkPresent(x, z - 1) && this.isChunkPresent(x, z + 1);
+            }
+        }
+    }
+
+    private boolean isChunkPresent(int x, int z) {
+        return this.holdsColumn(x, z) && this.columnPresent[getColumnIndex(this.getIndex(x, 0, z))];
+    }
+
+    public ChunkRender<T> getRender(int index) {
+        return this.renders[index];
+    }
+
+    /**
+     * Adds a render to the cells of its column, which must already be held by it.
+     */
+    public void setRender(ChunkRender<T> render) {
+        int index = this.getIndex(render.getChunkX(), render.getChunkY(), render.getChunkZ());
+
+        this.renders[index] = render;
+        this.visibility[index] = render.getMeshInfo().getFaceVisibility();
+    }
+
+    public void removeRender(ChunkRender<T> render) {
+        int index = this.getIndex(render.getChunkX(), render.getChunkY(), render.getChunkZ());
+
+        if (this.renders[index] == render) {
+            this.renders[index] = null;
+            this.visibility[index] = 0L;
+
+            // The column must be loaded into the grid again before it can be traversed
+            this.columnX[getColumnIndex(index)] = EMPTY_COLUMN;
+            this.columnZ[getColumnIndex(index)] = EMPTY_COLUMN;
+        }
+    }
+
+    /**
+     * Updates the visibility of a section after a new mesh has been uploaded for it. This does nothing if the render
+     * is no longer held by the grid.
+     */
+    public void setVisibility(ChunkRender<?> render, long visibility) {
+        int index = this.getIndex(render.getChunkX(), render.getChunkY(), render.getChunkZ());
+
+        if (this.renders[index] == render) {
+            this.visibility[index] = visibility;
+        }
+    }
+
+    public void setVisibility(int x, int y, int z, long visibility) {
+        this.visibility[this.getIndex(x, y, z)] = visibility;
+    }
+
+    public long getVisibility(int index) {
+        return this.visibility[index];
+    }
+
+    public static long getVisibilityBit(int from, int to) {
+        return 1L << ((from * 6) + to);
+    }
+
+    /**
+     * @return True if the face {@param to} can be seen through the face {@param from} in a visibility mask, where both
+     * faces are direction ordinals
+     */
+    public static boolean isVisibleThrough(long visibility, int from, int to) {
+        return (visibility & getVisibilityBit(from, to)) != 0L;
+    }
+
+    public void resetGraphState(int index) {
+        this.cullingStates[index] = 0;
+        this.directions[index] = -1;
+    }
+
+    public int getRebuildFrame(int index) {
+        return this.rebuildFrames[index];
+    }
+
+    public void setRebuildFrame(int index, int frame) {
+        this.rebuildFrames[index] = frame;
+    }
+
+    public byte getCullingState(int index) {
+        return this.cullingStates[index];
+    }
+
+    public boolean canCull(int index, int dir) {
+        return (this.cullingStates[index] & 1 << dir) != 0;
+    }
+
+    public int getDirection(int index) {
+        return this.directions[index];
+    }
+
+    /**
+     * Marks the section as being entered from its neighbour with the culling state {@param parent} by travelling in the
+     * direction {@param dir}.
+     */
+    public void setEnteredFrom(int index, byte parent, int dir) {
+        this.cullingStates[index] = (byte) (parent | (1 << dir));
+        this.directions[index] = (byte) dir;
+    }
+
+    /**
+     * @return True if the visibility of the column has already been tested during {@param frame}
+     */
+    public boolean isColumnTested(int index, int frame) {
+        return this.columnFrames[getColumnIndex(index)] == frame;
+    }
+
+    public boolean isColumnVisible(int index) {
+        return this.columnVisible[getColumnIndex(index)];
+    }
+
+    public void setColumnVisible(int index, int frame, boolean visible) {
+        int column = getColumnIndex(index);
+
+        this.columnFrames[column] = frame;
+        this.columnVisible[column] = visible;
+    }
+
+    public boolean isColumnNeighborsPresent(int index) {
+        return this.columnNeighborsPresent[getColumnIndex(index)];
+    }
+
+    public void reset() {
+        Arrays.fill(this.renders, null);
+        Arrays.fill(this.visibility, 0L);
+        Arrays.fill(this.rebuildFrames, -1);
+        Arrays.fill(this.cullingStates, (byte) 0);
+        Arrays.fill(this.directions, (byte) -1);
+        Arrays.fill(this.columnX, EMPTY_COLUMN);
+        Arrays.fill(this.columnZ, EMPTY_COLUMN);
+        Arrays.fill(this.columnPresent, false);
+        Arrays.fill(this.columnNeighborsPresent, false);
+        Arrays.fill(this.columnFrames, -1);
+    }
+}
@@ -0,0 +1,247 @@
+package me.jellysquid.mods.sodium.client.render.chunk;
+
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * Finds every section which can be reached from the camera's section by walking through the faces of each section
+ * that can be seen through from the face it was entered by. Only the state held by {@link ChunkGraphGrid} is read, so
+ * a traversal can run on any thread as long as the grid isn't modified until it completes.
+ *
+ * The grid must already hold every column within render distance and the columns bordering them, along with whether
+ * each of those columns has all of its neighbouring chunks loaded.
+ */
+public class ChunkGraphTraversal {
+    // The offsets of each direction, in the order of Direction#values()
+    private static final int[] OFFSET_X = { 0, 0, 0, 0, -1, 1 };
+    private static final int[] OFFSET_Y = { -1, 1, 0, 0, 0, 0 };
+    private static final int[] OFFSET_Z = { 0, 0, -1, 1, 0, 0 };
+
+    private final double cameraX, cameraY, cameraZ;
+    private final int blockX, blockY, blockZ;
+
+    private final int sectionX, sectionY, sectionZ;
+    private final int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+
+    private final int renderDistance;
+    private final int id;
+
+    private final boolean useCulling;
+    private final boolean useFogCulling;
+
+    // Whether or not the camera's section can be entered again from its neighbours
+    private final boolean visitCameraSection;
+
+    // The grid indices of every section which was reached, in the order they were visited
+    private final IntArrayList reachableSections;
+
+    /**
+     * @param id A number which must be different from that of every previous traversal over the same grid
+     * @param reachableSections An empty list which the reached sections will be added to
+     */
+    public ChunkGraphTraversal(double cameraX, double cameraY, double cameraZ, int blockX, int blockY, int blockZ,
+                               int renderDistance, int id, boolean useCulling, boolean useFogCulling,
+                               boolean visitCameraSection, IntArrayList reachableSections) {
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.cameraZ = cameraZ;
+        this.blockX = blockX;
+        this.blockY = blockY;
+        this.blockZ = blockZ;
+
+        this.sectionX = blockX >> 4;
+        this.sectionY = blockY >> 4;
+        this.sectionZ = blockZ >> 4;
+
+        int maxDistBlocks = renderDistance * 16;
+
+        this.minChunkX = MathHelper.floor(cameraX - maxDistBlocks) >> 4;
+        this.minChunkZ = MathHelper.floor(cameraZ - maxDistBlocks) >> 4;
+
+        this.maxChunkX = MathHelper.floor(cameraX + maxDistBlocks) >> 4;
+        this.maxChunkZ = MathHelper.floor(cameraZ + maxDistBlocks) >> 4;
+
+        this.renderDistance = renderDistance;
+        this.id = id;
+        this.useCulling = useCulling;
+        this.useFogCulling = useFogCulling && useCulling;
+        this.visitCameraSection = visitCameraSection;
+        this.reachableSections = reachableSections;
+    }
+
+    /**
+     * Runs the traversal, adding every section it reaches to {@link #getReachableSections()}.
+     *
+     * @param queue An empty queue which is used to hold the sections waiting to be visited
+     */
+    public void run(ChunkGraphGrid<?> grid, IntArrayFIFOQueue queue) {
+        this.init(grid, queue);
+
+        double maxDistance = (this.renderDistance * 16) + 16;
+        double maxDistanceSq = maxDistance * maxDistance;
+
+        while (!queue.isEmpty()) {
+            int index = queue.dequeueInt();
+
+            this.reachableSections.add(index);
+
+            int x = grid.getChunkX(index);
+            int y = ChunkGraphGrid.getChunkY(index);
+            int z = grid.getChunkZ(index);
+
+            if (this.useFogCulling && this.getDistanceSq(x, y, z) >= maxDistanceSq) {
+                continue;
+            }
+
+            this.addNeighbors(grid, queue, index, x, y, z);
+        }
+    }
+
+    private void addNeighbors(ChunkGraphGrid<?> grid, IntArrayFIFOQueue queue, int index, int x, int y, int z) {
+        byte cullingState = grid.getCullingState(index);
+        int entered = grid.getDirection(index);
+        long visibility = grid.getVisibility(index);
+
+        for (int dir = 0; dir < 6; dir++) {
+            // Only depends on the current section, so it is checked before looking up the neighbour
+            if (this.useCulling && !isVisibleThrough(grid, index, entered, visibility, dir)) {
+                continue;
+            }
+
+            int adjX = x + OFFSET_X[dir];
+            int adjY = y + OFFSET_Y[dir];
+            int adjZ = z + OFFSET_Z[dir];
+
+            if (!this.isWithinRenderBounds(adjX, adjY, adjZ)) {
+                continue;
+            }
+
+            int adjIndex = grid.getIndex(adjX, adjY, adjZ);
+
+            if (grid.getRebuildFrame(adjIndex) == this.id || !grid.isColumnNeighborsPresent(adjIndex)) {
+                continue;
+            }
+
+            grid.setRebuildFrame(adjIndex, this.id);
+            grid.setEnteredFrom(adjIndex, cullingState, dir);
+
+            queue.enqueue(adjIndex);
+        }
+    }
+
+    private static boolean isVisibleThrough(ChunkGraphGrid<?> grid, int index, int entered, long visibility, int dir) {
+        if (grid.canCull(index, getOpposite(dir))) {
+            return false;
+        }
+
+        return entered < 0 || ChunkGraphGrid.isVisibleThrough(visibility, getOpposite(entered), dir);
+    }
+
+    private void init(ChunkGraphGrid<?> grid, IntArrayFIFOQueue queue) {
+        if (this.sectionY >= 0 && this.sectionY < 16) {
+            // Player is within bounds and inside a node
+            int index = grid.getIndex(this.sectionX, this.sectionY, this.sectionZ);
+            grid.resetGraphState(index);
+
+            if (this.visitCameraSection) {
+                grid.setRebuildFrame(index, this.id);
+            }
+
+            queue.enqueue(index);
+        } else {
+            // Player is out-of-bounds, so start from every section in the nearest layer, closest first
+            int y = this.blockY > 0 ? 15 : 0;
+            int size = (this.renderDistance * 2) + 1;
+
+            int[] offsets = new int[size * size];
+
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = i;
+            }
+
+            IntArrays.quickSort(offsets, (a, b) -> Long.compare(
+                    this.getStartDistanceSq(this.getStartX(a, size), y, this.getStartZ(a, size)),
+                    this.getStartDistanceSq(this.getStartX(b, size), y, this.getStartZ(b, size))));
+
+            for (int offset : offsets) {
+                int index = grid.getIndex(this.getStartX(offset, size), y, this.getStartZ(offset, size));
+
+                grid.setRebuildFrame(index, this.id);
+                grid.resetGraphState(index);
+
+                queue.enqueue(index);
+            }
+        }
+    }
+
+    private int getStartX(int offset, int size) {
+        return this.sectionX - this.renderDistance + (offset / size);
+    }
+
+    private int getStartZ(int offset, int size) {
+        return this.sectionZ - this.renderDistance + (offset % size);
+    }
+
+    /**
+     * @return The squared distance from the camera's block to the center of the section
+     */
+    private long getStartDistanceSq(int x, int y, int z) {
+        long dx = ((x << 4) + 8) - this.blockX;
+        long dy = ((y << 4) + 8) - this.blockY;
+        long dz = ((z << 4) + 8) - this.blockZ;
+
+        return (dx * dx) + (dy * dy) + (dz * dz);
+    }
+
+    /**
+     * @return The squared distance from the camera to the center of the first block in the section
+     */
+    private double getDistanceSq(int x, int y, int z) {
+        double dx = ((x << 4) + 0.5D) - this.cameraX;
+        double dy = ((y << 4) + 0.5D) - this.cameraY;
+        double dz = ((z << 4) + 0.5D) - this.cameraZ;
+
+        return (dx * dx) + (dy * dy) + (dz * dz);
+    }
+
+    public boolean isWithinRenderBounds(int x, int y, int z) {
+        return y >= 0 && y < 16 && x >= this.minChunkX && x <= this.maxChunkX && z >= this.minChunkZ && z <= this.maxChunkZ;
+    }
+
+    public IntArrayList getReachableSections() {
+        return this.reachableSections;
+    }
+
+    public int getMinChunkX() {
+        return this.minChunkX;
+    }
+
+    public int getMinChunkZ() {
+        return this.minChunkZ;
+    }
+
+    public int getMaxChunkX() {
+        return this.maxChunkX;
+    }
+
+    public int getMaxChunkZ() {
+        return this.maxChunkZ;
+    }
+
+    public boolean isUsingCulling() {
+        return this.useCulling;
+    }
+
+    /**
+     * @return True if the traversal started from the section at the given coordinates
+     */
+    public boolean isStartedFrom(int x, int y, int z) {
+        return this.sectionX == x && this.sectionY == y && this.sectionZ == z;
+    }
+
+    private static int getOpposite(int dir) {
+        return dir ^ 1;
+    }
+}
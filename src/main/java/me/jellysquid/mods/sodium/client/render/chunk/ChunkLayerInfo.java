@@ -1,18 +1,69 @@
 package me.jellysquid.mods.sodium.client.render.chunk;
 
 import me.jellysquid.mods.sodium.client.gl.BufferUploadData;
+import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuadFacing;
 import net.minecraft.client.render.RenderLayer;
 import org.apache.commons.lang3.Validate;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
 public class ChunkLayerInfo {
+    /**
+     * The length of a layer's slice offsets, which hold the first vertex of every slice within every facing and an extra
+     * entry for the end of the last part.
+     */
+    public static final int SLICE_OFFSETS_LENGTH = (ModelQuadFacing.COUNT * 16) + 1;
+
     private final RenderLayer renderLayer;
+    private final int[] sliceOffsets;
+    private final int[] facingOffsets;
+
     private BufferUploadData pendingUpload;
+    private Retained retained;
 
-    public ChunkLayerInfo(RenderLayer renderLayer, BufferUploadData pendingUpload) {
+    public ChunkLayerInfo(RenderLayer renderLayer, BufferUploadData pendingUpload, int[] sliceOffsets) {
         Validate.notNull(pendingUpload);
 
         this.pendingUpload = pendingUpload;
         this.renderLayer = renderLayer;
+        this.sliceOffsets = sliceOffsets;
+        this.facingOffsets = createFacingOffsets(sliceOffsets, pendingUpload.buffer.remaining() / pendingUpload.format.getVertexSize());
+    }
+
+    private static int[] createFacingOffsets(int[] sliceOffsets, int vertexCount) {
+        int[] offsets = new int[ModelQuadFacing.COUNT + 1];
+
+        // Meshes which aren't ordered by slice aren't ordered by facing either, so every vertex is left unassigned
+        if (sliceOffsets == null) {
+            offsets[ModelQuadFacing.COUNT] = vertexCount;
+        } else {
+            for (int i = 0; i <= ModelQuadFacing.COUNT; i++) {
+                offsets[i] = sliceOffsets[i * 16];
+            }
+        }
+
+        return offsets;
+    }
+
+    /**
+     * @return The index of the slice {@param y} within the facing {@param facing} in a layer's slice offsets
+     */
+    public static int getSliceIndex(int facing, int y) {
+        return (facing << 4) | y;
+    }
+
+    /**
+     * @return True if any of {@param layers} belongs to the render layer {@param layer}
+     */
+    public static boolean containsLayer(Collection<ChunkLayerInfo> layers, RenderLayer layer) {
+        for (ChunkLayerInfo info : layers) {
+            if (info.renderLayer == layer) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     public BufferUploadData takePendingUpload() {
@@ -27,7 +78,90 @@ public class ChunkLayerInfo {
         return data;
     }
 
+    /**
+     * @return The vertex data which is waiting to be uploaded without taking it, or null if it has been uploaded
+     */
+    public BufferUploadData peekPendingUpload() {
+        return this.pendingUpload;
+    }
+
+    public int getPendingUploadSize() {
+        return this.pendingUpload != null ? this.pendingUpload.buffer.remaining() : 0;
+    }
+
+    /**
+     * Keeps a reference to the pending vertex data after it has been uploaded so that the mesh can later be patched
+     * without rebuilding every slice. This must be called before the data is uploaded.
+     *
+     * @return True if the data could be retained, otherwise false
+     */
+    public boolean retainPendingUpload() {
+        if (this.pendingUpload == null || this.sliceOffsets == null) {
+            return false;
+        }
+
+        this.retained = new Retained(this.pendingUpload.buffer, this.sliceOffsets);
+
+        return true;
+    }
+
+    public void releaseRetainedData() {
+        this.retained = null;
+    }
+
+    public Retained getRetainedData() {
+        return this.retained;
+    }
+
+    /**
+     * @return The first vertex of each slice within each facing of the mesh, or null if vertices are not ordered by
+     * slice
+     */
+    public int[] getSliceOffsets() {
+        return this.sliceOffsets;
+    }
+
+    /**
+     * @return The first vertex of each facing in the mesh, with an extra entry for the end of the last facing
+     */
+    public int[] getFacingOffsets() {
+        return this.facingOffsets;
+    }
+
     public RenderLayer getLayer() {
         return this.renderLayer;
     }
+
+    /**
+     * A copy of a layer's vertex data which is kept in system memory alongside the start of each 16x1x16 slice of
+     * blocks within each facing.
+     */
+    public static class Retained {
+        private final ByteBuffer data;
+        private final int[] sliceOffsets;
+
+        private Retained(ByteBuffer data, int[] sliceOffsets) {
+            this.data = data;
+            this.sliceOffsets = sliceOffsets;
+        }
+
+        /**
+         * @return A view of the vertex data, which must not be modified
+         */
+        public ByteBuffer getData() {
+            return this.data.duplicate();
+        }
+
+        public int getSliceStart(int facing, int y) {
+            return this.sliceOffsets[getSliceIndex(facing, y)];
+        }
+
+        public int getSliceEnd(int facing, int y) {
+            return this.sliceOffsets[getSliceIndex(facing, y) + 1];
+        }
+
+        public int getVertexCount() {
+            return this.sliceOffsets[SLICE_OFFSETS_LENGTH - 1];
+        }
+    }
 }
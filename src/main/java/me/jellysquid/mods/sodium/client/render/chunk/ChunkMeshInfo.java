@@ -5,7 +5,9 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceArrayMap;
 import me.jellysquid.mods.sodium.client.gl.BufferUploadData;
+import me.jellysquid.mods.sodium.client.gl.GlStagingBuffer;
 import me.jellysquid.mods.sodium.client.util.BufferUtil;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.client.render.BufferBuilder;
@@ -18,6 +20,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class ChunkMeshInfo {
@@ -31,11 +34,17 @@ public class ChunkMeshInfo {
 
     private final ChunkOcclusionData occlusionData;
 
+    // The visibility between each pair of faces, see ChunkGraphGrid#isVisibleThrough(long, int, int)
+    private final long faceVisibility;
+
+    private boolean retained;
+
     public ChunkMeshInfo(List<BlockEntity> globalBlockEntities, List<BlockEntity> blockEntities, List<Sprite> animatedSprites, ChunkOcclusionData occlusionData, Object2ObjectMap<RenderLayer, ChunkLayerInfo> layers) {
         this.globalBlockEntities = globalBlockEntities;
         this.blockEntities = blockEntities;
         this.animatedSprites = animatedSprites;
         this.occlusionData = occlusionData;
+        this.faceVisibility = getFaceVisibility(occlusionData);
         this.layers = layers;
     }
 
@@ -44,7 +53,19 @@ public class ChunkMeshInfo {
     }
 
     public boolean isVisibleThrough(Direction from, Direction to) {
-        return this.occlusionData != null && this.occlusionData.isVisibleThrough(from, to);
+        return ChunkGraphGrid.isVisibleThrough(this.faceVisibility, from.ordinal(), to.ordinal());
+    }
+
+    /**
+     * @return The visibility between each pair of faces of the section packed into a bitmask, which is empty if the
+     * section has not been built
+     */
+    public long getFaceVisibility() {
+        return this.faceVisibility;
+    }
+
+    public ChunkOcclusionData getOcclusionData() {
+        return this.occlusionData;
     }
 
     public List<Sprite> getAnimatedSprites() {
@@ -63,6 +84,103 @@ public class ChunkMeshInfo {
         return this.layers.values();
     }
 
+    /**
+     * Keeps the vertex data of every layer in system memory after it has been uploaded, allowing slices of the mesh to
+     * be rebuilt later. This must be called before the mesh is uploaded.
+     */
+    public void retainData() {
+        for (ChunkLayerInfo layer : this.layers.values()) {
+            if (!layer.retainPendingUpload()) {
+                this.releaseRetainedData();
+
+                return;
+            }
+        }
+
+        this.retained = true;
+    }
+
+    /**
+     * Copies the vertex data of every layer into the staging buffer. This is called from the worker thread which built
+     * the mesh.
+     */
+    public void stageUploads(GlStagingBuffer stagingBuffer) {
+        for (ChunkLayerInfo layer : this.layers.values()) {
+            layer.peekPendingUpload().stage(stagingBuffer);
+        }
+    }
+
+    /**
+     * Gives up the staged vertex data of every layer which has not been uploaded. This must be called if the mesh is
+     * thrown away without being uploaded.
+     */
+    public void discardStagedUploads() {
+        for (ChunkLayerInfo layer : this.layers.values()) {
+            BufferUploadData upload = layer.peekPendingUpload();
+
+            if (upload != null) {
+                upload.releaseStaged(false);
+            }
+        }
+    }
+
+    public void releaseRetainedData() {
+        for (ChunkLayerInfo layer : this.layers.values()) {
+            layer.releaseRetainedData();
+        }
+
+        this.retained = false;
+    }
+
+    /**
+     * @return The retained vertex data for each layer of the mesh, or null if the data was not retained
+     */
+    public Map<RenderLayer, ChunkLayerInfo.Retained> getRetainedLayers() {
+        if (!this.retained) {
+            return null;
+        }
+
+        Map<RenderLayer, ChunkLayerInfo.Retained> layers = new Reference2ReferenceArrayMap<>(this.layers.size());
+
+        for (ChunkLayerInfo layer : this.layers.values()) {
+            layers.put(layer.getLayer(), layer.getRetainedData());
+        }
+
+        return layers;
+    }
+
+    public boolean hasLayer(RenderLayer layer) {
+        return this.layers.containsKey(layer);
+    }
+
+    public long getUploadSize() {
+        long size = 0L;
+
+        for (ChunkLayerInfo layer : this.layers.values()) {
+            size += layer.getPendingUploadSize();
+        }
+
+        return size;
+    }
+
+    private static long getFaceVisibility(ChunkOcclusionData occlusionData) {
+        if (occlusionData == null) {
+            return 0L;
+        }
+
+        long bits = 0L;
+
+        for (Direction from : Direction.values()) {
+            for (Direction to : Direction.values()) {
+                if (occlusionData.isVisibleThrough(from, to)) {
+                    bits |= ChunkGraphGrid.getVisibilityBit(from.ordinal(), to.ordinal());
+                }
+            }
+        }
+
+        return bits;
+    }
+
     public static class Builder {
         private final List<BlockEntity> globalEntities = new ArrayList<>();
         private final List<BlockEntity> blockEntities = new ArrayList<>();
@@ -82,11 +200,18 @@ public class ChunkMeshInfo {
             }
         }
 
-        public void addMeshData(RenderLayer layer, Pair<BufferBuilder.DrawArrayParameters, ByteBuffer> params) {
+        /**
+         * @param sliceOffsets The first vertex of each slice within each facing of the mesh, or null if vertices are not
+         *                     ordered by slice
+         */
+        public void addMeshData(RenderLayer layer, Pair<BufferBuilder.DrawArrayParameters, ByteBuffer> params, int[] sliceOffsets) {
             ByteBuffer data = BufferUtil.copyAsNative(params.getSecond());
-            BufferUploadData upload = new BufferUploadData(data, layer.getVertexFormat());
 
-            if (this.layers.putIfAbsent(layer, new ChunkLayerInfo(layer, upload)) != null) {
+            this.addMeshData(layer, new BufferUploadData(data, params.getFirst().getVertexFormat()), sliceOffsets);
+        }
+
+        public void addMeshData(RenderLayer layer, BufferUploadData upload, int[] sliceOffsets) {
+            if (this.layers.putIfAbsent(layer, new ChunkLayerInfo(layer, upload, sliceOffsets)) != null) {
                 throw new IllegalArgumentException("Mesh already added");
             }
         }
@@ -0,0 +1,200 @@
+package me.jellysquid.mods.sodium.client.render.chunk;
+
+import me.jellysquid.mods.sodium.common.util.DirectionUtil;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Finds the faces of a section which can be reached from a block inside it without passing through opaque blocks, in
+ * the same way as {@link net.minecraft.client.render.chunk.ChunkOcclusionDataBuilder#getOpenFaces(BlockPos)}. Rather
+ * than flood-filling from the block on every query, every connected region of transparent blocks in the section is
+ * found once along with the faces it touches. The regions are kept until the section is modified, so that moving
+ * around within the section only needs a lookup.
+ */
+public class ChunkOpenFacesCache {
+    private static final int SECTION_SIZE = 16 * 16 * 16;
+
+    // The region each block belongs to, or -1 if the block is opaque
+    private final short[] regions = new short[SECTION_SIZE];
+
+    // The faces touched by each region as a bit mask of direction ordinals
+    private final byte[] regionFaces = new byte[SECTION_SIZE];
+
+    private final int[] queue = new int[SECTION_SIZE];
+
+    // The section which the regions were found for, and its modification count at the time
+    private ChunkRender<?> render;
+    private ChunkSection section;
+    private int modificationCount;
+
+    /**
+     * @param render The render of the section containing {@param pos}, which is used to tell when the section has been
+     *               modified, or null if it does not exist
+     * @param section The block data of the section containing {@param pos}, which must not be empty
+     * @return A new set of the open faces which can be modified by the caller
+     */
+    public Set<Direction> getOpenFaces(World world, ChunkRender<?> render, ChunkSection section, BlockPos pos) {
+        if (render == null || this.render != render || this.section != section || this.modificationCount != render.getModificationCount()) {
+            this.update(world, section, pos);
+
+            // Without a render there's no way to know when the section changes, so the regions can't be kept
+            this.render = render;
+            this.section = render != null ? section : null;
+            this.modificationCount = render != null ? render.getModificationCount() : 0;
+        }
+
+        return toSet(this.getOpenFaces(pack(pos.getX(), pos.getY(), pos.getZ())));
+    }
+
+    private int getOpenFaces(int index) {
+        int region = this.regions[index];
+
+        if (region >= 0) {
+            return this.regionFaces[region];
+        }
+
+        // The search still starts from inside an opaque block, and spreads to any transparent block next to it
+        int faces = getEdgeFaces(index);
+
+        for (Direction dir : DirectionUtil.ALL_DIRECTIONS) {
+            int adj = offset(index, dir);
+
+            if (adj >= 0 && this.regions[adj] >= 0) {
+                faces |= this.regionFaces[this.regions[adj]];
+            }
+        }
+
+        return faces;
+    }
+
+    private void update(World world, ChunkSection section, BlockPos pos) {
+        int originX = pos.getX() & ~15;
+        int originY = pos.getY() & ~15;
+        int originZ = pos.getZ() & ~15;
+
+        BlockPos.Mutable mpos = new BlockPos.Mutable();
+
+        // Opaque blocks are marked with -1, and blocks which haven't been assigned a region yet with -2
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    mpos.set(originX + x, originY + y, originZ + z);
+
+                    this.regions[pack(x, y, z)] = (short) (section.getBlockState(x, y, z).isFullOpaque(world, mpos) ? -1 : -2);
+                }
+            }
+        }
+
+        short regionCount = 0;
+
+        for (int i = 0; i < SECTION_SIZE; i++) {
+            if (this.regions[i] == -2) {
+                this.regionFaces[regionCount] = (byte) this.fill(i, regionCount);
+
+                regionCount++;
+            }
+        }
+    }
+
+    /**
+     * Assigns every transparent block connected to the block at {@param start} to the region {@param region}.
+     *
+     * @return The faces touched by the region
+     */
+    private int fill(int start, short region) {
+        int[] queue = this.queue;
+        int head = 0, tail = 0;
+
+        queue[tail++] = start;
+        this.regions[start] = region;
+
+        int faces = 0;
+
+        while (head < tail) {
+            int index = queue[head++];
+
+            faces |= getEdgeFaces(index);
+
+            for (Direction dir : DirectionUtil.ALL_DIRECTIONS) {
+                int adj = offset(index, dir);
+
+                if (adj >= 0 && this.regions[adj] == -2) {
+                    this.regions[adj] = region;
+
+                    queue[tail++] = adj;
+                }
+            }
+        }
+
+        return faces;
+    }
+
+    private static int pack(int x, int y, int z) {
+        return ((x & 15) << 8) | ((y & 15) << 4) | (z & 15);
+    }
+
+    /**
+     * @return The index of the neighbouring block in the direction {@param dir}, or -1 if it is outside the section
+     */
+    private static int offset(int index, Direction dir) {
+        int x = (index >> 8) + dir.getOffsetX();
+        int y = ((index >> 4) & 15) + dir.getOffsetY();
+        int z = (index & 15) + dir.getOffsetZ();
+
+        if (((x | y | z) & ~15) != 0) {
+            return -1;
+        }
+
+        return pack(x, y, z);
+    }
+
+    private static int getEdgeFaces(int index) {
+        int x = index >> 8;
+        int y = (index >> 4) & 15;
+        int z = index & 15;
+
+        int faces = 0;
+
+        if (x == 0) {
+            faces |= 1 << Direction.WEST.ordinal();
+        } else if (x == 15) {
+            faces |= 1 << Direction.EAST.ordinal();
+        }
+
+        if (y == 0) {
+            faces |= 1 << Direction.DOWN.ordinal();
+        } else if (y == 15) {
+            faces |= 1 << Direction.UP.ordinal();
+        }
+
+        if (z == 0) {
+            faces |= 1 << Direction.NORTH.ordinal();
+        } else if (z == 15) {
+            faces |= 1 << Direction.SOUTH.ordinal();
+        }
+
+        return faces;
+    }
+
+    private static Set<Direction> toSet(int faces) {
+        Set<Direction> set = EnumSet.noneOf(Direction.class);
+
+        for (Direction dir : DirectionUtil.ALL_DIRECTIONS) {
+            if ((faces & 1 << dir.ordinal()) != 0) {
+                set.add(dir);
+            }
+        }
+
+        return set;
+    }
+
+    public void reset() {
+        this.render = null;
+        this.section = null;
+    }
+}
@@ -0,0 +1,124 @@
+package me.jellysquid.mods.sodium.client.render.chunk;
+
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.util.math.ChunkSectionPos;
+
+/**
+ * Collects the sections which have been marked for rebuild between frames. A section which is marked many times (which
+ * is common when many blocks are updated in a single tick) only appears once in the batch, with its modified slices
+ * and importance merged together.
+ */
+public class ChunkRebuildCoalescer {
+    private static final int SLICES_MASK = 0xFFFF;
+    private static final int IMPORTANT_FLAG = 1 << 16;
+
+    private final Long2IntOpenHashMap pending = new Long2IntOpenHashMap();
+
+    private long[] sections = new long[64];
+    private int[] flags = new int[64];
+    private double[] distances = new double[64];
+
+    /**
+     * @param slices The bitmask of 16x1x16 slices within the section which contain modified blocks
+     */
+    public void add(int x, int y, int z, int slices, boolean important) {
+        long key = ChunkSectionPos.asLong(x, y, z);
+
+        int value = slices & SLICES_MASK;
+
+        if (important) {
+            value |= IMPORTANT_FLAG;
+        }
+
+        // Missing entries return zero, which has no slices and is not important
+        this.pending.put(key, this.pending.get(key) | value);
+    }
+
+    /**
+     * Removes every pending section and passes them to the consumer, ordered from nearest to furthest from the given
+     * position.
+     */
+    public void drain(double x, double y, double z, Consumer consumer) {
+        int count = this.pending.size();
+
+        if (count == 0) {
+            return;
+        }
+
+        this.ensureCapacity(count);
+
+        long[] sections = this.sections;
+        int[] flags = this.flags;
+        double[] distances = this.distances;
+
+        int i = 0;
+
+        for (Long2IntMap.Entry entry : this.pending.long2IntEntrySet()) {
+            long key = entry.getLongKey();
+
+            double dx = ((ChunkSectionPos.getX(key) << 4) + 8.0D) - x;
+            double dy = ((ChunkSectionPos.getY(key) << 4) + 8.0D) - y;
+            double dz = ((ChunkSectionPos.getZ(key) << 4) + 8.0D) - z;
+
+            sections[i] = key;
+            flags[i] = entry.getIntValue();
+            distances[i] = (dx * dx) + (dy * dy) + (dz * dz);
+
+            i++;
+        }
+
+        this.pending.clear();
+
+        Arrays.quickSort(0, count, (a, b) -> Double.compare(distances[a], distances[b]), (a, b) -> {
+            long section = sections[a];
+            sections[a] = sections[b];
+            sections[b] = section;
+
+            int flag = flags[a];
+            flags[a] = flags[b];
+            flags[b] = flag;
+
+            double distance = distances[a];
+            distances[a] = distances[b];
+            distances[b] = distance;
+        });
+
+        for (i = 0; i < count; i++) {
+            long key = sections[i];
+            int value = flags[i];
+
+            consumer.accept(ChunkSectionPos.getX(key), ChunkSectionPos.getY(key), ChunkSectionPos.getZ(key),
+                    value & SLICES_MASK, (value & IMPORTANT_FLAG) != 0);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (this.sections.length >= count) {
+            return;
+        }
+
+        int size = Math.max(count, this.sections.length * 2);
+
+        this.sections = new long[size];
+        this.flags = new int[size];
+        this.distances = new double[size];
+    }
+
+    public void clear() {
+        this.pending.clear();
+    }
+
+    public boolean isEmpty() {
+        return this.pending.isEmpty();
+    }
+
+    public int size() {
+        return this.pending.size();
+    }
+
+    public interface Consumer {
+        void accept(int x, int y, int z, int slices, boolean important);
+    }
+}
@@ -8,22 +8,20 @@ import me.jellysquid.mods.sodium.client.render.chunk.compile.tasks.ChunkRenderRe
 import me.jellysquid.mods.sodium.client.render.chunk.compile.tasks.ChunkRenderUploadTask;
 import me.jellysquid.mods.sodium.client.render.texture.SpriteUtil;
 import me.jellysquid.mods.sodium.client.world.WorldSlice;
-import net.minecraft.client.render.Frustum;
+import net.minecraft.client.render.RenderLayer;
 import net.minecraft.client.texture.Sprite;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Box;
 import net.minecraft.util.math.ChunkSectionPos;
-import net.minecraft.util.math.Direction;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 public class ChunkRender<T extends ChunkRenderState> {
     private final ChunkRenderManager renderManager;
     private final ChunkBuilder builder;
 
-    @SuppressWarnings("unchecked")
-    private final ChunkRender<T>[] adjacent = new ChunkRender[6];
     private final ColumnRender<T> column;
 
     private final BlockPos.Mutable origin;
@@ -34,17 +32,32 @@ public class ChunkRender<T extends ChunkRenderState> {
     private final Box boundingBox;
 
     private ChunkMeshInfo meshInfo = ChunkMeshInfo.ABSENT;
-    private CompletableFuture<Void> rebuildTask = null;
+    private CompletableFuture<ChunkRenderUploadTask> rebuildTask = null;
+
+    // Incremented every time a pending rebuild is cancelled, so that builds which are already in progress can tell that
+    // their results are no longer needed
+    private volatile int rebuildGeneration;
 
     private volatile boolean needsRebuild;
     private volatile boolean needsImportantRebuild;
 
-    public Direction direction;
+    // The slices of the section which have been modified since the last build was scheduled, and the slices which the
+    // currently scheduled build will remesh
+    private int dirtySlices = ChunkRenderRebuildTask.ALL_SLICES;
+    private int pendingSlices;
 
-    public int rebuildFrame = -1;
-    public int lastVisibleFrame = -1;
+    // Whether or not the vertex data of uploaded meshes should be kept in system memory for partial rebuilds
+    private boolean retainMeshData;
+    private long lastModifiedTime;
 
-    public byte cullingState;
+    // Incremented every time the blocks in the section are modified
+    private int modificationCount;
+
+    // Whether or not the next full build of the section may use the mesh cache. Only the first build after the render is
+    // created or its data is deleted can match a cached mesh, as later builds are caused by changes to the section.
+    private boolean useMeshCache = true;
+
+    public int lastVisibleFrame = -1;
 
     public ChunkRender(ChunkRenderManager renderManager, ChunkBuilder builder, T renderState, ColumnRender<T> column, int chunkX, int chunkY, int chunkZ) {
         this.renderManager = renderManager;
@@ -70,22 +83,18 @@ public class ChunkRender<T extends ChunkRenderState> {
         this.needsRebuild = false;
         this.needsImportantRebuild = false;
 
+        this.rebuildGeneration++;
+
+        // Whatever the cancelled build was going to remesh will need to be remeshed by the next one
+        this.dirtySlices |= this.pendingSlices;
+        this.pendingSlices = 0;
+
         if (this.rebuildTask != null) {
             this.rebuildTask.cancel(false);
             this.rebuildTask = null;
         }
     }
 
-    public ChunkRender<T> getAdjacent(ChunkGraph<T> graph, Direction dir) {
-        ChunkRender<T> adj = this.adjacent[dir.ordinal()];
-
-        if (adj == null) {
-            adj = this.adjacent[dir.ordinal()] = graph.getOrCreateRender(this.chunkX + dir.getOffsetX(), this.chunkY + dir.getOffsetY(), this.chunkZ + dir.getOffsetZ());
-        }
-
-        return adj;
-    }
-
     public BlockPos getOrigin() {
         return this.origin;
     }
@@ -118,19 +127,18 @@ public class ChunkRender<T extends ChunkRenderState> {
         return this.chunkZ;
     }
 
-    public boolean isVisibleThrough(Direction from, Direction to) {
-        return this.meshInfo.isVisibleThrough(from, to);
-    }
-
     public T getRenderState() {
         return this.renderState;
     }
 
     public void deleteData() {
         this.cancelRebuildTask();
+        this.dirtySlices = ChunkRenderRebuildTask.ALL_SLICES;
 
         this.renderState.clearData();
         this.setMeshInfo(ChunkMeshInfo.ABSENT);
+
+        this.useMeshCache = true;
     }
 
     private void setMeshInfo(ChunkMeshInfo info) {
@@ -138,96 +146,129 @@ public class ChunkRender<T extends ChunkRenderState> {
             throw new NullPointerException("Mesh information must not be null");
         }
 
-        this.renderManager.onChunkRenderUpdated(this.meshInfo, info);
+        this.renderManager.onChunkRenderUpdated(this, this.meshInfo, info);
         this.meshInfo = info;
     }
 
-    public boolean hasChunkNeighbors(ChunkGraph<T> graph) {
-        return this.isNeighborPresent(graph, Direction.WEST) && this.isNeighborPresent(graph, Direction.NORTH) &&
-                this.isNeighborPresent(graph, Direction.EAST) && this.isNeighborPresent(graph, Direction.SOUTH);
-    }
-
-    private boolean isNeighborPresent(ChunkGraph<T> graph, Direction dir) {
-        ChunkRender<T> render = this.getAdjacent(graph, dir);
-
-        return render == null || render.isChunkPresent();
-    }
-
     public void rebuild() {
         this.cancelRebuildTask();
 
-        this.builder.schedule(createRebuildTask(this.builder, this))
-                .thenAccept(this.builder::enqueueUpload);
+        this.rebuildTask = this.builder.schedule(createRebuildTask(this.builder, this));
+        this.rebuildTask.thenAccept(this.builder::enqueueUpload);
     }
 
     public CompletableFuture<ChunkRenderUploadTask> rebuildImmediately() {
         this.cancelRebuildTask();
 
-        return this.builder.schedule(createRebuildTask(this.builder, this));
+        return this.rebuildTask = this.builder.schedule(createRebuildTask(this.builder, this), true);
     }
 
     public void scheduleRebuild(boolean important) {
+        this.scheduleRebuild(important, ChunkRenderRebuildTask.ALL_SLICES);
+    }
+
+    /**
+     * @param slices The bitmask of 16x1x16 slices which contain modified blocks
+     */
+    public void scheduleRebuild(boolean important, int slices) {
         this.needsImportantRebuild = important;
         this.needsRebuild = true;
+        this.dirtySlices |= slices;
+
+        this.modificationCount++;
+
+        // Only modified blocks cause rebuilds of part of a section, and the result of those will never be cached
+        if (slices != ChunkRenderRebuildTask.ALL_SLICES) {
+            this.useMeshCache = false;
+        }
+    }
+
+    public int getModificationCount() {
+        return this.modificationCount;
     }
 
     public void upload(ChunkMeshInfo meshInfo) {
+        // Empty meshes are cheap enough to rebuild in full that there's no point in keeping them around
+        if (this.retainMeshData && !meshInfo.isEmpty()) {
+            meshInfo.retainData();
+        }
+
         this.renderState.uploadData(meshInfo.getLayers());
         this.setMeshInfo(meshInfo);
+
+        this.pendingSlices = 0;
     }
 
-    public void finishRebuild(WorldSlice slice) {
-        this.needsRebuild = false;
-        this.needsImportantRebuild = false;
+    /**
+     * Sets whether or not the vertex data of this render's meshes should be kept in system memory after upload, which
+     * allows small modifications to be handled without remeshing the entire section. This should only be enabled for
+     * sections which are frequently modified.
+     */
+    public void setRetainMeshData(boolean retain) {
+        this.retainMeshData = retain;
 
-        this.builder.releaseChunkSlice(slice);
+        if (!retain) {
+            this.meshInfo.releaseRetainedData();
+        }
     }
 
-    public boolean isEmpty() {
-        return this.meshInfo.isEmpty();
+    public void setLastModifiedTime(long time) {
+        this.lastModifiedTime = time;
     }
 
-    public void updateCullingState(byte parent, Direction from) {
-        this.cullingState = (byte) (parent | (1 << from.ordinal()));
+    public long getLastModifiedTime() {
+        return this.lastModifiedTime;
     }
 
-    public boolean canCull(Direction from) {
-        return (this.cullingState & 1 << from.ordinal()) > 0;
+    public void finishRebuild(WorldSlice slice) {
+        // The rebuild flags were already cleared when this build was scheduled, and may have been set again since if
+        // the section was modified while the build was in progress
+        this.builder.releaseChunkSlice(slice);
     }
 
-    public void resetGraphState() {
-        this.direction = null;
-        this.cullingState = 0;
+    public int getRebuildGeneration() {
+        return this.rebuildGeneration;
     }
 
-    public void setRebuildFrame(int frame) {
-        this.rebuildFrame = frame;
+    public boolean isEmpty() {
+        return this.meshInfo.isEmpty();
     }
 
     public void setLastVisibleFrame(int frame) {
         this.lastVisibleFrame = frame;
     }
 
-    public void setDirection(Direction dir) {
-        this.direction = dir;
-    }
-
-    public int getRebuildFrame() {
-        return this.rebuildFrame;
-    }
-
     public boolean isChunkPresent() {
         return this.column.isChunkPresent();
     }
 
     private static ChunkRenderBuildTask createRebuildTask(ChunkBuilder builder, ChunkRender<?> render) {
+        int slices = render.dirtySlices;
+
+        render.pendingSlices = slices;
+        render.dirtySlices = 0;
+
         WorldSlice slice = builder.createChunkSlice(render.getChunkPos());
 
         if (slice == null) {
             return new ChunkRenderEmptyBuildTask(render);
-        } else {
-            return new ChunkRenderRebuildTask(builder, render, slice);
         }
+
+        if (slices != ChunkRenderRebuildTask.ALL_SLICES) {
+            ChunkMeshInfo mesh = render.meshInfo;
+
+            // Translucent geometry is sorted as a whole, so it can't be patched slice by slice
+            Map<RenderLayer, ChunkLayerInfo.Retained> layers = mesh.getRetainedLayers();
+
+            if (layers != null && !mesh.hasLayer(RenderLayer.getTranslucent())) {
+                return new ChunkRenderRebuildTask(builder, render, slice, slices, mesh, layers);
+            }
+        }
+
+        boolean useMeshCache = render.useMeshCache && builder.getMeshCache().isEnabled();
+        render.useMeshCache = false;
+
+        return new ChunkRenderRebuildTask(builder, render, slice, useMeshCache);
     }
 
     private ChunkSectionPos getChunkPos() {
@@ -238,10 +279,6 @@ public class ChunkRender<T extends ChunkRenderState> {
         return this.column;
     }
 
-    public boolean isVisible(Frustum frustum, int frame) {
-        return this.getColumn().isVisible(frustum, frame) && frustum.isVisible(this.getBoundingBox());
-    }
-
     public void tickTextures() {
         List<Sprite> sprites = this.getMeshInfo().getAnimatedSprites();
 
@@ -2,14 +2,18 @@ package me.jellysquid.mods.sodium.client.render.chunk;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import me.jellysquid.mods.sodium.client.SodiumClientMod;
 import me.jellysquid.mods.sodium.client.gui.SodiumGameOptions;
 import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderBackend;
+import me.jellysquid.mods.sodium.client.render.backends.multidraw.ChunkRenderBackendMultiDraw;
 import me.jellysquid.mods.sodium.client.render.backends.vao.ChunkRenderBackendVAO;
 import me.jellysquid.mods.sodium.client.render.backends.vbo.ChunkRenderBackendVBO;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.ChunkBuilder;
+import me.jellysquid.mods.sodium.client.render.chunk.compile.tasks.ChunkRenderRebuildTask;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.tasks.ChunkRenderUploadTask;
+import me.jellysquid.mods.sodium.client.util.stats.TimingHistogram;
 import me.jellysquid.mods.sodium.client.world.ChunkManagerWithStatusListener;
 import me.jellysquid.mods.sodium.client.world.ChunkStatusListener;
 import net.minecraft.block.entity.BlockEntity;
@@ -28,9 +32,23 @@ import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.profiler.Profiler;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ChunkRenderManager implements ChunkStatusListener {
+    /**
+     * The amount of time after its last modification that a section's mesh will be kept in system memory for.
+     */
+    private static final long RETAIN_MESH_DURATION_NANOS = 10_000_000_000L;
+
+    /**
+     * The maximum number of sections which can have their mesh kept in system memory at once.
+     */
+    private static final int MAX_RETAINED_MESHES = 256;
+
     private static ChunkRenderManager instance;
 
     private final MinecraftClient client;
@@ -54,6 +72,17 @@ public class ChunkRenderManager implements ChunkStatusListener {
 
     private ChunkGraph<?> chunkGraph;
     private Set<BlockEntity> globalBlockEntities = new ObjectOpenHashSet<>();
+
+    private final ChunkRebuildCoalescer pendingRebuilds = new ChunkRebuildCoalescer();
+
+    // Important rebuilds which did not complete in time during a previous frame
+    private final List<CompletableFuture<ChunkRenderUploadTask>> importantRebuilds = new ArrayList<>();
+    private final TimingHistogram importantRebuildStalls = new TimingHistogram(100L, 250L, 500L, 1000L, 2000L, 5000L, 10000L);
+
+    private long importantRebuildMaxWait;
+
+    // Recently modified sections in order of their last modification, oldest first
+    private final ObjectLinkedOpenHashSet<ChunkRender<?>> modifiedRenders = new ObjectLinkedOpenHashSet<>();
     private ChunkBuilder chunkBuilder;
 
     public static ChunkRenderManager create() {
@@ -81,6 +110,10 @@ public class ChunkRenderManager implements ChunkStatusListener {
                 this.chunkGraph = null;
             }
 
+            this.modifiedRenders.clear();
+            this.pendingRebuilds.clear();
+            this.importantRebuilds.clear();
+
             if (this.chunkBuilder != null) {
                 this.chunkBuilder.stopWorkers();
             }
@@ -101,6 +134,10 @@ public class ChunkRenderManager implements ChunkStatusListener {
     private ChunkRenderBackend<?> createRenderBackend() {
         SodiumGameOptions options = SodiumClientMod.options();
 
+        if (ChunkRenderBackendMultiDraw.isEnabled(options.performance)) {
+            return new ChunkRenderBackendMultiDraw();
+        }
+
         if (options.performance.useVAOs && ChunkRenderBackendVAO.isSupported()) {
             return new ChunkRenderBackendVAO();
         }
@@ -137,7 +174,10 @@ public class ChunkRenderManager implements ChunkStatusListener {
             throw new IllegalStateException("Client instance has no active player entity");
         }
 
-        this.chunkBuilder.setCameraPosition(cameraPos.x, cameraPos.y, cameraPos.z);
+        this.chunkBuilder.setCameraPosition(cameraPos.x, cameraPos.y, cameraPos.z, frustum);
+        this.chunkBuilder.updateStatistics();
+
+        this.releaseExpiredMeshes(System.nanoTime());
 
         this.world.getProfiler().swap("cull");
         this.client.getProfiler().swap("culling");
@@ -145,8 +185,7 @@ public class ChunkRenderManager implements ChunkStatusListener {
         float pitch = camera.getPitch();
         float yaw = camera.getYaw();
 
-        this.isRenderGraphDirty = this.isRenderGraphDirty ||
-                cameraPos.x != this.lastCameraX || cameraPos.y != this.lastCameraY || cameraPos.z != this.lastCameraZ ||
+        boolean cameraChanged = cameraPos.x != this.lastCameraX || cameraPos.y != this.lastCameraY || cameraPos.z != this.lastCameraZ ||
                 pitch != this.lastCameraPitch || yaw != this.lastCameraYaw;
 
         this.lastCameraX = cameraPos.x;
@@ -159,31 +198,61 @@ public class ChunkRenderManager implements ChunkStatusListener {
 
         BlockPos blockPos = camera.getBlockPos();
 
-        if (!hasForcedFrustum && this.isRenderGraphDirty) {
-            this.isRenderGraphDirty = false;
+        // The results of a traversal started during the last frame must be collected before the graph is modified
+        boolean traversalFinished = this.chunkGraph.finishTraversal();
+
+        if (!hasForcedFrustum) {
+            // The sections which can be reached from the camera only change when the graph does or when the camera
+            // enters another section, otherwise the last traversal only needs to be filtered against the new frustum
+            boolean needsTraversal = this.isRenderGraphDirty || !this.chunkGraph.canReuseTraversal(blockPos, spectator);
+
+            // Asynchronous traversals are started after the graph has been updated for this frame, so the results of
+            // the last one are used until then
+            if (needsTraversal && !(this.chunkGraph.isTraversalAsync() && this.chunkGraph.hasTraversal())) {
+                this.isRenderGraphDirty = false;
+
+                this.client.getProfiler().push("iteration");
+
+                this.chunkGraph.calculateVisible(camera, cameraPos, blockPos, frame, frustum, spectator);
 
-            this.client.getProfiler().push("iteration");
+                this.client.getProfiler().pop();
+            } else if (needsTraversal || traversalFinished || cameraChanged) {
+                this.client.getProfiler().push("frustum");
 
-            this.chunkGraph.calculateVisible(camera, cameraPos, blockPos, frame, frustum, spectator);
+                this.chunkGraph.updateVisible(frame, frustum);
 
-            this.client.getProfiler().pop();
+                this.client.getProfiler().pop();
+            }
         }
 
         Entity.setRenderDistanceMultiplier(MathHelper.clamp((double) this.client.options.viewDistance / 8.0D, 1.0D, 2.5D));
 
         this.client.getProfiler().swap("rebuildNear");
 
-        this.updateChunks(blockPos);
+        this.updateChunks(blockPos, frame);
+
+        if (!hasForcedFrustum && this.chunkGraph.isTraversalAsync() &&
+                (this.isRenderGraphDirty || !this.chunkGraph.canReuseTraversal(blockPos, spectator))) {
+            this.isRenderGraphDirty = false;
+
+            this.client.getProfiler().swap("traversal");
+
+            this.chunkGraph.startTraversal(camera, cameraPos, blockPos, spectator);
+        }
 
         this.client.getProfiler().pop();
     }
 
     private void applySettings() {
-        this.useEntityCulling = SodiumClientMod.options().performance.useAdvancedEntityCulling;
+        SodiumGameOptions options = SodiumClientMod.options();
+
+        this.useEntityCulling = options.performance.useAdvancedEntityCulling;
+        this.importantRebuildMaxWait = options.performance.importantRebuildMaxWaitMicros * 1000L;
+        this.chunkBuilder.applySettings(options.performance);
     }
 
-    private void updateChunks(BlockPos blockPos) {
-        List<CompletableFuture<ChunkRenderUploadTask>> futures = new ArrayList<>();
+    private void updateChunks(BlockPos blockPos, int frame) {
+        this.flushPendingRebuilds(blockPos, frame);
 
         int budget = this.chunkBuilder.getBudget();
 
@@ -201,7 +270,7 @@ public class ChunkRenderManager implements ChunkStatusListener {
 
             if (important || budget-- > 0) {
                 if (important) {
-                    futures.add(render.rebuildImmediately());
+                    this.importantRebuilds.add(render.rebuildImmediately());
                 } else {
                     render.rebuild();
                 }
@@ -214,13 +283,67 @@ public class ChunkRenderManager implements ChunkStatusListener {
         this.isRenderGraphDirty |= this.chunkBuilder.upload();
         this.isRenderGraphDirty |= this.chunkGraph.cleanup();
 
-        for (CompletableFuture<ChunkRenderUploadTask> future : futures) {
+        this.chunkGraph.getRenderBackend().tick();
+
+        this.completeImportantRebuilds();
+    }
+
+    /**
+     * Waits for important rebuilds to complete so that their results can be displayed this frame, but only up to the
+     * configured deadline. Any rebuilds which haven't completed by then will keep their old mesh for now, and will be
+     * checked again next frame.
+     */
+    private void completeImportantRebuilds() {
+        if (this.importantRebuilds.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + this.importantRebuildMaxWait;
+
+        Iterator<CompletableFuture<ChunkRenderUploadTask>> it = this.importantRebuilds.iterator();
+
+        while (it.hasNext()) {
+            CompletableFuture<ChunkRenderUploadTask> future = it.next();
+
+            if (!future.isDone()) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0L) {
+                    continue;
+                }
+
+                try {
+                    future.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException | CancellationException ignored) {
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Chunk rebuild failed", e);
+                }
+
+                if (!future.isDone()) {
+                    continue;
+                }
+            }
+
+            it.remove();
+
+            // The rebuild may have been superseded by another since it was scheduled
+            if (future.isCancelled()) {
+                continue;
+            }
+
             ChunkRenderUploadTask task = future.join();
 
             if (task != null) {
-                task.performUpload();
+                this.chunkBuilder.uploadImmediately(task);
+
+                this.isRenderGraphDirty = true;
             }
         }
+
+        this.importantRebuildStalls.record(System.nanoTime() - start);
     }
 
     public void renderLayer(RenderLayer renderLayer, MatrixStack matrixStack, double x, double y, double z) {
@@ -265,6 +388,23 @@ public class ChunkRenderManager implements ChunkStatusListener {
         renderLayer.endDrawing();
     }
 
+    public List<String> getDebugStrings() {
+        List<String> list = new ArrayList<>();
+
+        if (this.chunkBuilder != null) {
+            this.chunkBuilder.addDebugStrings(list);
+        }
+
+        if (this.chunkGraph != null) {
+            this.chunkGraph.getRenderBackend().addDebugStrings(list);
+        }
+
+        list.add(String.format("Important rebuilds: %d waiting, stalls %s", this.importantRebuilds.size(),
+                this.importantRebuildStalls.format()));
+
+        return list;
+    }
+
     public void renderChunkDebugInfo(Camera camera) {
         // TODO: re-implement
     }
@@ -289,14 +429,96 @@ public class ChunkRenderManager implements ChunkStatusListener {
             this.chunkGraph.reset();
         }
 
+        this.modifiedRenders.clear();
+        this.pendingRebuilds.clear();
+        this.importantRebuilds.clear();
+        this.importantRebuildStalls.reset();
+
         this.chunkGraph = new ChunkGraph<>(this.chunkBuilder, this.createRenderBackend(), this, this.world, this.renderDistance);
     }
 
     public void scheduleRebuildForBlock(int x, int y, int z) {
-        ChunkRender<?> node = this.chunkGraph.getRender(x, y, z);
+        this.scheduleRebuildForSlices(x, y, z, ChunkRenderRebuildTask.ALL_SLICES);
+    }
+
+    /**
+     * Schedules a rebuild for the section at the given coordinates which only needs to remesh the specified slices,
+     * if the previous mesh of the section is still available. Rebuilds are collected until the next frame, where each
+     * modified section is only processed once.
+     *
+     * @param slices The bitmask of 16x1x16 slices within the section which contain modified blocks
+     */
+    public void scheduleRebuildForSlices(int x, int y, int z, int slices) {
+        // Any cached copy of the section's blocks or light is now out of date
+        this.chunkBuilder.clearCachesForSection(x, y, z);
+
+        this.pendingRebuilds.add(x, y, z, slices, true);
+    }
+
+    /**
+     * Marks every section which was modified since the last frame for rebuild, starting with those closest to the
+     * camera. Important rebuilds for nearby visible sections are started right away.
+     */
+    private void flushPendingRebuilds(BlockPos blockPos, int frame) {
+        this.pendingRebuilds.drain(blockPos.getX() + 0.5D, blockPos.getY() + 0.5D, blockPos.getZ() + 0.5D, (x, y, z, slices, important) -> {
+            ChunkRender<?> render = this.chunkGraph.getRender(x, y, z);
+
+            if (render == null) {
+                return;
+            }
+
+            render.scheduleRebuild(important, slices);
 
-        if (node != null) {
-            node.scheduleRebuild(true);
+            if (slices != ChunkRenderRebuildTask.ALL_SLICES) {
+                this.onRenderModified(render);
+            }
+
+            if (important && render.lastVisibleFrame == frame && isWithinImportantDistance(render, blockPos)) {
+                this.importantRebuilds.add(render.rebuildImmediately());
+
+                this.isRenderGraphDirty = true;
+            }
+        });
+    }
+
+    private static boolean isWithinImportantDistance(ChunkRender<?> render, BlockPos blockPos) {
+        BlockPos origin = render.getOrigin();
+
+        double dx = (origin.getX() + 8.0D) - (blockPos.getX() + 0.5D);
+        double dy = (origin.getY() + 8.0D) - (blockPos.getY() + 0.5D);
+        double dz = (origin.getZ() + 8.0D) - (blockPos.getZ() + 0.5D);
+
+        return (dx * dx) + (dy * dy) + (dz * dz) < 768.0D;
+    }
+
+    /**
+     * Sections which are modified block-by-block are likely to be modified again soon, so their meshes are kept in
+     * system memory for a while in order to only rebuild the modified slices next time.
+     */
+    private void onRenderModified(ChunkRender<?> render) {
+        render.setLastModifiedTime(System.nanoTime());
+        render.setRetainMeshData(true);
+
+        this.chunkBuilder.getMeshCache().onSectionModified(render.getChunkX(), render.getChunkY(), render.getChunkZ());
+
+        this.modifiedRenders.addAndMoveToLast(render);
+
+        while (this.modifiedRenders.size() > MAX_RETAINED_MESHES) {
+            this.modifiedRenders.removeFirst()
+                    .setRetainMeshData(false);
+        }
+    }
+
+    private void releaseExpiredMeshes(long time) {
+        while (!this.modifiedRenders.isEmpty()) {
+            ChunkRender<?> render = this.modifiedRenders.first();
+
+            if (time - render.getLastModifiedTime() < RETAIN_MESH_DURATION_NANOS) {
+                break;
+            }
+
+            this.modifiedRenders.removeFirst()
+                    .setRetainMeshData(false);
         }
     }
 
@@ -356,7 +578,11 @@ public class ChunkRenderManager implements ChunkStatusListener {
         this.chunkGraph.onChunkRemoved(x, z);
     }
 
-    public void onChunkRenderUpdated(ChunkMeshInfo meshBefore, ChunkMeshInfo meshAfter) {
+    public void onChunkRenderUpdated(ChunkRender<?> render, ChunkMeshInfo meshBefore, ChunkMeshInfo meshAfter) {
+        if (this.chunkGraph != null) {
+            this.chunkGraph.onMeshUpdated(render, meshAfter);
+        }
+
         Collection<BlockEntity> entitiesBefore = meshBefore.getGlobalBlockEntities();
 
         if (!entitiesBefore.isEmpty()) {
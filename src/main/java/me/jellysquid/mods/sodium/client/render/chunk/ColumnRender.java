@@ -1,7 +1,6 @@
 package me.jellysquid.mods.sodium.client.render.chunk;
 
 import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderState;
-import net.minecraft.client.render.Frustum;
 import net.minecraft.util.math.Box;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
@@ -17,8 +16,6 @@ public class ColumnRender<T extends ChunkRenderState> {
 
     private int count;
     private boolean chunkPresent;
-    private boolean visible;
-    private int lastFrame = -1;
 
     public ColumnRender(World world, int chunkX, int chunkZ) {
         this.world = world;
@@ -97,15 +94,8 @@ public class ColumnRender<T extends ChunkRenderState> {
         return this.count > 0;
     }
 
-    public boolean isVisible(Frustum frustum, int frame) {
-        if (this.lastFrame == frame) {
-            return this.visible;
-        }
-
-        this.visible = frustum.isVisible(this.boundingBox);
-        this.lastFrame = frame;
-
-        return this.visible;
+    public Box getBoundingBox() {
+        return this.boundingBox;
     }
 
     public ChunkRender<T>[] getChunks() {
@@ -0,0 +1,154 @@
+package me.jellysquid.mods.sodium.client.render.chunk.compile;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controls how much chunk work the main thread may take on each frame. The number of rebuilds which can be scheduled
+ * and the number of bytes which can be uploaded are slowly increased while frames are finishing under the target frame
+ * time, and are quickly cut back when they are not. The rebuild budget will also stop growing while scheduled tasks are
+ * taking too long to complete or uploads are backing up, as submitting more work would then only grow the queues.
+ *
+ * The controller is disabled by default, in which case the full rebuild budget is always available and uploads are
+ * only limited by the upload stage's own limits. As the controller can only see the total frame time, it will throttle
+ * chunk work even when it isn't the cause of a slow frame (such as when the game is GPU-bound or limited by V-Sync),
+ * so it should only be enabled by players who would rather trade loading speed for a steadier frame rate.
+ */
+public class ChunkBuildBudget {
+    private static final double FRAME_TIME_SMOOTHING = 0.1D;
+    private static final double LATENCY_SMOOTHING = 0.05D;
+
+    /**
+     * Frames longer than this are ignored as they are almost always caused by something other than rendering (world
+     * loading, the game being paused, window resizes...)
+     */
+    private static final long MAX_FRAME_TIME_NANOS = 250_000_000L;
+
+    /**
+     * The completion latency above which the rebuild budget will no longer be increased.
+     */
+    private static final double MAX_COMPLETION_LATENCY_NANOS = 100_000_000.0D;
+
+    private static final double MIN_REBUILDS = 1.0D;
+    private static final double REBUILD_STEP = 0.25D;
+
+    private static final double MIN_UPLOAD_BYTES = 256.0D * 1024.0D;
+    private static final double MAX_UPLOAD_BYTES = 32.0D * 1024.0D * 1024.0D;
+    private static final double UPLOAD_STEP = 64.0D * 1024.0D;
+
+    private static final double DECREASE_FACTOR = 0.8D;
+
+    private final double maxRebuilds;
+
+    private final AtomicLong latencyTotal = new AtomicLong();
+    private final AtomicInteger latencyCount = new AtomicInteger();
+
+    private boolean enabled;
+    private double targetFrameTime;
+
+    private long lastFrameStart = Long.MIN_VALUE;
+    private double frameTime;
+    private double completionLatency;
+
+    private double rebuilds;
+    private double uploadBytes;
+
+    public ChunkBuildBudget(int maxRebuilds) {
+        this.maxRebuilds = Math.max(MIN_REBUILDS, maxRebuilds);
+        this.setTargetFrameRate(60);
+        this.reset();
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (this.enabled != enabled) {
+            this.enabled = enabled;
+            this.reset();
+        }
+    }
+
+    public void setTargetFrameRate(int fps) {
+        this.targetFrameTime = 1_000_000_000.0D / Math.max(1, fps);
+    }
+
+    /**
+     * Records the time between a task being scheduled and its result becoming available. This can be called from any
+     * thread.
+     */
+    public void recordCompletion(long nanos) {
+        this.latencyTotal.addAndGet(nanos);
+        this.latencyCount.incrementAndGet();
+    }
+
+    /**
+     * Updates the controller with the time taken by the last frame. This should be called once at the start of each
+     * frame from the main thread.
+     *
+     * @param now The current time in nanoseconds
+     * @param uploadBacklog The number of bytes which are still waiting to be uploaded
+     */
+    public void update(long now, long uploadBacklog) {
+        long last = this.lastFrameStart;
+        this.lastFrameStart = now;
+
+        int count = this.latencyCount.getAndSet(0);
+        long total = this.latencyTotal.getAndSet(0L);
+
+        if (count > 0) {
+            this.completionLatency += ((total / (double) count) - this.completionLatency) * LATENCY_SMOOTHING;
+        }
+
+        if (last == Long.MIN_VALUE || now - last > MAX_FRAME_TIME_NANOS) {
+            return;
+        }
+
+        this.frameTime += ((now - last) - this.frameTime) * FRAME_TIME_SMOOTHING;
+
+        if (this.frameTime > this.targetFrameTime * 1.1D) {
+            this.rebuilds = Math.max(MIN_REBUILDS, this.rebuilds * DECREASE_FACTOR);
+            this.uploadBytes = Math.max(MIN_UPLOAD_BYTES, this.uploadBytes * DECREASE_FACTOR);
+        } else if (this.frameTime < this.targetFrameTime * 0.95D) {
+            this.uploadBytes = Math.min(MAX_UPLOAD_BYTES, this.uploadBytes + UPLOAD_STEP);
+
+            // Only allow more work to be submitted if the work we've already submitted is being retired in time
+            if (this.completionLatency < MAX_COMPLETION_LATENCY_NANOS && uploadBacklog < this.uploadBytes * 2.0D) {
+                this.rebuilds = Math.min(this.maxRebuilds, this.rebuilds + REBUILD_STEP);
+            }
+        }
+    }
+
+    public void reset() {
+        this.latencyTotal.set(0L);
+        this.latencyCount.set(0);
+
+        this.lastFrameStart = Long.MIN_VALUE;
+        this.frameTime = this.targetFrameTime;
+        this.completionLatency = 0.0D;
+
+        this.rebuilds = Math.max(MIN_REBUILDS, this.maxRebuilds / 2.0D);
+        this.uploadBytes = MIN_UPLOAD_BYTES * 4.0D;
+    }
+
+    /**
+     * @return The number of rebuild tasks which may be scheduled this frame
+     */
+    public int getRebuildBudget() {
+        return this.enabled ? (int) this.rebuilds : (int) this.maxRebuilds;
+    }
+
+    /**
+     * @return The number of bytes which may be uploaded this frame
+     */
+    public long getUploadBudget() {
+        return this.enabled ? (long) this.uploadBytes : Long.MAX_VALUE;
+    }
+
+    public String getDebugString() {
+        if (!this.enabled) {
+            return String.format("Build budget: %d rebuilds (adaptive budget disabled)", this.getRebuildBudget());
+        }
+
+        return String.format("Build budget: %d rebuilds, %dKB uploads (frame %.2f/%.2fms, latency %.2fms)",
+                this.getRebuildBudget(), this.getUploadBudget() / 1024L, this.frameTime / 1_000_000.0D,
+                this.targetFrameTime / 1_000_000.0D, this.completionLatency / 1_000_000.0D);
+    }
+}
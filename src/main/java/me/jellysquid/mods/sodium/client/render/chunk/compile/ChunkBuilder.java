@@ -1,12 +1,23 @@
 package me.jellysquid.mods.sodium.client.render.chunk.compile;
 
+import me.jellysquid.mods.sodium.client.SodiumClientMod;
+import me.jellysquid.mods.sodium.client.gl.GlStagingBuffer;
+import me.jellysquid.mods.sodium.client.gui.SodiumGameOptions;
+import me.jellysquid.mods.sodium.client.render.backends.multidraw.ChunkRenderBackendMultiDraw;
+import me.jellysquid.mods.sodium.client.render.chunk.format.ChunkVertexFormats;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.tasks.ChunkRenderBuildTask;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.tasks.ChunkRenderUploadTask;
 import me.jellysquid.mods.sodium.client.render.pipeline.ChunkRenderPipeline;
+import me.jellysquid.mods.sodium.client.util.concurrent.WorkStealingExecutor;
+import me.jellysquid.mods.sodium.client.util.stats.TimingStatistic;
 import me.jellysquid.mods.sodium.client.world.WorldSlice;
 import me.jellysquid.mods.sodium.client.world.biome.BiomeCacheManager;
+import me.jellysquid.mods.sodium.client.world.cache.ChunkSectionSnapshotCache;
 import me.jellysquid.mods.sodium.common.util.arena.Arena;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.Frustum;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexFormat;
 import net.minecraft.client.util.math.Vector3d;
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.util.math.ChunkSectionPos;
@@ -15,60 +26,75 @@ import net.minecraft.world.chunk.WorldChunk;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
-import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChunkBuilder {
     private static final Logger LOGGER = LogManager.getLogger("ChunkBuilder");
 
-    private final Deque<WrappedTask> buildQueue = new ConcurrentLinkedDeque<>();
-    private final Queue<ChunkRenderUploadTask> uploadQueue = new ConcurrentLinkedDeque<>();
+    /**
+     * The size of the staging buffer which finished meshes are written into when streaming uploads are enabled.
+     */
+    private static final int STAGING_BUFFER_SIZE = 32 * 1024 * 1024;
 
-    private final Object jobNotifier = new Object();
-
-    private final AtomicBoolean running = new AtomicBoolean(false);
-    private final List<Thread> threads = new ArrayList<>();
+    private final WorkStealingExecutor<WorkerContext, WrappedTask> executor;
+    private final ChunkUploadStage uploadStage = new ChunkUploadStage();
 
     private final Arena<WorldSlice> chunkSliceArena;
+    private final ChunkSectionSnapshotCache sectionSnapshotCache = new ChunkSectionSnapshotCache();
+    private final ChunkMeshCache meshCache = new ChunkMeshCache();
+
+    private final TimingStatistic visibleQueueWait = new TimingStatistic();
+
+    // Counters for builds which were cancelled before starting or abandoned part-way through by a worker
+    private final AtomicInteger skippedBuilds = new AtomicInteger();
+    private final AtomicInteger abortedBuilds = new AtomicInteger();
+
+    private final ChunkBuildBudget budget;
 
     private World world;
     private Vector3d cameraPosition;
+    private Frustum frustum;
     private BiomeCacheManager biomeCacheManager;
 
+    private double lastPrioritizedX, lastPrioritizedY, lastPrioritizedZ;
+
+    private boolean useCompactVertexFormat;
+
+    // Only created before any builds have been scheduled for the world, and only deleted once the workers have stopped
+    private GlStagingBuffer stagingBuffer;
+
     private final int limitThreads;
 
     public ChunkBuilder() {
         this.limitThreads = getOptimalThreadCount();
-        this.chunkSliceArena = new Arena<>(this.getBudget(), WorldSlice::new);
+        this.executor = new WorkStealingExecutor<>("Chunk Render Task Executor", this.limitThreads, WorkerContext::new);
+        this.budget = new ChunkBuildBudget(this.getMaxQueuedTasks());
+        this.chunkSliceArena = new Arena<>(this.getMaxQueuedTasks(), WorldSlice::new);
+    }
+
+    private int getMaxQueuedTasks() {
+        return this.limitThreads * 3;
     }
 
+    /**
+     * @return The number of rebuild tasks which can be scheduled this frame
+     */
     public int getBudget() {
-        return Math.max(0, (this.limitThreads * 3) - this.buildQueue.size());
+        int free = Math.max(0, this.getMaxQueuedTasks() - this.executor.getQueuedTasks());
+
+        return Math.min(free, this.budget.getRebuildBudget());
     }
 
     public void startWorkers() {
-        if (this.running.getAndSet(true)) {
+        if (this.executor.isRunning()) {
             return;
         }
 
-        if (!this.threads.isEmpty()) {
-            throw new IllegalStateException("Threads are still alive while in the STOPPED state");
-        }
-
-        for (int i = 0; i < this.limitThreads; i++) {
-            Thread thread = new Thread(new WorkerRunnable(), "Chunk Render Task Executor #" + i);
-            thread.setPriority(Math.max(0, Thread.NORM_PRIORITY - 2));
-            thread.start();
+        this.executor.start();
 
-            this.threads.add(thread);
-        }
-
-        LOGGER.info("Started {} worker threads", this.threads.size());
+        LOGGER.info("Started {} worker threads", this.executor.getThreadCount());
     }
 
     public void reset() {
@@ -77,80 +103,130 @@ public class ChunkBuilder {
     }
 
     public void stopWorkers() {
-        if (!this.running.getAndSet(false)) {
+        if (!this.executor.isRunning()) {
             return;
         }
 
-        if (this.threads.isEmpty()) {
-            throw new IllegalStateException("No threads are alive but the executor is in the RUNNING state");
-        }
-
         LOGGER.info("Stopping worker threads");
 
-        // Notify all worker threads to wake up, where they will then terminate
-        synchronized (this.jobNotifier) {
-            this.jobNotifier.notifyAll();
-        }
-
-        // Wait for every remaining thread to terminate
-        for (Thread thread : this.threads) {
-            try {
-                thread.join();
-            } catch (InterruptedException ignored) {
-            }
-        }
-
-        this.threads.clear();
+        // Waits for the workers to terminate and cancels the futures of every task which never started
+        this.executor.stop();
 
         // Drop any pending work queues and cancel futures
-        this.uploadQueue.clear();
+        this.uploadStage.reset();
 
-        for (WrappedTask job : this.buildQueue) {
-            job.future.cancel(true);
+        // Any staged data which was still waiting to be uploaded has been dropped along with the queue
+        if (this.stagingBuffer != null) {
+            this.stagingBuffer.delete();
+            this.stagingBuffer = null;
         }
 
-        this.buildQueue.clear();
-
         this.world = null;
+        this.frustum = null;
         this.biomeCacheManager = null;
         this.chunkSliceArena.reset();
+        this.sectionSnapshotCache.reset();
+        this.meshCache.reset();
+        this.visibleQueueWait.reset();
+        this.budget.reset();
+
+        this.skippedBuilds.set(0);
+        this.abortedBuilds.set(0);
     }
 
+    /**
+     * Performs pending uploads until the frame's upload budget has been used. Any remaining uploads will be carried
+     * over to the next frame.
+     *
+     * @return True if any uploads were performed, otherwise false
+     */
     public boolean upload() {
-        int count = 0;
+        boolean uploaded = this.uploadStage.upload(this.cameraPosition, this.frustum, this.budget.getUploadBudget());
 
-        while (!this.uploadQueue.isEmpty()) {
-            ChunkRenderUploadTask task = this.uploadQueue.remove();
-            task.performUpload();
-
-            count++;
+        if (this.stagingBuffer != null) {
+            this.stagingBuffer.endFrame();
         }
 
-        return count > 0;
+        return uploaded;
     }
 
     public CompletableFuture<ChunkRenderUploadTask> schedule(ChunkRenderBuildTask task) {
-        if (!this.running.get()) {
-            throw new IllegalStateException("Executor is stopped");
-        }
-
-        WrappedTask job = new WrappedTask(task);
+        return this.schedule(task, false);
+    }
 
-        this.buildQueue.add(job);
+    /**
+     * @param important If true, the task will be placed ahead of every non-important task in the queue
+     */
+    public CompletableFuture<ChunkRenderUploadTask> schedule(ChunkRenderBuildTask task, boolean important) {
+        WrappedTask job = new WrappedTask(task, important);
+        this.updatePriority(job);
 
-        synchronized (this.jobNotifier) {
-            this.jobNotifier.notify();
-        }
+        this.executor.submit(job);
 
         return job.future;
     }
 
     public void enqueueUpload(ChunkRenderUploadTask task) {
-        this.uploadQueue.add(task);
+        // Builds which were abandoned have nothing to upload
+        if (task != null) {
+            this.uploadStage.enqueue(task);
+        }
     }
 
-    public void setCameraPosition(double x, double y, double z) {
+    /**
+     * Uploads the result of a build right away, skipping the upload queue. This must be called from the main thread.
+     */
+    public void uploadImmediately(ChunkRenderUploadTask task) {
+        this.uploadStage.uploadImmediately(task);
+    }
+
+    public void applySettings(SodiumGameOptions.PerformanceSettings settings) {
+        this.budget.setTargetFrameRate(settings.chunkUpdateTargetFrameRate);
+        this.budget.setEnabled(settings.useAdaptiveChunkUpdates);
+        this.uploadStage.setLimits(settings.chunkUploadMaxMegabytes * 1024L * 1024L, settings.chunkUploadMaxMillis * 1_000_000L);
+    }
+
+    public void setCameraPosition(double x, double y, double z, Frustum frustum) {
         this.cameraPosition = new Vector3d(x, y, z);
+        this.frustum = frustum;
+
+        if (ChunkPriority.shouldReprioritize(this.lastPrioritizedX, this.lastPrioritizedY, this.lastPrioritizedZ, x, y, z)) {
+            this.lastPrioritizedX = x;
+            this.lastPrioritizedY = y;
+            this.lastPrioritizedZ = z;
+
+            this.executor.reprioritize(this::updatePriority);
+            this.uploadStage.reprioritize(this.cameraPosition, frustum);
+        }
+    }
+
+    private void updatePriority(WrappedTask job) {
+        job.priority.update(job.task.getRender(), this.cameraPosition, this.frustum);
+    }
+
+    public void updateStatistics() {
+        long now = System.nanoTime();
+
+        this.budget.update(now, this.uploadStage.getPendingBytes());
+
+        this.visibleQueueWait.update(now);
+    }
+
+    public void addDebugStrings(List<String> list) {
+        list.add(String.format("Chunk Builder: %d queued, %d/%d workers idle", this.executor.getQueuedTasks(),
+                this.executor.getIdleWorkers(), this.limitThreads));
+        list.add(this.budget.getDebugString());
+        list.add(this.uploadStage.getDebugString());
+
+        if (this.stagingBuffer != null) {
+            list.add(this.stagingBuffer.getDebugString());
+        }
+
+        list.add(String.format("Wasted builds: %d skipped, %d aborted, %d discarded", this.skippedBuilds.get(),
+                this.abortedBuilds.get(), this.uploadStage.getDiscardedUploads()));
+        list.add("Visible queue wait: " + this.visibleQueueWait.format());
+        list.add(this.sectionSnapshotCache.getDebugString());
+        this.meshCache.addDebugStrings(list);
     }
 
     public World getWorld() {
@@ -162,7 +238,7 @@ public class ChunkBuilder {
     }
 
     public boolean isEmpty() {
-        return this.buildQueue.isEmpty();
+        return this.executor.getQueuedTasks() <= 0 && this.uploadStage.isEmpty();
     }
 
     public void setWorld(ClientWorld world) {
@@ -174,6 +250,23 @@ public class ChunkBuilder {
 
         this.world = world;
         this.biomeCacheManager = new BiomeCacheManager(world.getDimension().getType().getBiomeAccessType(), world.getSeed());
+
+        SodiumGameOptions.PerformanceSettings settings = SodiumClientMod.options().performance;
+
+        // Changing the vertex format requires the renderer to be reloaded, which will always call through here
+        this.useCompactVertexFormat = settings.useCompactVertexFormat;
+
+        // Meshes stored in large buffers are moved into the space of their region as they are uploaded, so they can't
+        // be staged ahead of time
+        if (settings.useStreamingUploads && GlStagingBuffer.isSupported() && !ChunkRenderBackendMultiDraw.isEnabled(settings)) {
+            this.stagingBuffer = new GlStagingBuffer(STAGING_BUFFER_SIZE);
+        }
+
+        this.meshCache.setEnabled(settings.useMeshCache);
+
+        if (settings.useMeshCache && settings.useMeshDiskCache) {
+            this.meshCache.setDiskCache(ChunkMeshDiskCache.open(MinecraftClient.getInstance(), world, this.useCompactVertexFormat));
+        }
     }
 
     private static int getOptimalThreadCount() {
@@ -201,52 +294,102 @@ public class ChunkBuilder {
         return this.biomeCacheManager;
     }
 
+    public ChunkSectionSnapshotCache getSectionSnapshotCache() {
+        return this.sectionSnapshotCache;
+    }
+
+    /**
+     * @return The vertex format which meshes for the given layer should be built with
+     */
+    public VertexFormat getVertexFormat(RenderLayer layer) {
+        return ChunkVertexFormats.getVertexFormat(layer, this.useCompactVertexFormat);
+    }
+
+    public ChunkMeshCache getMeshCache() {
+        return this.meshCache;
+    }
+
     public void clearCachesForChunk(int x, int z) {
         this.biomeCacheManager.dropCachesForChunk(x, z);
+        this.sectionSnapshotCache.invalidateColumn(x, z);
     }
 
-    private class WorkerRunnable implements Runnable {
-        private final VertexBufferCache bufferCache = new VertexBufferCache();
-        private final AtomicBoolean running = ChunkBuilder.this.running;
+    public void clearCachesForSection(int x, int y, int z) {
+        this.sectionSnapshotCache.invalidate(x, y, z);
+    }
 
+    /**
+     * The state owned by each worker, which is re-used by every build that worker performs.
+     */
+    private static class WorkerContext {
+        private final VertexBufferCache bufferCache = new VertexBufferCache();
         private final ChunkRenderPipeline pipeline = new ChunkRenderPipeline(MinecraftClient.getInstance());
+    }
+
+    private class WrappedTask implements WorkStealingExecutor.Task<WorkerContext>, Comparable<WrappedTask> {
+        private final ChunkRenderBuildTask task;
+        private final CompletableFuture<ChunkRenderUploadTask> future;
+        private final long enqueueTime;
+        private final boolean important;
+        private final ChunkPriority priority = new ChunkPriority();
+
+        private WrappedTask(ChunkRenderBuildTask task, boolean important) {
+            this.task = task;
+            this.future = new CompletableFuture<>();
+            this.enqueueTime = System.nanoTime();
+            this.important = important;
+        }
 
         @Override
-        public void run() {
-            while (this.running.get()) {
-                WrappedTask job = this.getNextJob();
+        public void run(WorkerContext context) {
+            if (this.future.isCancelled()) {
+                this.task.discard();
 
-                if (job == null || job.future.isCancelled()) {
-                    continue;
-                }
+                ChunkBuilder.this.skippedBuilds.incrementAndGet();
 
-                job.future.complete(job.task.performBuild(this.pipeline, this.bufferCache));
+                return;
             }
-        }
 
-        private WrappedTask getNextJob() {
-            WrappedTask job = ChunkBuilder.this.buildQueue.poll();
+            if (this.priority.isVisible()) {
+                ChunkBuilder.this.visibleQueueWait.record(System.nanoTime() - this.enqueueTime);
+            }
 
-            if (job == null) {
-                synchronized (ChunkBuilder.this.jobNotifier) {
-                    try {
-                        ChunkBuilder.this.jobNotifier.wait();
-                    } catch (InterruptedException ignored) {
-                    }
+            ChunkRenderUploadTask result = this.task.performBuild(context.pipeline, context.bufferCache);
+
+            if (result == null) {
+                ChunkBuilder.this.abortedBuilds.incrementAndGet();
+            } else {
+                ChunkBuilder.this.budget.recordCompletion(System.nanoTime() - this.enqueueTime);
+
+                if (ChunkBuilder.this.stagingBuffer != null) {
+                    result.stage(ChunkBuilder.this.stagingBuffer);
                 }
             }
 
-            return job;
+            // The future may have been cancelled while we were building, in which case nobody will upload the result
+            if (!this.future.complete(result) && result != null) {
+                result.discard();
+            }
         }
-    }
 
-    private static class WrappedTask {
-        private final ChunkRenderBuildTask task;
-        private final CompletableFuture<ChunkRenderUploadTask> future;
+        @Override
+        public void cancel() {
+            this.future.cancel(true);
+        }
 
-        private WrappedTask(ChunkRenderBuildTask task) {
-            this.task = task;
-            this.future = new CompletableFuture<>();
+        @Override
+        public boolean isImportant() {
+            return this.important;
+        }
+
+        @Override
+        public int compareTo(WrappedTask o) {
+            // The main thread may be waiting on important tasks, so they always come first
+            if (this.important != o.important) {
+                return this.important ? -1 : 1;
+            }
+
+            return this.priority.compareTo(o.priority);
         }
     }
 }
@@ -0,0 +1,326 @@
+package me.jellysquid.mods.sodium.client.render.chunk.compile;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import me.jellysquid.mods.sodium.client.gl.BufferUploadData;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkLayerInfo;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkMeshInfo;
+import me.jellysquid.mods.sodium.client.world.WorldSlice;
+import net.minecraft.block.Block;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.options.GameOptions;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.chunk.ChunkOcclusionData;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.world.LightType;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A cache of recently built meshes which is shared between all worker threads. When a section is unloaded and loaded
+ * again without having changed (such as when the player moves back and forth across the render distance), its
+ * previous mesh can be re-used instead of being built again.
+ *
+ * Each section has at most one entry, which is tagged with a hash of everything the mesh was built from: the blocks of
+ * the section and its neighbouring border, their light levels, the biomes used for color blending, and the relevant
+ * video settings. The cache is cleared whenever the chunk builder is reset, which happens when the world, resource
+ * packs or video settings change.
+ *
+ * Hashing a section reads every block, light level and biome it was built from, so callers should only use the cache
+ * for builds which could plausibly match an entry, such as the first build of a section after it has been loaded.
+ *
+ * If a {@link ChunkMeshDiskCache} is attached, meshes which are not in memory will also be looked up on disk, and every
+ * stored mesh is written to it once its section has stopped changing.
+ */
+public class ChunkMeshCache {
+    private static final long MAX_SIZE_BYTES = 64L * 1024L * 1024L;
+
+    // Approximate overhead of an entry aside from its vertex data
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Long2ObjectLinkedOpenHashMap<Entry> entries = new Long2ObjectLinkedOpenHashMap<>();
+
+    private ChunkMeshDiskCache diskCache;
+
+    private volatile boolean enabled;
+
+    private long size;
+    private long hits, diskHits, misses;
+
+    /**
+     * Computes the content hash of the section at {@param origin}. The slice must have already copied its block states.
+     */
+    public static long computeHash(WorldSlice slice, BlockPos origin) {
+        GameOptions options = MinecraftClient.getInstance().options;
+
+        int blendRadius = options.biomeBlendRadius;
+
+        long hash = mix(0L, origin.getX());
+        hash = mix(hash, origin.getY());
+        hash = mix(hash, origin.getZ());
+        hash = mix(hash, options.ao.ordinal());
+        hash = mix(hash, options.fancyGraphics ? 1 : 0);
+        hash = mix(hash, blendRadius);
+
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+
+        int minX = origin.getX() - WorldSlice.BLOCK_RADIUS;
+        int minY = origin.getY() - WorldSlice.BLOCK_RADIUS;
+        int minZ = origin.getZ() - WorldSlice.BLOCK_RADIUS;
+
+        int maxX = origin.getX() + 16 + WorldSlice.BLOCK_RADIUS;
+        int maxY = origin.getY() + 16 + WorldSlice.BLOCK_RADIUS;
+        int maxZ = origin.getZ() + 16 + WorldSlice.BLOCK_RADIUS;
+
+        // Blocks in the border are used for face culling, ambient occlusion and fluid shapes
+        for (int y = minY; y < maxY; y++) {
+            for (int z = minZ; z < maxZ; z++) {
+                for (int x = minX; x < maxX; x++) {
+                    pos.set(x, y, z);
+
+                    int state = Block.getRawIdFromState(slice.getBlockState(x, y, z));
+                    int blockLight = slice.getLightLevel(LightType.BLOCK, pos);
+                    int skyLight = slice.getLightLevel(LightType.SKY, pos);
+
+                    hash = mix(hash, (state << 8) | (blockLight << 4) | skyLight);
+                }
+            }
+        }
+
+        // Biome colors are blended over the configured radius, and biome lookups are fuzzed by up to one cell
+        int minBiomeX = ((minX - blendRadius) >> 2) - 1;
+        int minBiomeY = (minY >> 2) - 1;
+        int minBiomeZ = ((minZ - blendRadius) >> 2) - 1;
+
+        int maxBiomeX = ((maxX + blendRadius) >> 2) + 1;
+        int maxBiomeY = (maxY >> 2) + 1;
+        int maxBiomeZ = ((maxZ + blendRadius) >> 2) + 1;
+
+        for (int y = minBiomeY; y <= maxBiomeY; y++) {
+            for (int z = minBiomeZ; z <= maxBiomeZ; z++) {
+                for (int x = minBiomeX; x <= maxBiomeX; x++) {
+                    hash = mix(hash, Registry.BIOME.getRawId(slice.getBiomeForNoiseGen(x, y, z)));
+                }
+            }
+        }
+
+        // [VanillaCopy] HashCommon#mix(long), as a final avalanche step
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        return Long.rotateLeft((hash ^ value) * 0x9E3779B97F4A7C15L, 31);
+    }
+
+    /**
+     * Adds the cached mesh of the section at {@param origin} to {@param meshInfo} if its content hash matches.
+     *
+     * @return True if the cached mesh was used, otherwise false
+     */
+    public boolean tryRestore(BlockPos origin, long hash, ChunkMeshInfo.Builder meshInfo) {
+        long key = ChunkSectionPos.asLong(origin.getX() >> 4, origin.getY() >> 4, origin.getZ() >> 4);
+
+        Entry entry;
+        ChunkMeshDiskCache diskCache;
+
+        synchronized (this) {
+            entry = this.entries.getAndMoveToFirst(key);
+            diskCache = this.diskCache;
+
+            if (entry != null && entry.hash == hash) {
+                this.hits++;
+            } else {
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            boolean restored = diskCache != null && diskCache.tryRestore(key, hash, meshInfo);
+
+            synchronized (this) {
+                if (restored) {
+                    this.diskHits++;
+                } else {
+                    this.misses++;
+                }
+            }
+
+            return restored;
+        }
+
+        for (Layer layer : entry.layers) {
+            meshInfo.addMeshData(layer.layer, new BufferUploadData(layer.data.duplicate(), layer.format), layer.sliceOffsets);
+        }
+
+        for (Sprite sprite : entry.sprites) {
+            meshInfo.addSprite(sprite);
+        }
+
+        meshInfo.setOcclusionData(entry.occlusionData);
+
+        return true;
+    }
+
+    /**
+     * Stores the mesh of a section for later re-use. Meshes with block entities or translucent geometry should not be
+     * stored, as they depend on more than the contents of the section.
+     */
+    public void store(BlockPos origin, long hash, ChunkMeshInfo meshInfo) {
+        long key = ChunkSectionPos.asLong(origin.getX() >> 4, origin.getY() >> 4, origin.getZ() >> 4);
+
+        Entry entry = new Entry(hash, meshInfo);
+
+        ChunkMeshDiskCache diskCache;
+
+        synchronized (this) {
+            diskCache = this.diskCache;
+
+            Entry prev = this.entries.putAndMoveToFirst(key, entry);
+
+            if (prev != null) {
+                this.size -= prev.size;
+            }
+
+            this.size += entry.size;
+
+            while (this.size > MAX_SIZE_BYTES && !this.entries.isEmpty()) {
+                this.size -= this.entries.removeLast().size;
+            }
+        }
+
+        if (diskCache != null) {
+            diskCache.store(key, hash, meshInfo);
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Called when the blocks of a section have been modified, after which the mesh stored for it will not match again.
+     */
+    public void onSectionModified(int x, int y, int z) {
+        ChunkMeshDiskCache diskCache = this.getDiskCache();
+
+        if (diskCache != null) {
+            diskCache.discardPending(ChunkSectionPos.asLong(x, y, z));
+        }
+    }
+
+    /**
+     * Called when a section has been unloaded, after which the mesh stored for it will not be replaced.
+     */
+    public void onSectionUnloaded(int x, int y, int z) {
+        ChunkMeshDiskCache diskCache = this.getDiskCache();
+
+        if (diskCache != null) {
+            diskCache.flushPending(ChunkSectionPos.asLong(x, y, z));
+        }
+    }
+
+    private synchronized ChunkMeshDiskCache getDiskCache() {
+        return this.diskCache;
+    }
+
+    /**
+     * Attaches a disk cache which will be used until the cache is next reset, at which point it will be closed.
+     */
+    public synchronized void setDiskCache(ChunkMeshDiskCache diskCache) {
+        if (this.diskCache != null) {
+            this.diskCache.close();
+        }
+
+        this.diskCache = diskCache;
+    }
+
+    public synchronized void reset() {
+        this.entries.clear();
+        this.setDiskCache(null);
+
+        this.size = 0;
+        this.hits = 0;
+        this.diskHits = 0;
+        this.misses = 0;
+    }
+
+    public synchronized void addDebugStrings(List<String> list) {
+        if (!this.enabled) {
+            list.add("Mesh cache: disabled");
+
+            return;
+        }
+
+        long total = this.hits + this.diskHits + this.misses;
+
+        list.add(String.format("Mesh cache: %d cached (%dMB), %.1f%% hit rate (%d hits, %d disk hits, %d misses)",
+                this.entries.size(), this.size / 1024L / 1024L,
+                total > 0 ? ((this.hits + this.diskHits) * 100.0D) / total : 0.0D, this.hits, this.diskHits, this.misses));
+
+        if (this.diskCache != null) {
+            list.add(this.diskCache.getDebugString());
+        }
+    }
+
+    private static class Entry {
+        private final long hash;
+        private final Layer[] layers;
+        private final Sprite[] sprites;
+        private final ChunkOcclusionData occlusionData;
+        private final long size;
+
+        private Entry(long hash, ChunkMeshInfo meshInfo) {
+            this.hash = hash;
+
+            Collection<ChunkLayerInfo> layers = meshInfo.getLayers();
+
+            this.layers = new Layer[layers.size()];
+
+            int i = 0;
+
+            for (ChunkLayerInfo layer : layers) {
+                this.layers[i++] = new Layer(layer.getLayer(), layer.peekPendingUpload(), layer.getSliceOffsets());
+            }
+
+            this.sprites = meshInfo.getAnimatedSprites().toArray(new Sprite[0]);
+            this.occlusionData = meshInfo.getOcclusionData();
+
+            long size = ENTRY_OVERHEAD_BYTES;
+
+            for (Layer layer : this.layers) {
+                size += layer.data.remaining();
+            }
+
+            this.size = size;
+        }
+    }
+
+    private static class Layer {
+        private final RenderLayer layer;
+        private final VertexFormat format;
+        private final ByteBuffer data;
+        private final int[] sliceOffsets;
+
+        private Layer(RenderLayer layer, BufferUploadData upload, int[] sliceOffsets) {
+            this.layer = layer;
+            this.format = upload.format;
+            this.data = upload.buffer.duplicate();
+            this.sliceOffsets = sliceOffsets;
+        }
+    }
+}
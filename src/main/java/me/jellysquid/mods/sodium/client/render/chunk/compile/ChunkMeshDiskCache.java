@@ -0,0 +1,870 @@
+package me.jellysquid.mods.sodium.client.render.chunk.compile;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import me.jellysquid.mods.sodium.client.gl.BufferUploadData;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkGraphGrid;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkLayerInfo;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkMeshInfo;
+import me.jellysquid.mods.sodium.client.render.chunk.format.ChunkVertexFormats;
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.ModContainer;
+import net.minecraft.block.Block;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.chunk.ChunkOcclusionData;
+import net.minecraft.client.resource.ClientResourcePackProfile;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.client.texture.SpriteAtlasTexture;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.registry.Registry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A persistent store of built meshes, which allows sections to be displayed without being built again after rejoining
+ * a world. Each world and dimension has its own append-only file, which is memory-mapped so that cached vertex data
+ * can be uploaded directly from the file.
+ *
+ * Records are looked up by section position and then validated against the content hash computed by
+ * {@link ChunkMeshCache#computeHash}. Files which were written with different resource packs, mods or block registries
+ * are discarded when opened. Newer records for a section replace older ones, and the space of replaced records is
+ * reclaimed by compacting the file the next time it is opened. Once the file reaches its size limit, no further
+ * records are written until then.
+ *
+ * Records are written by a single background thread, so that build workers never wait on the disk. A stored mesh is
+ * held in memory until its section has gone unmodified for a while or is unloaded, as the meshes of sections which
+ * are still being edited would only be replaced again.
+ */
+public class ChunkMeshDiskCache {
+    private static final Logger LOGGER = LogManager.getLogger("ChunkMeshDiskCache");
+
+    private static final int MAGIC = 0x534D4348;
+    private static final int VERSION = 3;
+
+    private static final int FILE_HEADER_SIZE = 16;
+
+    // The length of the body, the section's key, and the content hash
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 8;
+
+    private static final long MAX_FILE_SIZE = 512L * 1024L * 1024L;
+
+    /**
+     * The size which a file over the size limit is reduced to when compacted, keeping the most recently written records.
+     */
+    private static final long COMPACTED_FILE_SIZE = MAX_FILE_SIZE / 2;
+
+    /**
+     * The fraction of a file which can be taken up by replaced records before it is compacted.
+     */
+    private static final float MAX_WASTED_FRACTION = 0.25f;
+
+    /**
+     * The amount of time a stored mesh is held before being written, unless its section is modified or unloaded first.
+     */
+    private static final long STABLE_DURATION_NANOS = 15_000_000_000L;
+
+    /**
+     * The interval at which the writer checks for meshes which have been held long enough.
+     */
+    private static final long WRITE_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * The maximum size of all meshes waiting to be written, past which newly stored meshes are dropped.
+     */
+    private static final long MAX_PENDING_BYTES = 32L * 1024L * 1024L;
+
+    private final File file;
+    private final FileChannel channel;
+    private final Long2ObjectOpenHashMap<Record> records;
+    private final boolean compactVertexFormat;
+
+    // Meshes which have been stored but not yet written, in the order they were stored
+    private final Long2ObjectLinkedOpenHashMap<PendingRecord> pending = new Long2ObjectLinkedOpenHashMap<>();
+    private long pendingBytes;
+
+    private final Thread writer;
+
+    private MappedByteBuffer mapping;
+    private long fileSize;
+
+    // Set once the file has reached its size limit or a write has failed, after which nothing more will be written
+    private boolean full, failed;
+
+    private boolean stopping, closed;
+
+    private ChunkMeshDiskCache(File file, FileChannel channel, Long2ObjectOpenHashMap<Record> records, long fileSize,
+                               boolean compactVertexFormat) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.records = records;
+        this.compactVertexFormat = compactVertexFormat;
+        this.fileSize = fileSize;
+        this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+        this.writer = new Thread(this::runWriter, "Chunk Mesh Cache Writer");
+        this.writer.setDaemon(true);
+        this.writer.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Opens the cache for the given world, creating or compacting its file as needed. This must be called on the main
+     * thread.
+     *
+     * @param compactVertexFormat True if meshes are being built with the compact vertex format, in which case only
+     *                            meshes using it will be restored, otherwise only meshes using the default formats will
+     * @return The opened cache, or null if the world can't be identified or the file could not be opened
+     */
+    public static ChunkMeshDiskCache open(MinecraftClient client, ClientWorld world, boolean compactVertexFormat) {
+        String name = getWorldName(client);
+
+        if (name == null) {
+            return null;
+        }
+
+        Identifier dimension = Registry.DIMENSION_TYPE.getId(world.getDimension().getType());
+
+        if (dimension == null) {
+            return null;
+        }
+
+        File dir = new File(client.runDirectory, "sodium/mesh_cache/" + sanitize(name));
+        File file = new File(dir, sanitize(dimension.toString()) + ".bin");
+
+        try {
+            return open(file, computeFingerprint(client, world, compactVertexFormat), compactVertexFormat);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to open mesh cache {}, chunks will not be cached on disk", file, e);
+
+            return null;
+        }
+    }
+
+    private static ChunkMeshDiskCache open(File file, long fingerprint, boolean compactVertexFormat) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Could not create directory " + file.getParentFile());
+        }
+
+        FileChannel channel = openChannel(file);
+
+        try {
+            Long2ObjectOpenHashMap<Record> records = new Long2ObjectOpenHashMap<>();
+            long end = scan(channel, fingerprint, records);
+
+            if (end < 0) {
+                if (channel.size() > 0) {
+                    LOGGER.info("Discarding mesh cache {} as it was created with different resources", file);
+                }
+
+                end = writeHeader(channel, fingerprint);
+                records.clear();
+            } else if (shouldCompact(records, end)) {
+                // The file can't be replaced while it is still open on some platforms
+                channel.close();
+                channel = null;
+
+                if (tryCompact(file, fingerprint, records)) {
+                    return open(file, fingerprint, compactVertexFormat);
+                }
+
+                // Start over with an empty file rather than letting it grow past the point it should have been compacted
+                channel = openChannel(file);
+
+                end = writeHeader(channel, fingerprint);
+                records.clear();
+            }
+
+            // Drop any partially written record at the end of the file, such as from a crash
+            channel.truncate(end);
+
+            ChunkMeshDiskCache cache = new ChunkMeshDiskCache(file, channel, records, end, compactVertexFormat);
+            cache.writer.start();
+
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+
+            throw e;
+        }
+    }
+
+    private static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads the index of every record in the file. Only the headers are read, and the file is not mapped, as a mapping
+     * can't be released on demand and would prevent the file from being truncated or replaced on some platforms.
+     *
+     * @return The end of the last complete record, or -1 if the file is empty or doesn't match the fingerprint
+     */
+    private static long scan(FileChannel channel, long fingerprint, Long2ObjectOpenHashMap<Record> records) throws IOException {
+        long size = channel.size();
+
+        if (size < FILE_HEADER_SIZE || size > Integer.MAX_VALUE) {
+            return -1;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        readFully(channel, header, 0);
+
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getLong(8) != fingerprint) {
+            return -1;
+        }
+
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+        long offset = FILE_HEADER_SIZE;
+
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            recordHeader.clear();
+            readFully(channel, recordHeader, offset);
+
+            int length = recordHeader.getInt(0);
+
+            if (length < 0 || offset + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+
+            long key = recordHeader.getLong(4);
+            long hash = recordHeader.getLong(12);
+
+            records.put(key, new Record(offset, length, hash));
+
+            offset += RECORD_HEADER_SIZE + length;
+        }
+
+        return offset;
+    }
+
+    private static long writeHeader(FileChannel channel, long fingerprint) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(fingerprint);
+        header.flip();
+
+        channel.truncate(0);
+        writeFully(channel, header, 0);
+
+        return FILE_HEADER_SIZE;
+    }
+
+    private static boolean shouldCompact(Long2ObjectOpenHashMap<Record> records, long fileSize) {
+        if (fileSize >= MAX_FILE_SIZE) {
+            return true;
+        }
+
+        long live = FILE_HEADER_SIZE;
+
+        for (Record record : records.values()) {
+            live += record.getSize();
+        }
+
+        return (fileSize - live) > (long) (fileSize * MAX_WASTED_FRACTION);
+    }
+
+    /**
+     * Compacts the file, logging any failure.
+     *
+     * @return True if the file was compacted, otherwise false
+     */
+    private static boolean tryCompact(File file, long fingerprint, Long2ObjectOpenHashMap<Record> records) {
+        try {
+            compact(file, fingerprint, records);
+
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to compact mesh cache {}, its contents will be discarded", file, e);
+
+            try {
+                Files.deleteIfExists(getTemporaryFile(file).toPath());
+            } catch (IOException ignored) {
+
+            }
+
+            return false;
+        }
+    }
+
+    private static File getTemporaryFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".tmp");
+    }
+
+    /**
+     * Rewrites the file with only the records which have not been replaced, dropping the oldest records if they would
+     * not fit within the compacted size.
+     */
+    private static void compact(File file, long fingerprint, Long2ObjectOpenHashMap<Record> records) throws IOException {
+        ObjectArrayList<Record> live = new ObjectArrayList<>(records.values());
+        live.sort((a, b) -> Long.compare(b.offset, a.offset));
+
+        long size = FILE_HEADER_SIZE;
+        int count = 0;
+
+        while (count < live.size() && size + live.get(count).getSize() <= COMPACTED_FILE_SIZE) {
+            size += live.get(count).getSize();
+            count++;
+        }
+
+        // Copy the kept records in their original order, so that the newest record for a section still comes last
+        List<Record> kept = live.subList(0, count);
+        kept.sort((a, b) -> Long.compare(a.offset, b.offset));
+
+        File tmp = getTemporaryFile(file);
+
+        try (FileChannel src = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = writeHeader(dst, fingerprint);
+
+            for (Record record : kept) {
+                long remaining = record.getSize();
+                long position = record.offset;
+
+                while (remaining > 0) {
+                    long copied = src.transferTo(position, remaining, dst.position(offset));
+
+                    position += copied;
+                    offset += copied;
+                    remaining -= copied;
+                }
+            }
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        LOGGER.info("Compacted mesh cache {} to {} records ({}KB)", file, kept.size(), size / 1024L);
+    }
+
+    /**
+     * Adds the cached mesh of the section to {@param meshInfo} if its content hash matches.
+     *
+     * @return True if the cached mesh was used, otherwise false
+     */
+    public boolean tryRestore(long key, long hash, ChunkMeshInfo.Builder meshInfo) {
+        ByteBuffer body;
+
+        synchronized (this) {
+            if (this.closed) {
+                return false;
+            }
+
+            Record record = this.records.get(key);
+
+            if (record == null || record.hash != hash) {
+                return false;
+            }
+
+            try {
+                body = this.getBody(record);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to map mesh cache {}", this.file, e);
+
+                return false;
+            }
+        }
+
+        try {
+            return readMesh(body, meshInfo, this.compactVertexFormat);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to read mesh from cache {}", this.file, e);
+
+            return false;
+        }
+    }
+
+    private ByteBuffer getBody(Record record) throws IOException {
+        long start = record.offset + RECORD_HEADER_SIZE;
+        long end = start + record.length;
+
+        // Records which were written after the file was last mapped need a larger mapping
+        if (end > this.mapping.capacity()) {
+            this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.fileSize);
+        }
+
+        ByteBuffer body = this.mapping.duplicate();
+        body.limit((int) end);
+        body.position((int) start);
+
+        return body.slice();
+    }
+
+    /**
+     * Queues the mesh of a section to be written to the file once its section has been stable for a while. The mesh
+     * must not have been uploaded yet. This can be called from any thread.
+     */
+    public void store(long key, long hash, ChunkMeshInfo meshInfo) {
+        ByteBuffer data = writeMesh(key, hash, meshInfo);
+
+        synchronized (this) {
+            if (this.stopping || this.full || this.failed) {
+                return;
+            }
+
+            PendingRecord prev = this.pending.remove(key);
+
+            if (prev != null) {
+                this.pendingBytes -= prev.data.remaining();
+            }
+
+            if (this.pendingBytes + data.remaining() > MAX_PENDING_BYTES) {
+                return;
+            }
+
+            this.pending.putAndMoveToLast(key, new PendingRecord(key, hash, data, System.nanoTime()));
+            this.pendingBytes += data.remaining();
+        }
+    }
+
+    /**
+     * Drops the mesh waiting to be written for a section whose blocks have been modified, as it no longer matches.
+     */
+    public synchronized void discardPending(long key) {
+        PendingRecord record = this.pending.remove(key);
+
+        if (record != null) {
+            this.pendingBytes -= record.data.remaining();
+        }
+    }
+
+    /**
+     * Writes the mesh waiting to be written for a section which has been unloaded without waiting for it to become
+     * stable, as it will not be modified any further.
+     */
+    public synchronized void flushPending(long key) {
+        PendingRecord record = this.pending.get(key);
+
+        if (record != null) {
+            record.unloaded = true;
+
+            this.notifyAll();
+        }
+    }
+
+    private void runWriter() {
+        List<PendingRecord> batch = new ObjectArrayList<>();
+
+        while (true) {
+            boolean stopping;
+
+            synchronized (this) {
+                if (!this.stopping) {
+                    try {
+                        this.wait(WRITE_INTERVAL_MILLIS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+
+                stopping = this.stopping;
+
+                this.takeReadyRecords(batch, System.nanoTime(), stopping);
+            }
+
+            for (PendingRecord record : batch) {
+                this.write(record);
+            }
+
+            batch.clear();
+
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes every mesh which should be written now from the queue.
+     *
+     * @param all If true, every mesh will be taken regardless of how long it has been waiting
+     */
+    private void takeReadyRecords(List<PendingRecord> batch, long now, boolean all) {
+        ObjectIterator<PendingRecord> it = this.pending.values().iterator();
+
+        while (it.hasNext()) {
+            PendingRecord record = it.next();
+
+            if (all || record.unloaded || now - record.time >= STABLE_DURATION_NANOS) {
+                batch.add(record);
+                it.remove();
+
+                this.pendingBytes -= record.data.remaining();
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the end of the file. Only the writer thread appends to the file, so the lock is only needed
+     * to reserve space and publish the record, and readers are never blocked by the write itself.
+     */
+    private void write(PendingRecord record) {
+        ByteBuffer data = record.data;
+        long offset;
+
+        synchronized (this) {
+            if (this.full || this.failed) {
+                return;
+            }
+
+            if (this.fileSize + data.remaining() > MAX_FILE_SIZE) {
+                LOGGER.info("Mesh cache {} has reached its size limit, no more chunks will be cached on disk until it is next opened", this.file);
+
+                this.full = true;
+                this.discardAllPending();
+
+                return;
+            }
+
+            offset = this.fileSize;
+        }
+
+        int length = data.remaining();
+
+        try {
+            writeFully(this.channel, data, offset);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write to mesh cache {}, no more chunks will be cached on disk", this.file, e);
+
+            synchronized (this) {
+                this.failed = true;
+                this.discardAllPending();
+            }
+
+            return;
+        }
+
+        synchronized (this) {
+            this.fileSize += length;
+            this.records.put(record.key, new Record(offset, length - RECORD_HEADER_SIZE, record.hash));
+        }
+    }
+
+    private void discardAllPending() {
+        this.pending.clear();
+        this.pendingBytes = 0;
+    }
+
+    private static boolean readMesh(ByteBuffer body, ChunkMeshInfo.Builder meshInfo, boolean compactVertexFormat) {
+        List<RenderLayer> layers = RenderLayer.getBlockLayers();
+
+        ChunkOcclusionData occlusionData = readOcclusionData(body.getLong());
+
+        int layerCount = body.get();
+
+        RenderLayer[] meshLayers = new RenderLayer[layerCount];
+        VertexFormat[] meshFormats = new VertexFormat[layerCount];
+        ByteBuffer[] meshData = new ByteBuffer[layerCount];
+        int[][] meshSliceOffsets = new int[layerCount][];
+
+        for (int i = 0; i < layerCount; i++) {
+            RenderLayer layer = layers.get(body.get());
+            boolean compact = body.get() != 0;
+
+            // The backends can only draw meshes in the format they were set up for, so a mesh built with a different
+            // format must be rebuilt. The fingerprint should already prevent this, but a mesh in the wrong format
+            // would fail much later when it is uploaded.
+            if (compact != compactVertexFormat) {
+                return false;
+            }
+
+            VertexFormat format = ChunkVertexFormats.getVertexFormat(layer, compact);
+
+            if (body.getInt() != format.getVertexSize()) {
+                return false;
+            }
+
+            if (body.get() != 0) {
+                int[] offsets = new int[ChunkLayerInfo.SLICE_OFFSETS_LENGTH];
+
+                for (int j = 0; j < offsets.length; j++) {
+                    offsets[j] = body.getInt();
+                }
+
+                meshSliceOffsets[i] = offsets;
+            }
+
+            int length = body.getInt();
+
+            ByteBuffer data = body.duplicate();
+            data.limit(data.position() + length);
+
+            body.position(body.position() + length);
+
+            meshLayers[i] = layer;
+            meshFormats[i] = format;
+            meshData[i] = data.slice().order(ByteOrder.nativeOrder());
+        }
+
+        int spriteCount = body.getShort();
+
+        Sprite[] sprites = new Sprite[spriteCount];
+        Function<Identifier, Sprite> atlas = MinecraftClient.getInstance().getSpriteAtlas(SpriteAtlasTexture.BLOCK_ATLAS_TEX);
+
+        for (int i = 0; i < spriteCount; i++) {
+            byte[] bytes = new byte[body.getShort()];
+            body.get(bytes);
+
+            sprites[i] = atlas.apply(new Identifier(new String(bytes, StandardCharsets.UTF_8)));
+        }
+
+        // Only modify the mesh once the record has been completely read
+        for (int i = 0; i < layerCount; i++) {
+            meshInfo.addMeshData(meshLayers[i], new BufferUploadData(meshData[i], meshFormats[i]), meshSliceOffsets[i]);
+        }
+
+        meshInfo.addSprites(sprites);
+        meshInfo.setOcclusionData(occlusionData);
+
+        return true;
+    }
+
+    private static ByteBuffer writeMesh(long key, long hash, ChunkMeshInfo meshInfo) {
+        List<RenderLayer> layers = RenderLayer.getBlockLayers();
+        List<Sprite> sprites = meshInfo.getAnimatedSprites();
+
+        byte[][] spriteNames = new byte[sprites.size()][];
+
+        int size = RECORD_HEADER_SIZE + 8 + 1 + 2;
+
+        for (ChunkLayerInfo layer : meshInfo.getLayers()) {
+            size += 1 + 1 + 4 + 1 + (layer.getSliceOffsets() != null ? ChunkLayerInfo.SLICE_OFFSETS_LENGTH * 4 : 0) + 4;
+            size += layer.getPendingUploadSize();
+        }
+
+        for (int i = 0; i < spriteNames.length; i++) {
+            spriteNames[i] = sprites.get(i).getId().toString().getBytes(StandardCharsets.UTF_8);
+
+            size += 2 + spriteNames[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size - RECORD_HEADER_SIZE);
+        buffer.putLong(key);
+        buffer.putLong(hash);
+
+        buffer.putLong(meshInfo.getFaceVisibility());
+        buffer.put((byte) meshInfo.getLayers().size());
+
+        for (ChunkLayerInfo layer : meshInfo.getLayers()) {
+            VertexFormat format = layer.peekPendingUpload().format;
+
+            buffer.put((byte) layers.indexOf(layer.getLayer()));
+            buffer.put((byte) (ChunkVertexFormats.isCompact(format) ? 1 : 0));
+            buffer.putInt(format.getVertexSize());
+
+            int[] offsets = layer.getSliceOffsets();
+
+            buffer.put((byte) (offsets != null ? 1 : 0));
+
+            if (offsets != null) {
+                for (int offset : offsets) {
+                    buffer.putInt(offset);
+                }
+            }
+
+            ByteBuffer data = layer.peekPendingUpload().buffer.duplicate();
+
+            buffer.putInt(data.remaining());
+            buffer.put(data);
+        }
+
+        buffer.putShort((short) spriteNames.length);
+
+        for (byte[] name : spriteNames) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private static ChunkOcclusionData readOcclusionData(long bits) {
+        ChunkOcclusionData data = new ChunkOcclusionData();
+
+        // Visibility is symmetric, so opening each visible pair of faces restores the original data
+        for (Direction from : Direction.values()) {
+            for (Direction to : Direction.values()) {
+                if (ChunkGraphGrid.isVisibleThrough(bits, from.ordinal(), to.ordinal())) {
+                    data.addOpenEdgeFaces(EnumSet.of(from, to));
+                }
+            }
+        }
+
+        return data;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+
+            if (read < 0) {
+                throw new EOFException();
+            }
+
+            offset += read;
+        }
+    }
+
+    /**
+     * Computes a fingerprint of everything which affects meshes but isn't included in their content hashes. If any of
+     * these change, the cached meshes can no longer be used.
+     */
+    private static long computeFingerprint(MinecraftClient client, ClientWorld world, boolean compactVertexFormat) {
+        long hash = HashCommon.mix((long) VERSION);
+        hash = mixString(hash, Boolean.toString(compactVertexFormat));
+        hash = mixString(hash, Long.toString(world.getSeed()));
+        hash = mixString(hash, Integer.toString(Block.STATE_IDS.size()));
+
+        for (RenderLayer layer : RenderLayer.getBlockLayers()) {
+            hash = mixString(hash, Integer.toString(layer.getVertexFormat().getVertexSize()));
+        }
+
+        for (ClientResourcePackProfile profile : client.getResourcePackManager().getEnabledProfiles()) {
+            hash = mixString(hash, profile.getName());
+        }
+
+        for (ModContainer mod : FabricLoader.getInstance().getAllMods()) {
+            hash = mixString(hash, mod.getMetadata().getId());
+            hash = mixString(hash, mod.getMetadata().getVersion().getFriendlyString());
+        }
+
+        return hash;
+    }
+
+    private static long mixString(long hash, String str) {
+        return HashCommon.mix((hash * 31L) + str.hashCode());
+    }
+
+    private static String getWorldName(MinecraftClient client) {
+        ServerInfo server = client.getCurrentServerEntry();
+
+        if (server != null) {
+            return "server_" + server.address;
+        }
+
+        if (client.getServer() != null) {
+            return "local_" + client.getServer().getLevelName();
+        }
+
+        return null;
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    /**
+     * Writes every mesh which is still waiting to be written and closes the file. This blocks until the writer has
+     * finished, as the file must not be opened again before then.
+     */
+    public void close() {
+        synchronized (this) {
+            if (this.stopping) {
+                return;
+            }
+
+            this.stopping = true;
+            this.notifyAll();
+        }
+
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for mesh cache {} to be written", this.file, e);
+        }
+
+        synchronized (this) {
+            this.closed = true;
+            this.records.clear();
+            this.discardAllPending();
+
+            // Drop our reference to the mapping so that it can be released as soon as possible, as the file can't be
+            // truncated or replaced while it is still mapped on some platforms
+            this.mapping = null;
+
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close mesh cache {}", this.file, e);
+            }
+        }
+    }
+
+    public synchronized String getDebugString() {
+        String status = "";
+
+        if (this.failed) {
+            status = ", writes stopped after an error";
+        } else if (this.full) {
+            status = ", writes stopped at size limit";
+        }
+
+        return String.format("Mesh disk cache: %d records (%dMB), %d pending (%dMB)%s", this.records.size(),
+                this.fileSize / 1024L / 1024L, this.pending.size(), this.pendingBytes / 1024L / 1024L, status);
+    }
+
+    private static class Record {
+        private final long offset;
+        private final int length;
+        private final long hash;
+
+        private Record(long offset, int length, long hash) {
+            this.offset = offset;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        private long getSize() {
+            return RECORD_HEADER_SIZE + this.length;
+        }
+    }
+
+    private static class PendingRecord {
+        private final long key;
+        private final long hash;
+        private final ByteBuffer data;
+        private final long time;
+
+        // Written from the main thread and read by the writer, both while holding the cache's lock
+        private boolean unloaded;
+
+        private PendingRecord(long key, long hash, ByteBuffer data, long time) {
+            this.key = key;
+            this.hash = hash;
+            this.data = data;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package me.jellysquid.mods.sodium.client.render.chunk.compile;
+
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkLayerInfo;
+import me.jellysquid.mods.sodium.client.render.chunk.format.ChunkVertexFormats;
+import me.jellysquid.mods.sodium.client.render.chunk.format.CompactVertexEncoder;
+import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuadFacing;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.util.GlAllocationUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Re-orders the quads of a mesh so that all quads with the same facing are stored together, which allows the renderer
+ * to skip the facings pointing away from the camera. The quads of each facing are still grouped by slice in their
+ * original order, so that slices of the mesh can be rebuilt later.
+ */
+public class ChunkMeshPartitioner {
+    /**
+     * @param data The vertex data of the mesh, with its quads grouped by slice
+     * @param sliceOffsets The first vertex of each slice in {@param data}, with an extra entry for the end of the last
+     *                     slice
+     * @param partOffsets The array which the first vertex of each slice within each facing of the returned mesh will be
+     *                    written to, see {@link ChunkLayerInfo#getSliceIndex(int, int)}
+     * @return A copy of the vertex data in native memory with its quads grouped by facing
+     */
+    public static ByteBuffer partition(ByteBuffer data, VertexFormat format, int[] sliceOffsets, int[] partOffsets) {
+        int stride = format.getVertexSize();
+        int quadStride = stride * 4;
+
+        boolean compact = ChunkVertexFormats.isCompact(format);
+
+        byte[] facings = new byte[sliceOffsets[16] / 4];
+        int[] counts = new int[ChunkLayerInfo.SLICE_OFFSETS_LENGTH];
+
+        float[] positions = new float[12];
+
+        for (int y = 0; y < 16; y++) {
+            for (int quad = sliceOffsets[y] / 4; quad < sliceOffsets[y + 1] / 4; quad++) {
+                readPositions(data, data.position() + (quad * quadStride), stride, compact, positions);
+
+                ModelQuadFacing facing = getFacing(positions);
+
+                facings[quad] = (byte) facing.ordinal();
+                counts[ChunkLayerInfo.getSliceIndex(facing.ordinal(), y)] += 4;
+            }
+        }
+
+        int vertexCount = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            partOffsets[i] = vertexCount;
+            vertexCount += counts[i];
+        }
+
+        // The counts are re-used as the next vertex to write within each part
+        System.arraycopy(partOffsets, 0, counts, 0, counts.length);
+
+        ByteBuffer src = data.duplicate();
+        ByteBuffer dst = GlAllocationUtils.allocateByteBuffer(vertexCount * stride);
+
+        for (int y = 0; y < 16; y++) {
+            for (int quad = sliceOffsets[y] / 4; quad < sliceOffsets[y + 1] / 4; quad++) {
+                int part = ChunkLayerInfo.getSliceIndex(facings[quad], y);
+
+                int start = data.position() + (quad * quadStride);
+
+                src.limit(start + quadStride);
+                src.position(start);
+
+                dst.position(counts[part] * stride);
+                dst.put(src);
+
+                counts[part] += 4;
+            }
+        }
+
+        dst.position(0);
+        dst.limit(vertexCount * stride);
+
+        return dst;
+    }
+
+    private static void readPositions(ByteBuffer data, int offset, int stride, boolean compact, float[] positions) {
+        for (int i = 0; i < 4; i++) {
+            int vertex = offset + (i * stride);
+
+            for (int axis = 0; axis < 3; axis++) {
+                float pos;
+
+                if (compact) {
+                    pos = CompactVertexEncoder.decodePosition(data.getShort(vertex + (axis * 2)));
+                } else {
+                    pos = data.getFloat(vertex + (axis * 4));
+                }
+
+                positions[(i * 3) + axis] = pos;
+            }
+        }
+    }
+
+    /**
+     * Finds the facing of a quad from its vertices. A quad only has a facing if all of its vertices lie on a plane which
+     * is perpendicular to one of the axes and within the bounds of the section, in which case the winding order of the
+     * vertices determines which side of the plane is the front.
+     */
+    private static ModelQuadFacing getFacing(float[] positions) {
+        for (int axis = 0; axis < 3; axis++) {
+            float plane = positions[axis];
+
+            if (positions[3 + axis] != plane || positions[6 + axis] != plane || positions[9 + axis] != plane) {
+                continue;
+            }
+
+            if (plane < 0.0f || plane > 16.0f) {
+                return ModelQuadFacing.UNASSIGNED;
+            }
+
+            // The component of the quad's normal on this axis, from the cross product of its diagonals
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+
+            float d1u = positions[6 + u] - positions[u];
+            float d1v = positions[6 + v] - positions[v];
+            float d2u = positions[9 + u] - positions[3 + u];
+            float d2v = positions[9 + v] - positions[3 + v];
+
+            float normal = (d1u * d2v) - (d1v * d2u);
+
+            if (normal == 0.0f) {
+                return ModelQuadFacing.UNASSIGNED;
+            }
+
+            switch (axis) {
+                case 0:
+                    return normal > 0.0f ? ModelQuadFacing.EAST : ModelQuadFacing.WEST;
+                case 1:
+                    return normal > 0.0f ? ModelQuadFacing.UP : ModelQuadFacing.DOWN;
+                default:
+                    return normal > 0.0f ? ModelQuadFacing.SOUTH : ModelQuadFacing.NORTH;
+            }
+        }
+
+        return ModelQuadFacing.UNASSIGNED;
+    }
+}
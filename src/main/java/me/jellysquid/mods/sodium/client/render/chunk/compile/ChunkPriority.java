@@ -0,0 +1,69 @@
+package me.jellysquid.mods.sodium.client.render.chunk.compile;
+
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
+import net.minecraft.client.render.Frustum;
+import net.minecraft.client.util.math.Vector3d;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * The priority of a section's work, which is shared by both the build queue and the upload stage so that sections are
+ * built and uploaded in the same order. Sections within the frustum come first, and are then ordered by the distance
+ * from their center to the camera.
+ */
+public class ChunkPriority implements Comparable<ChunkPriority> {
+    /**
+     * The squared distance (in blocks) the camera needs to travel before the priorities of queued work are updated.
+     */
+    private static final double REPRIORITIZE_DISTANCE_SQ = 32.0D * 32.0D;
+
+    private double distance;
+    private boolean visible;
+
+    /**
+     * Re-computes the priority of {@param render} against the given camera position and frustum, either of which may
+     * be null if not yet known.
+     */
+    public void update(ChunkRender<?> render, Vector3d camera, Frustum frustum) {
+        if (camera != null) {
+            BlockPos origin = render.getOrigin();
+
+            double dx = (origin.getX() + 8.0D) - camera.x;
+            double dy = (origin.getY() + 8.0D) - camera.y;
+            double dz = (origin.getZ() + 8.0D) - camera.z;
+
+            this.distance = (dx * dx) + (dy * dy) + (dz * dz);
+        } else {
+            this.distance = 0.0D;
+        }
+
+        this.visible = frustum != null && frustum.isVisible(render.getBoundingBox());
+    }
+
+    public boolean isVisible() {
+        return this.visible;
+    }
+
+    /**
+     * @return True if the camera has moved far enough from the position that priorities were last computed at that they
+     * should be computed again
+     */
+    public static boolean shouldReprioritize(double lastX, double lastY, double lastZ, double x, double y, double z) {
+        double dx = x - lastX;
+        double dy = y - lastY;
+        double dz = z - lastZ;
+
+        return (dx * dx) + (dy * dy) + (dz * dz) > REPRIORITIZE_DISTANCE_SQ;
+    }
+
+    /**
+     * Orders priorities so that the most important work comes first.
+     */
+    @Override
+    public int compareTo(ChunkPriority o) {
+        if (this.visible != o.visible) {
+            return this.visible ? -1 : 1;
+        }
+
+        return Double.compare(this.distance, o.distance);
+    }
+}
@@ -0,0 +1,258 @@
+package me.jellysquid.mods.sodium.client.render.chunk.compile;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import me.jellysquid.mods.sodium.client.render.chunk.compile.tasks.ChunkRenderUploadTask;
+import me.jellysquid.mods.sodium.client.util.stats.TimingStatistic;
+import net.minecraft.client.render.Frustum;
+import net.minecraft.client.util.math.Vector3d;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the results of completed chunk builds and uploads them to graphics memory on the main thread. Each frame,
+ * pending uploads are performed in order of priority (sections in the frustum first, then by distance to the camera)
+ * until either the frame's byte budget or time budget has been used up. Anything left over is carried over to the next
+ * frame.
+ */
+public class ChunkUploadStage {
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final Queue<PendingUpload> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    // Sorted so that the most important upload is at the end of the list
+    private final ObjectArrayList<PendingUpload> pending = new ObjectArrayList<>();
+    private boolean sorted = true;
+
+    private final TimingStatistic uploadTime = new TimingStatistic();
+
+    private long maxBytesPerFrame = Long.MAX_VALUE;
+    private long maxNanosPerFrame = Long.MAX_VALUE;
+
+    private long windowStart = Long.MIN_VALUE;
+    private long windowBytes;
+    private int windowFrames;
+
+    private long lastFrameBytes;
+    private long averageFrameBytes;
+
+    private int discardedUploads;
+
+    /**
+     * Adds a completed task to the stage. This can be called from any thread.
+     */
+    public void enqueue(ChunkRenderUploadTask task) {
+        PendingUpload upload = new PendingUpload(task);
+
+        this.pendingBytes.addAndGet(upload.size);
+        this.inbox.add(upload);
+    }
+
+    public void setLimits(long maxBytesPerFrame, long maxNanosPerFrame) {
+        this.maxBytesPerFrame = maxBytesPerFrame;
+        this.maxNanosPerFrame = maxNanosPerFrame;
+    }
+
+    /**
+     * Re-computes the priority of every pending upload. This should be called when the camera has moved far enough that
+     * the current ordering is no longer accurate.
+     */
+    public void reprioritize(Vector3d camera, Frustum frustum) {
+        for (PendingUpload upload : this.pending) {
+            upload.updatePriority(camera, frustum);
+        }
+
+        this.sorted = false;
+    }
+
+    /**
+     * Performs pending uploads until either budget for this frame has been exhausted. At least one upload will always be
+     * performed if any are waiting, so that a single large mesh can never block the stage.
+     *
+     * @param byteBudget The number of bytes which the caller would like to upload this frame, which will be further
+     *                   limited by the configured maximum
+     * @return True if any uploads were performed, otherwise false
+     */
+    public boolean upload(Vector3d camera, Frustum frustum, long byteBudget) {
+        this.drainInbox(camera, frustum);
+
+        long start = System.nanoTime();
+        long remainingBytes = Math.min(byteBudget, this.maxBytesPerFrame);
+
+        long uploadedBytes = 0L;
+        int count = 0;
+
+        while (!this.pending.isEmpty()) {
+            if (count > 0 && (remainingBytes <= 0 || System.nanoTime() - start >= this.maxNanosPerFrame)) {
+                break;
+            }
+
+            PendingUpload upload = this.pending.pop();
+
+            this.pendingBytes.addAndGet(-upload.size);
+
+            if (!this.tryUpload(upload.task)) {
+                continue;
+            }
+
+            remainingBytes -= upload.size;
+            uploadedBytes += upload.size;
+
+            count++;
+        }
+
+        long now = System.nanoTime();
+
+        if (count > 0) {
+            this.uploadTime.record(now - start);
+        }
+
+        this.updateStatistics(now, uploadedBytes);
+
+        return count > 0;
+    }
+
+    /**
+     * Uploads a task right away, bypassing the queue and any budgets. This must be called from the main thread.
+     */
+    public void uploadImmediately(ChunkRenderUploadTask task) {
+        this.tryUpload(task);
+    }
+
+    private boolean tryUpload(ChunkRenderUploadTask task) {
+        // A newer build has been scheduled for this section since this one was, so uploading it would only be replaced
+        if (task.isStale()) {
+            task.discard();
+
+            this.discardedUploads++;
+
+            return false;
+        }
+
+        task.performUpload();
+
+        return true;
+    }
+
+    private void drainInbox(Vector3d camera, Frustum frustum) {
+        PendingUpload upload;
+
+        while ((upload = this.inbox.poll()) != null) {
+            upload.updatePriority(camera, frustum);
+
+            this.pending.add(upload);
+            this.sorted = false;
+        }
+
+        if (!this.sorted) {
+            this.pending.sort(null);
+            this.sorted = true;
+        }
+    }
+
+    private void updateStatistics(long now, long bytes) {
+        this.lastFrameBytes = bytes;
+
+        this.windowBytes += bytes;
+        this.windowFrames++;
+
+        if (this.windowStart == Long.MIN_VALUE) {
+            this.windowStart = now;
+        }
+
+        if (now - this.windowStart >= WINDOW_NANOS) {
+            this.averageFrameBytes = this.windowBytes / Math.max(1, this.windowFrames);
+
+            this.windowBytes = 0L;
+            this.windowFrames = 0;
+            this.windowStart = now;
+        }
+
+        this.uploadTime.update(now);
+    }
+
+    public void reset() {
+        this.inbox.clear();
+        this.pending.clear();
+        this.pendingBytes.set(0L);
+        this.sorted = true;
+
+        this.uploadTime.reset();
+
+        this.windowStart = Long.MIN_VALUE;
+        this.windowBytes = 0L;
+        this.windowFrames = 0;
+        this.lastFrameBytes = 0L;
+        this.averageFrameBytes = 0L;
+
+        this.discardedUploads = 0;
+    }
+
+    public boolean isEmpty() {
+        return this.pending.isEmpty() && this.inbox.isEmpty();
+    }
+
+    /**
+     * @return The number of uploads waiting to be performed
+     */
+    public int getQueueDepth() {
+        return this.pending.size() + this.inbox.size();
+    }
+
+    /**
+     * @return The number of bytes waiting to be uploaded
+     */
+    public long getPendingBytes() {
+        return this.pendingBytes.get();
+    }
+
+    /**
+     * @return The number of bytes uploaded in the last frame
+     */
+    public long getLastFrameBytes() {
+        return this.lastFrameBytes;
+    }
+
+    /**
+     * @return The average number of bytes uploaded per frame over the last second
+     */
+    public long getAverageFrameBytes() {
+        return this.averageFrameBytes;
+    }
+
+    /**
+     * @return The number of completed builds which were thrown away as they were stale by the time of upload
+     */
+    public int getDiscardedUploads() {
+        return this.discardedUploads;
+    }
+
+    public String getDebugString() {
+        return String.format("Chunk Uploads: %d queued (%dKB), %dKB/frame (%dKB avg), %s", this.getQueueDepth(),
+                this.getPendingBytes() / 1024L, this.lastFrameBytes / 1024L, this.averageFrameBytes / 1024L,
+                this.uploadTime.format());
+    }
+
+    private static class PendingUpload implements Comparable<PendingUpload> {
+        private final ChunkRenderUploadTask task;
+        private final long size;
+        private final ChunkPriority priority = new ChunkPriority();
+
+        private PendingUpload(ChunkRenderUploadTask task) {
+            this.task = task;
+            this.size = task.getUploadSize();
+        }
+
+        private void updatePriority(Vector3d camera, Frustum frustum) {
+            this.priority.update(this.task.getRender(), camera, frustum);
+        }
+
+        @Override
+        public int compareTo(PendingUpload o) {
+            // Reversed, as the most important uploads are taken from the end of the list
+            return o.priority.compareTo(this.priority);
+        }
+    }
+}
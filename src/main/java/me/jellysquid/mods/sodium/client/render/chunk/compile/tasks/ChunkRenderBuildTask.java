@@ -1,8 +1,42 @@
 package me.jellysquid.mods.sodium.client.render.chunk.compile.tasks;
 
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.VertexBufferCache;
 import me.jellysquid.mods.sodium.client.render.pipeline.ChunkRenderPipeline;
 
 public abstract class ChunkRenderBuildTask {
+    protected final ChunkRender<?> render;
+    protected final int generation;
+
+    protected ChunkRenderBuildTask(ChunkRender<?> render) {
+        this.render = render;
+        this.generation = render.getRebuildGeneration();
+    }
+
+    /**
+     * Performs the build on a worker thread.
+     *
+     * @return The result to be uploaded, or null if the build was abandoned because a newer one has been scheduled
+     */
     public abstract ChunkRenderUploadTask performBuild(ChunkRenderPipeline pipeline, VertexBufferCache buffers);
+
+    /**
+     * Releases any resources held by this task without performing it. This is used for tasks which were cancelled
+     * before a worker could start on them.
+     */
+    public void discard() {
+
+    }
+
+    /**
+     * @return True if a newer build has been scheduled for the render since this task was created, meaning any
+     * result it produces will be discarded
+     */
+    public boolean isStale() {
+        return this.render.getRebuildGeneration() != this.generation;
+    }
+
+    public ChunkRender<?> getRender() {
+        return this.render;
+    }
 }
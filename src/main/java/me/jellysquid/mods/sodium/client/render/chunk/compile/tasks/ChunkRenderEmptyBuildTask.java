@@ -10,22 +10,18 @@ import net.minecraft.util.math.Direction;
 import java.util.EnumSet;
 
 public class ChunkRenderEmptyBuildTask extends ChunkRenderBuildTask {
-    private final ChunkRender<?> render;
-
     public ChunkRenderEmptyBuildTask(ChunkRender<?> render) {
-        this.render = render;
+        super(render);
     }
 
     @Override
     public ChunkRenderUploadTask performBuild(ChunkRenderPipeline pipeline, VertexBufferCache buffers) {
-        return new ChunkRenderEmptyBuildTask.EmptyUploadTask(this.render);
+        return new ChunkRenderEmptyBuildTask.EmptyUploadTask(this.render, this.generation);
     }
 
     public static class EmptyUploadTask extends ChunkRenderUploadTask {
-        private final ChunkRender<?> render;
-
-        public EmptyUploadTask(ChunkRender<?> render) {
-            this.render = render;
+        public EmptyUploadTask(ChunkRender<?> render, int generation) {
+            super(render, generation);
         }
 
         @Override
@@ -1,10 +1,17 @@
 package me.jellysquid.mods.sodium.client.render.chunk.compile.tasks;
 
+import com.mojang.datafixers.util.Pair;
+import me.jellysquid.mods.sodium.client.gl.BufferUploadData;
+import me.jellysquid.mods.sodium.client.gl.GlStagingBuffer;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkLayerInfo;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkMeshInfo;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.ChunkBuilder;
+import me.jellysquid.mods.sodium.client.render.chunk.compile.ChunkMeshCache;
+import me.jellysquid.mods.sodium.client.render.chunk.compile.ChunkMeshPartitioner;
 import me.jellysquid.mods.sodium.client.render.chunk.compile.VertexBufferCache;
 import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuadConsumer;
+import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuadFacing;
 import me.jellysquid.mods.sodium.client.render.model.quad.transformers.TranslateTransformer;
 import me.jellysquid.mods.sodium.client.render.pipeline.ChunkRenderPipeline;
 import me.jellysquid.mods.sodium.client.world.WorldSlice;
@@ -15,37 +22,112 @@ import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.client.render.BufferBuilder;
 import net.minecraft.client.render.RenderLayer;
 import net.minecraft.client.render.RenderLayers;
-import net.minecraft.client.render.VertexFormats;
+import net.minecraft.client.render.VertexFormat;
 import net.minecraft.client.render.block.entity.BlockEntityRenderDispatcher;
 import net.minecraft.client.render.block.entity.BlockEntityRenderer;
 import net.minecraft.client.render.chunk.ChunkOcclusionDataBuilder;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.client.util.GlAllocationUtils;
 import net.minecraft.client.util.math.Vector3d;
 import net.minecraft.fluid.FluidState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.chunk.WorldChunk;
 import org.lwjgl.opengl.GL11;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
 public class ChunkRenderRebuildTask extends ChunkRenderBuildTask {
-    private final ChunkRender<?> render;
+    /**
+     * The bitmask of every 16x1x16 slice of blocks within a section.
+     */
+    public static final int ALL_SLICES = 0xFFFF;
+
     private final Vector3d camera;
     private final WorldSlice slice;
+    private final ChunkMeshCache meshCache;
+    private final boolean useMeshCache;
+
+    // The vertex format of each block layer, in the order of RenderLayer#getBlockLayers()
+    private final VertexFormat[] formats;
+
+    // The slices which need to be meshed again, with the other slices being taken from the previous mesh
+    private final int dirtySlices;
+    private final ChunkMeshInfo previousMesh;
+    private final Map<RenderLayer, ChunkLayerInfo.Retained> previousLayers;
+
+    /**
+     * Creates a task which meshes the entire section.
+     *
+     * @param useMeshCache If true, the mesh will be restored from or stored in the mesh cache. Hashing the contents of
+     *                     the section is not free, so this should only be set when a cached mesh could plausibly match.
+     */
+    public ChunkRenderRebuildTask(ChunkBuilder builder, ChunkRender<?> render, WorldSlice slice, boolean useMeshCache) {
+        this(builder, render, slice, ALL_SLICES, null, null, useMeshCache);
+    }
+
+    /**
+     * Creates a task which only meshes the slices of the section in {@param dirtySlices}. Every other slice is copied
+     * from {@param previousLayers}, which must be the retained vertex data of {@param previousMesh}.
+     */
+    public ChunkRenderRebuildTask(ChunkBuilder builder, ChunkRender<?> render, WorldSlice slice, int dirtySlices,
+                                  ChunkMeshInfo previousMesh, Map<RenderLayer, ChunkLayerInfo.Retained> previousLayers) {
+        this(builder, render, slice, dirtySlices, previousMesh, previousLayers, false);
+    }
+
+    private ChunkRenderRebuildTask(ChunkBuilder builder, ChunkRender<?> render, WorldSlice slice, int dirtySlices,
+                                   ChunkMeshInfo previousMesh, Map<RenderLayer, ChunkLayerInfo.Retained> previousLayers,
+                                   boolean useMeshCache) {
+        super(render);
 
-    public ChunkRenderRebuildTask(ChunkBuilder builder, ChunkRender<?> render, WorldSlice slice) {
-        this.render = render;
         this.camera = builder.getCameraPosition();
         this.slice = slice;
+        this.meshCache = builder.getMeshCache();
+        this.useMeshCache = useMeshCache;
+
+        List<RenderLayer> layers = RenderLayer.getBlockLayers();
+
+        this.formats = new VertexFormat[layers.size()];
+
+        for (int i = 0; i < layers.size(); i++) {
+            this.formats[i] = builder.getVertexFormat(layers.get(i));
+        }
+        this.dirtySlices = dirtySlices;
+        this.previousMesh = previousMesh;
+        this.previousLayers = previousLayers;
     }
 
     @Override
     public ChunkRenderUploadTask performBuild(ChunkRenderPipeline pipeline, VertexBufferCache buffers) {
-        pipeline.init(this.slice, this.slice.getBlockOffsetX(), this.slice.getBlockOffsetY(), this.slice.getBlockOffsetZ());
+        if (this.isStale()) {
+            return this.abort(buffers);
+        }
+
+        // The main thread only captured references to the world's data, so take our own copy before meshing
+        this.slice.copyBlockStates();
 
         ChunkMeshInfo.Builder meshInfo = new ChunkMeshInfo.Builder();
-        ChunkOcclusionDataBuilder occluder = new ChunkOcclusionDataBuilder();
 
         BlockPos from = this.render.getOrigin();
         BlockPos to = from.add(16, 16, 16);
 
+        // Partial rebuilds only happen for sections which were just modified, so they will never match a cached mesh
+        boolean cacheable = this.useMeshCache && this.previousLayers == null;
+        long hash = 0L;
+
+        if (cacheable) {
+            hash = ChunkMeshCache.computeHash(this.slice, from);
+
+            if (this.meshCache.tryRestore(from, hash, meshInfo)) {
+                return new Result(this.render, this.generation, meshInfo.build(), this.slice);
+            }
+        }
+
+        pipeline.init(this.slice, this.slice.getBlockOffsetX(), this.slice.getBlockOffsetY(), this.slice.getBlockOffsetZ());
+
+        ChunkOcclusionDataBuilder occluder = new ChunkOcclusionDataBuilder();
+
         TranslateTransformer transformer = new TranslateTransformer();
 
         int minX = from.getX();
@@ -58,7 +140,26 @@ public class ChunkRenderRebuildTask extends ChunkRenderBuildTask {
 
         BlockPos.Mutable pos = new BlockPos.Mutable();
 
+        List<RenderLayer> layers = RenderLayer.getBlockLayers();
+
+        // The first vertex of each slice within each layer's buffer, with an extra entry for the end of the last slice
+        int[][] sliceOffsets = new int[layers.size()][17];
+
         for (int y = minY; y < maxY; y++) {
+            // Check between each layer of blocks whether or not a newer build has been scheduled, as our result
+            // would then be thrown away
+            if (this.isStale()) {
+                return this.abort(buffers);
+            }
+
+            int sliceY = y - minY;
+
+            for (int i = 0; i < layers.size(); i++) {
+                sliceOffsets[i][sliceY] = getVertexCount(buffers.get(layers.get(i)));
+            }
+
+            boolean dirty = this.isSliceDirty(sliceY);
+
             for (int z = minZ; z < maxZ; z++) {
                 for (int x = minX; x < maxX; x++) {
                     BlockState blockState = this.slice.getBlockState(x, y, z);
@@ -70,89 +171,285 @@ public class ChunkRenderRebuildTask extends ChunkRenderBuildTask {
 
                     pos.set(x, y, z);
 
-                    if (block.getRenderType(blockState) != BlockRenderType.INVISIBLE) {
-                        RenderLayer layer = RenderLayers.getBlockLayer(blockState);
+                    if (dirty) {
+                        this.renderBlock(pipeline, buffers, meshInfo, transformer, blockState, block, pos);
+                    }
+
+                    if (blockState.isFullOpaque(this.slice, pos)) {
+                        occluder.markClosed(pos);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < layers.size(); i++) {
+            sliceOffsets[i][16] = getVertexCount(buffers.get(layers.get(i)));
+        }
 
-                        BufferBuilder builder = buffers.get(layer);
+        if (this.previousLayers != null) {
+            this.copyPreviousMeshInfo(meshInfo, minY);
+        }
 
-                        if (!builder.isBuilding()) {
-                            builder.begin(GL11.GL_QUADS, VertexFormats.POSITION_COLOR_TEXTURE_LIGHT_NORMAL);
-                        }
+        for (int i = 0; i < layers.size(); i++) {
+            RenderLayer layer = layers.get(i);
+            BufferBuilder builder = buffers.get(layer);
 
-                        transformer.setOffset(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+            Pair<BufferBuilder.DrawArrayParameters, ByteBuffer> data = null;
 
-                        pipeline.renderBlock(meshInfo, blockState, pos, this.slice, transformer, builder, true);
-                    }
+            ByteBuffer partitioned = null;
+            int[] partOffsets = null;
 
-                    FluidState fluidState = block.getFluidState(blockState);
+            if (builder.isBuilding() && !((ModelQuadConsumer) builder).isEmpty()) {
+                boolean translucent = layer == RenderLayer.getTranslucent();
 
-                    if (!fluidState.isEmpty()) {
-                        RenderLayer layer = RenderLayers.getFluidLayer(fluidState);
+                if (translucent) {
+                    builder.sortQuads((float) this.camera.x - (float) from.getX(),
+                            (float) this.camera.y - (float) from.getY(),
+                            (float) this.camera.z - (float) from.getZ());
+                }
 
-                        BufferBuilder builder = buffers.get(layer);
+                builder.end();
 
-                        if (!builder.isBuilding()) {
-                            builder.begin(GL11.GL_QUADS, VertexFormats.POSITION_COLOR_TEXTURE_LIGHT_NORMAL);
-                        }
+                data = builder.popData();
 
-                        pipeline.renderFluid(meshInfo, pos, this.slice, builder, fluidState);
-                    }
+                // Sorting re-orders the quads of the mesh, so they can no longer be split into slices or facings
+                if (!translucent) {
+                    partOffsets = new int[ChunkLayerInfo.SLICE_OFFSETS_LENGTH];
+                    partitioned = ChunkMeshPartitioner.partition(data.getSecond(), this.formats[i], sliceOffsets[i], partOffsets);
+                }
+            }
 
-                    if (block.hasBlockEntity()) {
-                        BlockEntity entity = this.slice.getBlockEntity(pos, WorldChunk.CreationType.CHECK);
+            ChunkLayerInfo.Retained previous = this.previousLayers != null ? this.previousLayers.get(layer) : null;
 
-                        if (entity != null) {
-                            BlockEntityRenderer<BlockEntity> renderer = BlockEntityRenderDispatcher.INSTANCE.get(entity);
+            if (previous != null) {
+                this.spliceMeshData(meshInfo, layer, this.formats[i], previous, partitioned, partOffsets);
+            } else if (partitioned != null) {
+                meshInfo.addMeshData(layer, new BufferUploadData(partitioned, this.formats[i]), partOffsets);
+            } else if (data != null) {
+                meshInfo.addMeshData(layer, data, null);
+            }
+        }
 
-                            if (renderer != null) {
-                                meshInfo.addBlockEntity(entity, !renderer.rendersOutsideBoundingBox(entity));
-                            }
-                        }
-                    }
+        meshInfo.setOcclusionData(occluder.build());
 
-                    if (blockState.isFullOpaque(this.slice, pos)) {
-                        occluder.markClosed(pos);
+        ChunkMeshInfo mesh = meshInfo.build();
+
+        // Block entities are tied to the world's instances and translucent geometry is sorted against the camera, so
+        // neither can be re-used later
+        if (cacheable && mesh.getBlockEntities().isEmpty() && mesh.getGlobalBlockEntities().isEmpty() &&
+                !mesh.hasLayer(RenderLayer.getTranslucent())) {
+            this.meshCache.store(from, hash, mesh);
+        }
+
+        return new Result(this.render, this.generation, mesh, this.slice);
+    }
+
+    private void renderBlock(ChunkRenderPipeline pipeline, VertexBufferCache buffers, ChunkMeshInfo.Builder meshInfo,
+                             TranslateTransformer transformer, BlockState blockState, Block block, BlockPos pos) {
+        if (block.getRenderType(blockState) != BlockRenderType.INVISIBLE) {
+            RenderLayer layer = RenderLayers.getBlockLayer(blockState);
+
+            BufferBuilder builder = buffers.get(layer);
+
+            if (!builder.isBuilding()) {
+                builder.begin(GL11.GL_QUADS, this.getVertexFormat(layer));
+            }
+
+            transformer.setOffset(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+
+            pipeline.renderBlock(meshInfo, blockState, pos, this.slice, transformer, builder, true);
+        }
+
+        FluidState fluidState = block.getFluidState(blockState);
+
+        if (!fluidState.isEmpty()) {
+            RenderLayer layer = RenderLayers.getFluidLayer(fluidState);
+
+            BufferBuilder builder = buffers.get(layer);
+
+            if (!builder.isBuilding()) {
+                builder.begin(GL11.GL_QUADS, this.getVertexFormat(layer));
+            }
+
+            pipeline.renderFluid(meshInfo, pos, this.slice, builder, fluidState);
+        }
+
+        if (block.hasBlockEntity()) {
+            BlockEntity entity = this.slice.getBlockEntity(pos, WorldChunk.CreationType.CHECK);
+
+            if (entity != null) {
+                BlockEntityRenderer<BlockEntity> renderer = BlockEntityRenderDispatcher.INSTANCE.get(entity);
+
+                if (renderer != null) {
+                    meshInfo.addBlockEntity(entity, !renderer.rendersOutsideBoundingBox(entity));
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries over the block entities and animated sprites of the slices which were not rebuilt. Sprites can't be
+     * attributed to a slice, so all of them are kept, which at worst means a few extra textures are animated.
+     */
+    private void copyPreviousMeshInfo(ChunkMeshInfo.Builder meshInfo, int minY) {
+        for (BlockEntity entity : this.previousMesh.getBlockEntities()) {
+            if (!this.isSliceDirty(entity.getPos().getY() - minY)) {
+                meshInfo.addBlockEntity(entity, true);
+            }
+        }
+
+        for (BlockEntity entity : this.previousMesh.getGlobalBlockEntities()) {
+            if (!this.isSliceDirty(entity.getPos().getY() - minY)) {
+                meshInfo.addBlockEntity(entity, false);
+            }
+        }
+
+        for (Sprite sprite : this.previousMesh.getAnimatedSprites()) {
+            meshInfo.addSprite(sprite);
+        }
+    }
+
+    /**
+     * Combines the slices which were just rebuilt with the remaining slices of the previous mesh. Both meshes are
+     * ordered by facing, with each facing ordered by slice.
+     */
+    private void spliceMeshData(ChunkMeshInfo.Builder meshInfo, RenderLayer layer, VertexFormat format,
+                                ChunkLayerInfo.Retained previous, ByteBuffer data, int[] dataOffsets) {
+        int stride = format.getVertexSize();
+
+        int[] offsets = new int[ChunkLayerInfo.SLICE_OFFSETS_LENGTH];
+        int vertexCount = 0;
+
+        for (int facing = 0; facing < ModelQuadFacing.COUNT; facing++) {
+            for (int y = 0; y < 16; y++) {
+                int index = ChunkLayerInfo.getSliceIndex(facing, y);
+
+                offsets[index] = vertexCount;
+
+                if (this.isSliceDirty(y)) {
+                    vertexCount += data != null ? dataOffsets[index + 1] - dataOffsets[index] : 0;
+                } else {
+                    vertexCount += previous.getSliceEnd(facing, y) - previous.getSliceStart(facing, y);
+                }
+            }
+        }
+
+        offsets[ChunkLayerInfo.SLICE_OFFSETS_LENGTH - 1] = vertexCount;
+
+        // Every remaining vertex in the layer was removed
+        if (vertexCount <= 0) {
+            return;
+        }
+
+        ByteBuffer buffer = GlAllocationUtils.allocateByteBuffer(vertexCount * stride);
+        ByteBuffer previousData = previous.getData();
+
+        for (int facing = 0; facing < ModelQuadFacing.COUNT; facing++) {
+            for (int y = 0; y < 16; y++) {
+                int index = ChunkLayerInfo.getSliceIndex(facing, y);
+
+                if (this.isSliceDirty(y)) {
+                    if (data != null) {
+                        copyVertices(data, dataOffsets[index], dataOffsets[index + 1], buffer, stride);
                     }
+                } else {
+                    copyVertices(previousData, previous.getSliceStart(facing, y), previous.getSliceEnd(facing, y), buffer, stride);
                 }
             }
         }
 
+        buffer.flip();
+
+        // Only the range between the first modified slice of the first facing and the last modified slice of the last
+        // facing has changed, but that is only useful if the size of the mesh stays the same
+        int firstDirty = Integer.numberOfTrailingZeros(this.dirtySlices);
+        int lastDirty = 31 - Integer.numberOfLeadingZeros(this.dirtySlices);
+
+        int dirtyStart = offsets[ChunkLayerInfo.getSliceIndex(0, firstDirty)] * stride;
+        int dirtyEnd = offsets[ChunkLayerInfo.getSliceIndex(ModelQuadFacing.COUNT - 1, lastDirty) + 1] * stride;
+
+        if (vertexCount != previous.getVertexCount()) {
+            dirtyStart = dirtyEnd = 0;
+        }
+
+        meshInfo.addMeshData(layer, new BufferUploadData(buffer, format, dirtyStart, dirtyEnd), offsets);
+    }
+
+    private VertexFormat getVertexFormat(RenderLayer layer) {
+        return this.formats[RenderLayer.getBlockLayers().indexOf(layer)];
+    }
+
+    private boolean isSliceDirty(int y) {
+        return (this.dirtySlices & (1 << y)) != 0;
+    }
+
+    private static void copyVertices(ByteBuffer src, int start, int end, ByteBuffer dst, int stride) {
+        if (end <= start) {
+            return;
+        }
+
+        ByteBuffer range = src.duplicate();
+        range.limit(src.position() + (end * stride));
+        range.position(src.position() + (start * stride));
+
+        dst.put(range);
+    }
+
+    private static int getVertexCount(BufferBuilder builder) {
+        return builder.isBuilding() ? ((ModelQuadConsumer) builder).getVertexCount() : 0;
+    }
+
+    @Override
+    public void discard() {
+        this.render.finishRebuild(this.slice);
+    }
+
+    private ChunkRenderUploadTask abort(VertexBufferCache buffers) {
         for (RenderLayer layer : RenderLayer.getBlockLayers()) {
             BufferBuilder builder = buffers.get(layer);
 
-            if (builder.isBuilding() && !((ModelQuadConsumer) builder).isEmpty()) {
-                if (layer == RenderLayer.getTranslucent()) {
-                    builder.sortQuads((float) this.camera.x - (float) from.getX(),
-                            (float) this.camera.y - (float) from.getY(),
-                            (float) this.camera.z - (float) from.getZ());
-                }
-
+            if (builder.isBuilding()) {
                 builder.end();
-
-                meshInfo.addMeshData(layer, builder.popData());
+                builder.popData();
             }
         }
 
-        meshInfo.setOcclusionData(occluder.build());
+        this.render.finishRebuild(this.slice);
 
-        return new Result(this.render, meshInfo.build(), this.slice);
+        return null;
     }
 
     public static class Result extends ChunkRenderUploadTask {
-        private final ChunkRender<?> chunkRender;
         private final ChunkMeshInfo meshInfo;
         private final WorldSlice slice;
 
-        public Result(ChunkRender<?> chunkRender, ChunkMeshInfo meshInfo, WorldSlice slice) {
-            this.chunkRender = chunkRender;
+        public Result(ChunkRender<?> render, int generation, ChunkMeshInfo meshInfo, WorldSlice slice) {
+            super(render, generation);
+
             this.meshInfo = meshInfo;
             this.slice = slice;
         }
 
         @Override
         public void performUpload() {
-            this.chunkRender.upload(this.meshInfo);
-            this.chunkRender.finishRebuild(this.slice);
+            this.render.upload(this.meshInfo);
+            this.render.finishRebuild(this.slice);
+        }
+
+        @Override
+        public void stage(GlStagingBuffer stagingBuffer) {
+            this.meshInfo.stageUploads(stagingBuffer);
+        }
+
+        @Override
+        public void discard() {
+            this.meshInfo.discardStagedUploads();
+            this.render.finishRebuild(this.slice);
+        }
+
+        @Override
+        public long getUploadSize() {
+            return this.meshInfo.getUploadSize();
         }
     }
 }
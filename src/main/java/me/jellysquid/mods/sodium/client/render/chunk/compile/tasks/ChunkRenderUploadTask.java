@@ -1,5 +1,51 @@
 package me.jellysquid.mods.sodium.client.render.chunk.compile.tasks;
 
+import me.jellysquid.mods.sodium.client.gl.GlStagingBuffer;
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkRender;
+
 public abstract class ChunkRenderUploadTask {
+    protected final ChunkRender<?> render;
+    protected final int generation;
+
+    protected ChunkRenderUploadTask(ChunkRender<?> render, int generation) {
+        this.render = render;
+        this.generation = generation;
+    }
+
     public abstract void performUpload();
+
+    /**
+     * Copies the data which will be uploaded by this task into the staging buffer ahead of time. This is called from
+     * the worker thread which built the result.
+     */
+    public void stage(GlStagingBuffer stagingBuffer) {
+
+    }
+
+    /**
+     * Releases any resources held by this task without uploading it. This is used in place of
+     * {@link ChunkRenderUploadTask#performUpload()} for stale results.
+     */
+    public void discard() {
+
+    }
+
+    /**
+     * @return The number of bytes which will be uploaded into graphics memory by this task
+     */
+    public long getUploadSize() {
+        return 0L;
+    }
+
+    /**
+     * @return True if a newer build has been scheduled for the render since this result's build was, meaning this
+     * result must not be uploaded
+     */
+    public boolean isStale() {
+        return this.render.getRebuildGeneration() != this.generation;
+    }
+
+    public ChunkRender<?> getRender() {
+        return this.render;
+    }
 }
@@ -0,0 +1,43 @@
+package me.jellysquid.mods.sodium.client.render.chunk.format;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormatElement;
+import net.minecraft.client.render.VertexFormats;
+
+public class ChunkVertexFormats {
+    public static final VertexFormatElement COMPACT_POSITION_ELEMENT = new VertexFormatElement(0, VertexFormatElement.Format.SHORT, VertexFormatElement.Type.POSITION, 3);
+    public static final VertexFormatElement COMPACT_PADDING_ELEMENT = new VertexFormatElement(0, VertexFormatElement.Format.BYTE, VertexFormatElement.Type.PADDING, 2);
+    public static final VertexFormatElement COMPACT_TEXTURE_ELEMENT = new VertexFormatElement(0, VertexFormatElement.Format.SHORT, VertexFormatElement.Type.UV, 2);
+
+    /**
+     * A 20-byte vertex format for terrain which uses section-relative short positions, normalized short texture
+     * coordinates, and omits the normal (which isn't used by terrain rendering). See {@link CompactVertexEncoder} for
+     * how values are packed.
+     */
+    public static final VertexFormat COMPACT = new VertexFormat(ImmutableList.<VertexFormatElement>builder()
+            .add(COMPACT_POSITION_ELEMENT)
+            .add(COMPACT_PADDING_ELEMENT)
+            .add(VertexFormats.COLOR_ELEMENT)
+            .add(COMPACT_TEXTURE_ELEMENT)
+            .add(VertexFormats.LIGHT_ELEMENT)
+            .build());
+
+    /**
+     * @param compact True if the compact vertex format should be used where possible
+     * @return The vertex format which meshes for the given layer will be built with
+     */
+    public static VertexFormat getVertexFormat(RenderLayer layer, boolean compact) {
+        // Translucent meshes are sorted by the vanilla buffer builder, which only understands float positions
+        if (compact && layer != RenderLayer.getTranslucent()) {
+            return COMPACT;
+        }
+
+        return layer.getVertexFormat();
+    }
+
+    public static boolean isCompact(VertexFormat format) {
+        return format == COMPACT;
+    }
+}
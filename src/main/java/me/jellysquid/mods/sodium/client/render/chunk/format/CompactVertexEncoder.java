@@ -0,0 +1,66 @@
+package me.jellysquid.mods.sodium.client.render.chunk.format;
+
+import net.minecraft.util.math.MathHelper;
+
+import java.nio.ByteBuffer;
+
+import static me.jellysquid.mods.sodium.client.util.QuadUtil.*;
+
+/**
+ * Packs vertices into {@link ChunkVertexFormats#COMPACT}. The fixed-function pipeline can't normalize short positions
+ * or texture coordinates, so the chunk renderer undoes the scaling applied here through the model-view and texture
+ * matrices instead.
+ */
+public class CompactVertexEncoder {
+    public static final int VERTEX_SIZE = 20;
+
+    /**
+     * Positions are stored relative to the center of the section, giving a range of [-8, 24) blocks on each axis with
+     * a precision of 1/2048th of a block.
+     */
+    public static final float POSITION_OFFSET = 8.0f;
+    public static final float POSITION_SCALE = 2048.0f;
+
+    /**
+     * Texture coordinates are stored with a precision of 1/32768th, which exactly represents the texel boundaries of
+     * any texture atlas up to 32768 pixels wide. The one exception is a coordinate of 1.0, which doesn't fit in a short
+     * and is clamped to 32767/32768, shortening the texels on the atlas' far edges by up to 1/32768th.
+     */
+    public static final float TEXTURE_SCALE = 32768.0f;
+
+    public static short encodePosition(float pos) {
+        return (short) MathHelper.clamp(Math.round((pos - POSITION_OFFSET) * POSITION_SCALE), Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    public static float decodePosition(short pos) {
+        return (pos / POSITION_SCALE) + POSITION_OFFSET;
+    }
+
+    public static short encodeTexture(float uv) {
+        return (short) MathHelper.clamp(Math.round(uv * TEXTURE_SCALE), 0, Short.MAX_VALUE);
+    }
+
+    public static float decodeTexture(short uv) {
+        return uv / TEXTURE_SCALE;
+    }
+
+    /**
+     * Writes a quad in the vertex layout used by baked models (see {@link me.jellysquid.mods.sodium.client.util.QuadUtil})
+     * into {@param buffer} as four compact vertices, starting at the byte offset {@param offset}.
+     */
+    public static void writeQuad(int[] data, ByteBuffer buffer, int offset) {
+        for (int i = 0; i < 4; i++) {
+            int src = vertexOffset(i);
+            int dst = offset + (i * VERTEX_SIZE);
+
+            buffer.putShort(dst, encodePosition(Float.intBitsToFloat(data[src + POSITION_INDEX])));
+            buffer.putShort(dst + 2, encodePosition(Float.intBitsToFloat(data[src + POSITION_INDEX + 1])));
+            buffer.putShort(dst + 4, encodePosition(Float.intBitsToFloat(data[src + POSITION_INDEX + 2])));
+            buffer.putShort(dst + 6, (short) 0);
+            buffer.putInt(dst + 8, data[src + COLOR_INDEX]);
+            buffer.putShort(dst + 12, encodeTexture(Float.intBitsToFloat(data[src + TEXTURE_INDEX])));
+            buffer.putShort(dst + 14, encodeTexture(Float.intBitsToFloat(data[src + TEXTURE_INDEX + 1])));
+            buffer.putInt(dst + 16, data[src + LIGHT_INDEX]);
+        }
+    }
+}
@@ -4,4 +4,6 @@ public interface ModelQuadConsumer {
     void write(ModelQuadView quad);
 
     boolean isEmpty();
+
+    int getVertexCount();
 }
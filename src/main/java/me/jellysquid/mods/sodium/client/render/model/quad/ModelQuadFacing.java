@@ -0,0 +1,30 @@
+package me.jellysquid.mods.sodium.client.render.model.quad;
+
+/**
+ * The direction which a quad of chunk geometry faces, which is used to skip drawing quads that face away from the
+ * camera. Quads which do not lie flat on a plane aligned with one of the axes are {@link #UNASSIGNED} and are always
+ * drawn.
+ */
+public enum ModelQuadFacing {
+    UP,
+    DOWN,
+    EAST,
+    WEST,
+    SOUTH,
+    NORTH,
+    UNASSIGNED;
+
+    public static final ModelQuadFacing[] VALUES = ModelQuadFacing.values();
+    public static final int COUNT = VALUES.length;
+
+    /**
+     * @return A bitmask containing every facing
+     */
+    public static int all() {
+        return (1 << COUNT) - 1;
+    }
+
+    public int bit() {
+        return 1 << this.ordinal();
+    }
+}
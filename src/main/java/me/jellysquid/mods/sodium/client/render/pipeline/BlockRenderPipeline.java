@@ -142,7 +142,7 @@ public class BlockRenderPipeline {
         writeQuad(consumer, copy);
     }
 
-    private static void writeQuad(VertexConsumer consumer, ModelQuadViewMutable quad) {
+    static void writeQuad(VertexConsumer consumer, ModelQuadViewMutable quad) {
         if (consumer instanceof ModelQuadConsumer) {
             ((ModelQuadConsumer) consumer).write(quad);
         } else {
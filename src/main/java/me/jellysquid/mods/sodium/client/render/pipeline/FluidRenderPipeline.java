@@ -1,6 +1,9 @@
 package me.jellysquid.mods.sodium.client.render.pipeline;
 
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkMeshInfo;
+import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuad;
+import me.jellysquid.mods.sodium.client.util.ColorUtil;
+import me.jellysquid.mods.sodium.client.util.QuadUtil;
 import me.jellysquid.mods.sodium.client.world.WorldSlice;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
@@ -27,6 +30,9 @@ import net.minecraft.world.BlockRenderView;
 public class FluidRenderPipeline {
     private final BlockPos.Mutable scratchPos = new BlockPos.Mutable();
 
+    private final ModelQuad quad = new ModelQuad();
+    private int quadVertexIndex;
+
     private final Sprite[] lavaSprites = new Sprite[2];
     private final Sprite[] waterSprites = new Sprite[2];
     private Sprite waterOverlaySprite;
@@ -290,7 +296,25 @@ public class FluidRenderPipeline {
     }
 
     private void vertex(VertexConsumer consumer, double x, double y, double z, float r, float g, float b, float u, float v, int light) {
-        consumer.vertex(x, y, z).color(r, g, b, 1.0F).texture(u, v).light(light).normal(0.0F, 1.0F, 0.0F).next();
+        ModelQuad quad = this.quad;
+        int i = this.quadVertexIndex;
+
+        quad.setX(i, (float) x);
+        quad.setY(i, (float) y);
+        quad.setZ(i, (float) z);
+        quad.setColor(i, ColorUtil.encodeRGBA(r, g, b, 1.0F));
+        quad.setTexU(i, u);
+        quad.setTexV(i, v);
+        quad.setLight(i, light);
+        quad.setNormal(i, QuadUtil.getNormal(Direction.UP));
+
+        // Vertices are always emitted in groups of four, so write them out as a quad which lets the consumer pick
+        // the vertex format
+        if (++this.quadVertexIndex >= 4) {
+            this.quadVertexIndex = 0;
+
+            BlockRenderPipeline.writeQuad(consumer, quad);
+        }
     }
 
     private int getLight(BlockRenderView world, int x, int y, int z) {
@@ -0,0 +1,390 @@
+package me.jellysquid.mods.sodium.client.util.arena;
+
+/**
+ * Hands out ranges of a larger block of memory, such as a GPU buffer, without knowing anything about the memory itself.
+ * Ranges are placed with a first-fit search and neighbouring free ranges are merged when memory is freed.
+ *
+ * The arena can grow in place, which only adds free space after the existing ranges and so never moves them. Ranges
+ * can also be moved towards the start of the arena a few at a time through {@link #defragment(int, MoveListener)},
+ * which gathers the free space into a large range at the end. Ranges which are larger than every free range before
+ * them are left in place, so some smaller holes can remain.
+ *
+ * All offsets and sizes are in bytes, and every range is aligned to {@link #getAlignment()}. This is not thread-safe.
+ */
+public class ArenaAllocator {
+    private final int alignment;
+
+    // The first block in address order, with every byte of the arena belonging to exactly one block
+    private Block head;
+
+    private int capacity;
+    private int used;
+    private int allocationCount;
+
+    public ArenaAllocator(int capacity, int alignment) {
+        if (alignment <= 0) {
+            throw new IllegalArgumentException("Alignment must be positive");
+        }
+
+        this.alignment = alignment;
+        this.capacity = this.alignDown(capacity);
+        this.head = new Block(0, this.capacity);
+    }
+
+    /**
+     * @return The allocated range, or null if there is no free range large enough
+     */
+    public Allocation allocate(int size) {
+        size = this.alignUp(size);
+
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+
+        for (Block block = this.head; block != null; block = block.next) {
+            if (block.allocation == null && block.size >= size) {
+                return this.allocateFrom(block, size);
+            }
+        }
+
+        return null;
+    }
+
+    private Allocation allocateFrom(Block block, int size) {
+        if (block.size > size) {
+            this.split(block, size);
+        }
+
+        block.allocation = new Allocation(block);
+
+        this.used += block.size;
+        this.allocationCount++;
+
+        return block.allocation;
+    }
+
+    public void free(Allocation allocation) {
+        Block block = allocation.checkBlock();
+
+        block.allocation = null;
+        allocation.block = null;
+
+        this.used -= block.size;
+        this.allocationCount--;
+
+        this.merge(block);
+    }
+
+    /**
+     * Changes the size of an allocation without moving it, which is possible when shrinking it or when the range after
+     * it is free and large enough.
+     *
+     * @return True if the allocation now has the requested size, otherwise false and the allocation is unchanged
+     */
+    public boolean resize(Allocation allocation, int size) {
+        Block block = allocation.checkBlock();
+
+        size = this.alignUp(size);
+
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+
+        if (size < block.size) {
+            this.used -= block.size - size;
+
+            this.merge(this.split(block, size));
+
+            return true;
+        }
+
+        int extra = size - block.size;
+
+        if (extra == 0) {
+            return true;
+        }
+
+        Block next = block.next;
+
+        if (next == null || next.allocation != null || next.size < extra) {
+            return false;
+        }
+
+        if (next.size > extra) {
+            this.split(next, extra);
+        }
+
+        block.size += next.size;
+        this.unlink(next);
+
+        this.used += extra;
+
+        return true;
+    }
+
+    /**
+     * Adds free space to the end of the arena. Existing allocations keep their offsets, so the caller only needs to copy
+     * the old contents into the start of the larger memory block.
+     */
+    public void grow(int capacity) {
+        capacity = this.alignDown(capacity);
+
+        if (capacity <= this.capacity) {
+            return;
+        }
+
+        Block tail = this.head;
+
+        while (tail.next != null) {
+            tail = tail.next;
+        }
+
+        Block block = new Block(this.capacity, capacity - this.capacity);
+        block.prev = tail;
+        tail.next = block;
+
+        this.capacity = capacity;
+
+        this.merge(block);
+    }
+
+    /**
+     * Moves allocations from the end of the arena into earlier free ranges which they entirely fit into, so that the
+     * source and destination of a move never overlap. Allocations at the end of the arena are moved first, as moving
+     * them grows the free range at the end.
+     *
+     * @param maxBytes The maximum number of bytes to move in this pass
+     * @param listener Called for each move, which must copy the contents of the allocation to its new offset
+     * @return The number of bytes which were moved
+     */
+    public int defragment(int maxBytes, MoveListener listener) {
+        int moved = 0;
+
+        Block block = this.getTail();
+
+        while (block != null && moved < maxBytes) {
+            Block prev = block.prev;
+
+            if (block.allocation != null && moved + block.size <= maxBytes) {
+                Block target = this.findFreeBlockBefore(block.offset, block.size);
+
+                if (target != null) {
+                    moved += block.size;
+
+                    this.move(block, target, listener);
+                }
+            }
+
+            block = prev;
+        }
+
+        return moved;
+    }
+
+    private void move(Block block, Block target, MoveListener listener) {
+        int size = block.size;
+
+        if (target.size > size) {
+            this.split(target, size);
+        }
+
+        Allocation allocation = block.allocation;
+
+        listener.onMoved(allocation, block.offset, target.offset, size);
+
+        target.allocation = allocation;
+        allocation.block = target;
+
+        block.allocation = null;
+
+        this.merge(block);
+    }
+
+    private Block findFreeBlockBefore(int offset, int size) {
+        for (Block block = this.head; block != null && block.offset < offset; block = block.next) {
+            if (block.allocation == null && block.size >= size) {
+                return block;
+            }
+        }
+
+        return null;
+    }
+
+    private Block getTail() {
+        Block block = this.head;
+
+        while (block.next != null) {
+            block = block.next;
+        }
+
+        return block;
+    }
+
+    /**
+     * Splits a block into one of {@param size} bytes and a new free block with the remainder, which is returned.
+     */
+    private Block split(Block block, int size) {
+        Block rest = new Block(block.offset + size, block.size - size);
+        rest.prev = block;
+        rest.next = block.next;
+
+        if (block.next != null) {
+            block.next.prev = rest;
+        }
+
+        block.next = rest;
+        block.size = size;
+
+        return rest;
+    }
+
+    /**
+     * Merges a free block with its neighbours if they are also free.
+     */
+    private void merge(Block block) {
+        Block next = block.next;
+
+        if (next != null && next.allocation == null) {
+            block.size += next.size;
+            this.unlink(next);
+        }
+
+        Block prev = block.prev;
+
+        if (prev != null && prev.allocation == null) {
+            prev.size += block.size;
+            this.unlink(block);
+        }
+    }
+
+    private void unlink(Block block) {
+        if (block.prev != null) {
+            block.prev.next = block.next;
+        } else {
+            this.head = block.next;
+        }
+
+        if (block.next != null) {
+            block.next.prev = block.prev;
+        }
+    }
+
+    private int alignUp(int size) {
+        return ((size + this.alignment - 1) / this.alignment) * this.alignment;
+    }
+
+    private int alignDown(int size) {
+        return (size / this.alignment) * this.alignment;
+    }
+
+    public int getAlignment() {
+        return this.alignment;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int getUsedBytes() {
+        return this.used;
+    }
+
+    public int getFreeBytes() {
+        return this.capacity - this.used;
+    }
+
+    public int getAllocationCount() {
+        return this.allocationCount;
+    }
+
+    public boolean isEmpty() {
+        return this.allocationCount <= 0;
+    }
+
+    public int getLargestFreeBlock() {
+        int largest = 0;
+
+        for (Block block = this.head; block != null; block = block.next) {
+            if (block.allocation == null) {
+                largest = Math.max(largest, block.size);
+            }
+        }
+
+        return largest;
+    }
+
+    public int getFreeBlockCount() {
+        int count = 0;
+
+        for (Block block = this.head; block != null; block = block.next) {
+            if (block.allocation == null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return The fraction of free space which lies outside of the largest free block, from 0.0 when all free space is
+     * in one block to nearly 1.0 when it is split into many small blocks
+     */
+    public float getFragmentation() {
+        int free = this.getFreeBytes();
+
+        if (free <= 0) {
+            return 0.0f;
+        }
+
+        return 1.0f - ((float) this.getLargestFreeBlock() / free);
+    }
+
+    public interface MoveListener {
+        void onMoved(Allocation allocation, int from, int to, int size);
+    }
+
+    public static class Allocation {
+        private Block block;
+
+        private Allocation(Block block) {
+            this.block = block;
+        }
+
+        /**
+         * @return The offset of this allocation, which can change when the arena is defragmented
+         */
+        public int getOffset() {
+            return this.block.offset;
+        }
+
+        public int getSize() {
+            return this.block.size;
+        }
+
+        public boolean isFreed() {
+            return this.block == null;
+        }
+
+        private Block checkBlock() {
+            if (this.block == null) {
+                throw new IllegalStateException("Allocation has already been freed");
+            }
+
+            return this.block;
+        }
+    }
+
+    private static class Block {
+        private final int offset;
+        private int size;
+
+        private Allocation allocation;
+
+        private Block prev, next;
+
+        private Block(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
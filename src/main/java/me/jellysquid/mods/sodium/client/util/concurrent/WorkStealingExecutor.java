@@ -0,0 +1,370 @@
+package me.jellysquid.mods.sodium.client.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A fixed pool of worker threads which run prioritized tasks. Tasks are handed off to the workers through a shared
+ * ordered set, which is lock-free so that the thread submitting work never contends with the workers taking it. Each
+ * worker also owns a small deque of tasks which it takes from the front of, while idle workers steal from the back of
+ * the other workers' deques. Workers which find no work park themselves until another thread hands them a task.
+ *
+ * This knows nothing about the work being performed, so it can be driven without a game instance.
+ *
+ * @param <C> The type of the context owned by each worker, which is passed to every task that worker runs
+ * @param <T> The type of the tasks, which are run in their natural order
+ */
+public class WorkStealingExecutor<C, T extends WorkStealingExecutor.Task<C> & Comparable<T>> {
+    /**
+     * The maximum number of tasks a worker will move from the shared queue into its own deque at once.
+     */
+    private static final int MAX_LOCAL_BATCH_SIZE = 4;
+
+    private final ConcurrentSkipListSet<Node<T>> sharedQueue = new ConcurrentSkipListSet<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final Queue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Worker> workers = new ArrayList<>();
+
+    private final String name;
+    private final int threadCount;
+    private final Supplier<C> contextFactory;
+
+    /**
+     * @param contextFactory Creates the context of each worker, which is called from the thread starting the executor
+     */
+    public WorkStealingExecutor(String name, int threadCount, Supplier<C> contextFactory) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+
+        this.name = name;
+        this.threadCount = threadCount;
+        this.contextFactory = contextFactory;
+    }
+
+    public void start() {
+        if (this.running.getAndSet(true)) {
+            throw new IllegalStateException("Executor is already running");
+        }
+
+        if (!this.threads.isEmpty()) {
+            throw new IllegalStateException("Threads are still alive while in the STOPPED state");
+        }
+
+        for (int i = 0; i < this.threadCount; i++) {
+            this.workers.add(new Worker(this.contextFactory.get()));
+        }
+
+        for (int i = 0; i < this.workers.size(); i++) {
+            Worker worker = this.workers.get(i);
+
+            Thread thread = new Thread(worker, this.name + " #" + i);
+            thread.setPriority(Math.max(0, Thread.NORM_PRIORITY - 2));
+
+            worker.thread = thread;
+
+            this.threads.add(thread);
+        }
+
+        for (Thread thread : this.threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops every worker and waits for them to exit. Tasks which were running will be allowed to finish, while every
+     * task which had not started yet will be cancelled.
+     */
+    public void stop() {
+        if (!this.running.getAndSet(false)) {
+            throw new IllegalStateException("Executor is not running");
+        }
+
+        if (this.threads.isEmpty()) {
+            throw new IllegalStateException("No threads are alive but the executor is in the RUNNING state");
+        }
+
+        // Wake up all worker threads, where they will then terminate
+        for (Thread thread : this.threads) {
+            LockSupport.unpark(thread);
+        }
+
+        // Wait for every remaining thread to terminate
+        for (Thread thread : this.threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        this.threads.clear();
+
+        Node<T> node;
+
+        while ((node = this.sharedQueue.pollFirst()) != null) {
+            node.task.cancel();
+        }
+
+        for (Worker worker : this.workers) {
+            T task;
+
+            while ((task = worker.localQueue.pollFirst()) != null) {
+                task.cancel();
+            }
+        }
+
+        this.workers.clear();
+        this.idleWorkers.clear();
+        this.queuedTasks.set(0);
+    }
+
+    /**
+     * Hands off a task to the workers. This never blocks, which allows a thread to submit many tasks in a burst
+     * without contending with the workers.
+     */
+    public void submit(T task) {
+        if (!this.running.get()) {
+            throw new IllegalStateException("Executor is stopped");
+        }
+
+        this.queuedTasks.incrementAndGet();
+        this.sharedQueue.add(new Node<>(task, this.nextSequence.getAndIncrement()));
+
+        this.wakeIdleWorker();
+    }
+
+    /**
+     * Updates the priority of every task still waiting in the shared queue. Tasks are taken out of the queue while
+     * {@param updater} is called on them, as their ordering cannot change while they are in it. Tasks which a worker
+     * has already moved into its own deque will not be updated.
+     */
+    public void reprioritize(Consumer<T> updater) {
+        if (this.sharedQueue.isEmpty()) {
+            return;
+        }
+
+        List<Node<T>> nodes = new ArrayList<>();
+        Node<T> node;
+
+        while ((node = this.sharedQueue.pollFirst()) != null) {
+            nodes.add(node);
+        }
+
+        for (Node<T> n : nodes) {
+            updater.accept(n.task);
+        }
+
+        this.sharedQueue.addAll(nodes);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!this.wakeIdleWorker()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Hands off work to a single idle worker, if any exist.
+     *
+     * @return True if a worker was woken up, otherwise false
+     */
+    private boolean wakeIdleWorker() {
+        Worker worker = this.idleWorkers.poll();
+
+        if (worker == null) {
+            return false;
+        }
+
+        LockSupport.unpark(worker.thread);
+
+        return true;
+    }
+
+    public boolean isRunning() {
+        return this.running.get();
+    }
+
+    /**
+     * @return The number of tasks which have been submitted but not yet picked up by a worker
+     */
+    public int getQueuedTasks() {
+        return this.queuedTasks.get();
+    }
+
+    public int getIdleWorkers() {
+        return this.idleWorkers.size();
+    }
+
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    public interface Task<C> {
+        /**
+         * Runs the task on a worker thread.
+         *
+         * @param context The context owned by the worker running the task
+         */
+        void run(C context);
+
+        /**
+         * Called instead of {@link Task#run(Object)} when the executor is stopped before the task could start.
+         */
+        void cancel();
+
+        /**
+         * @return True if the task should never wait behind other tasks in a worker's deque
+         */
+        boolean isImportant();
+    }
+
+    private class Worker implements Runnable {
+        private final ConcurrentLinkedDeque<T> localQueue = new ConcurrentLinkedDeque<>();
+        private final C context;
+
+        private Thread thread;
+
+        private Worker(C context) {
+            this.context = context;
+        }
+
+        @Override
+        public void run() {
+            AtomicBoolean running = WorkStealingExecutor.this.running;
+
+            while (running.get()) {
+                T task = this.getNextTask();
+
+                if (task == null) {
+                    this.park();
+
+                    continue;
+                }
+
+                WorkStealingExecutor.this.queuedTasks.decrementAndGet();
+
+                task.run(this.context);
+            }
+        }
+
+        private T getNextTask() {
+            T task = this.localQueue.pollFirst();
+
+            if (task == null) {
+                task = this.takeFromSharedQueue();
+            }
+
+            if (task == null) {
+                task = this.steal();
+            }
+
+            return task;
+        }
+
+        private T takeFromSharedQueue() {
+            ConcurrentSkipListSet<Node<T>> queue = WorkStealingExecutor.this.sharedQueue;
+
+            Node<T> node = queue.pollFirst();
+
+            if (node == null) {
+                return null;
+            }
+
+            // Important tasks should never wait in a worker's local queue behind other tasks
+            if (!node.task.isImportant()) {
+                // Only take extra work when there is more than enough to go around, as tasks held locally will not
+                // be re-prioritized. The size of the set is not constant-time, so the count of queued tasks is used
+                // instead, which also includes the tasks held by other workers.
+                int batch = Math.min(MAX_LOCAL_BATCH_SIZE, WorkStealingExecutor.this.queuedTasks.get() / WorkStealingExecutor.this.threadCount);
+
+                for (int i = 0; i < batch; i++) {
+                    Node<T> next = queue.pollFirst();
+
+                    if (next == null) {
+                        break;
+                    }
+
+                    this.localQueue.addLast(next.task);
+                }
+            }
+
+            return node.task;
+        }
+
+        private T steal() {
+            List<Worker> workers = WorkStealingExecutor.this.workers;
+
+            int count = workers.size();
+            int start = ThreadLocalRandom.current().nextInt(count);
+
+            for (int i = 0; i < count; i++) {
+                Worker victim = workers.get((start + i) % count);
+
+                if (victim == this) {
+                    continue;
+                }
+
+                T task = victim.localQueue.pollLast();
+
+                if (task != null) {
+                    return task;
+                }
+            }
+
+            return null;
+        }
+
+        private void park() {
+            WorkStealingExecutor.this.idleWorkers.add(this);
+
+            // Check for work again after we've published ourselves as idle, as otherwise a task which was submitted
+            // in-between could never wake us up
+            if (WorkStealingExecutor.this.queuedTasks.get() <= 0 && WorkStealingExecutor.this.running.get()) {
+                LockSupport.park(this);
+            }
+
+            WorkStealingExecutor.this.idleWorkers.remove(this);
+        }
+    }
+
+    /**
+     * Tasks which compare as equal would be treated as duplicates by the shared queue, so ties are broken by the order
+     * they were submitted in.
+     */
+    private static class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
+        private final T task;
+        private final long sequence;
+
+        private Node(T task, long sequence) {
+            this.task = task;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Node<T> o) {
+            int result = this.task.compareTo(o.task);
+
+            if (result != 0) {
+                return result;
+            }
+
+            return Long.compare(this.sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package me.jellysquid.mods.sodium.client.util.staging;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayFIFOQueue;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Manages a ring of staging memory which data is written into by any thread before being copied elsewhere by the GPU.
+ * Ranges are handed out in order from the head of the ring and wrap around to the start when they no longer fit at the
+ * end. A range can only be re-used once every range before it has been retired, which happens either immediately when
+ * it is discarded, or once the GPU has signalled a fence inserted after the commands that read from it.
+ *
+ * This knows nothing about the memory or fences themselves, which are provided through {@link FenceSource}, so it can
+ * be driven without a GL context.
+ */
+public class StagingRing {
+    private final ByteBuffer memory;
+    private final int capacity;
+    private final FenceSource fences;
+
+    // Every range which has not been retired yet, in the order they were reserved
+    private final ObjectArrayFIFOQueue<Range> ranges = new ObjectArrayFIFOQueue<>();
+
+    // Ranges which have been released this frame and will be covered by the next fence
+    private final ObjectArrayList<Range> released = new ObjectArrayList<>();
+
+    // Fences which have not been signalled yet, in the order they were inserted
+    private final ObjectArrayFIFOQueue<PendingFence> pendingFences = new ObjectArrayFIFOQueue<>();
+
+    private int head;
+
+    private int reservedBytes;
+    private int failedReservations;
+
+    public StagingRing(ByteBuffer memory, FenceSource fences) {
+        this.memory = memory;
+        this.capacity = memory.capacity();
+        this.fences = fences;
+    }
+
+    /**
+     * Reserves a range of the ring and copies {@param data} into it. This can be called from any thread.
+     *
+     * @return The range which holds the data, or null if there is currently not enough free space in the ring
+     */
+    public Range write(ByteBuffer data) {
+        Range range = this.reserve(data.remaining());
+
+        if (range == null) {
+            return null;
+        }
+
+        // The range belongs only to the caller until it is handed off, so it can be written without holding the lock
+        ByteBuffer dst = this.memory.duplicate();
+        dst.position(range.offset);
+        dst.put(data.duplicate());
+
+        return range;
+    }
+
+    /**
+     * @return The reserved range, or null if there is currently not enough free space in the ring
+     */
+    public synchronized Range reserve(int size) {
+        if (size <= 0 || size > this.capacity) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+
+        int offset = this.findSpace(size);
+
+        if (offset < 0) {
+            this.failedReservations++;
+
+            return null;
+        }
+
+        Range range = new Range(offset, size);
+
+        this.ranges.enqueue(range);
+        this.head = offset + size;
+        this.reservedBytes += size;
+
+        return range;
+    }
+
+    private int findSpace(int size) {
+        if (this.ranges.isEmpty()) {
+            return 0;
+        }
+
+        int tail = this.ranges.first().offset;
+
+        if (this.head > tail) {
+            // The free space is split between the end and the start of the ring
+            if (this.capacity - this.head >= size) {
+                return this.head;
+            }
+
+            // The end of the ring is skipped, and will be available again once the ranges after the tail are retired
+            if (size <= tail) {
+                return 0;
+            }
+        } else if (tail - this.head >= size) {
+            // The head has wrapped around and is chasing the tail
+            return this.head;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Marks a range as having been read by commands which have been submitted to the GPU. It will be retired once the
+     * fence inserted by the next call to {@link #endFrame()} has been signalled.
+     */
+    public synchronized void release(Range range) {
+        range.checkLive();
+        range.released = true;
+
+        this.released.add(range);
+    }
+
+    /**
+     * Retires a range which was never read by the GPU, allowing it to be re-used right away. This can be called from
+     * any thread.
+     */
+    public synchronized void discard(Range range) {
+        range.checkLive();
+
+        this.retire(range);
+        this.trim();
+    }
+
+    /**
+     * Inserts a fence for the ranges released this frame, and retires the ranges of every fence which has since been
+     * signalled. This must be called on the thread which owns the fences.
+     */
+    public synchronized void endFrame() {
+        if (!this.released.isEmpty()) {
+            this.pendingFences.enqueue(new PendingFence(this.fences.createFence(), this.released.toArray(new Range[0])));
+            this.released.clear();
+        }
+
+        while (!this.pendingFences.isEmpty() && this.fences.isSignaled(this.pendingFences.first().fence)) {
+            PendingFence pending = this.pendingFences.dequeue();
+
+            for (Range range : pending.ranges) {
+                this.retire(range);
+            }
+
+            this.fences.deleteFence(pending.fence);
+        }
+
+        this.trim();
+    }
+
+    private void retire(Range range) {
+        range.retired = true;
+
+        this.reservedBytes -= range.size;
+    }
+
+    /**
+     * Advances the tail of the ring past every range at the front which has been retired.
+     */
+    private void trim() {
+        while (!this.ranges.isEmpty() && this.ranges.first().retired) {
+            this.ranges.dequeue();
+        }
+
+        if (this.ranges.isEmpty()) {
+            this.head = 0;
+        }
+    }
+
+    /**
+     * Deletes every fence without waiting for it. The caller must ensure that the GPU is no longer reading from the
+     * memory, such as by deleting it.
+     */
+    public synchronized void delete() {
+        while (!this.pendingFences.isEmpty()) {
+            this.fences.deleteFence(this.pendingFences.dequeue().fence);
+        }
+
+        this.ranges.clear();
+        this.released.clear();
+
+        this.head = 0;
+        this.reservedBytes = 0;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public synchronized int getReservedBytes() {
+        return this.reservedBytes;
+    }
+
+    public synchronized int getPendingFenceCount() {
+        return this.pendingFences.size();
+    }
+
+    /**
+     * @return The number of reservations which could not be satisfied as the ring was full
+     */
+    public synchronized int getFailedReservations() {
+        return this.failedReservations;
+    }
+
+    public interface FenceSource {
+        long createFence();
+
+        /**
+         * @return True if every command submitted before the fence was created has completed, without blocking
+         */
+        boolean isSignaled(long fence);
+
+        void deleteFence(long fence);
+    }
+
+    public static class Range {
+        private final int offset;
+        private final int size;
+
+        private boolean released, retired;
+
+        private Range(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public int getOffset() {
+            return this.offset;
+        }
+
+        public int getSize() {
+            return this.size;
+        }
+
+        private void checkLive() {
+            if (this.released || this.retired) {
+                throw new IllegalStateException("Range has already been released");
+            }
+        }
+    }
+
+    private static class PendingFence {
+        private final long fence;
+        private final Range[] ranges;
+
+        private PendingFence(long fence, Range[] ranges) {
+            this.fence = fence;
+            this.ranges = ranges;
+        }
+    }
+}
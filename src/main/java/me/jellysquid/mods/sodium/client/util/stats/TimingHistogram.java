@@ -0,0 +1,75 @@
+package me.jellysquid.mods.sodium.client.util.stats;
+
+import java.util.Arrays;
+
+/**
+ * Counts timing samples into a fixed set of buckets. Unlike {@link TimingStatistic}, samples are kept until the
+ * histogram is reset, which makes it possible to see how often rare long stalls occur. This is not thread-safe and
+ * should only be used from the owning thread.
+ */
+public class TimingHistogram {
+    private final long[] bucketLimits;
+    private final long[] counts;
+
+    private long total;
+
+    /**
+     * @param bucketLimits The upper limit (exclusive) of each bucket in microseconds, in ascending order. An additional
+     *                     bucket is created for every sample which is larger than the last limit.
+     */
+    public TimingHistogram(long... bucketLimits) {
+        this.bucketLimits = bucketLimits;
+        this.counts = new long[bucketLimits.length + 1];
+    }
+
+    public void record(long nanos) {
+        long micros = nanos / 1000L;
+
+        int bucket = 0;
+
+        while (bucket < this.bucketLimits.length && micros >= this.bucketLimits[bucket]) {
+            bucket++;
+        }
+
+        this.counts[bucket]++;
+        this.total++;
+    }
+
+    public void reset() {
+        Arrays.fill(this.counts, 0L);
+
+        this.total = 0L;
+    }
+
+    public long getTotal() {
+        return this.total;
+    }
+
+    public String format() {
+        StringBuilder str = new StringBuilder();
+
+        for (int i = 0; i < this.counts.length; i++) {
+            if (i > 0) {
+                str.append(' ');
+            }
+
+            if (i < this.bucketLimits.length) {
+                str.append('<').append(formatMicros(this.bucketLimits[i]));
+            } else {
+                str.append(">=").append(formatMicros(this.bucketLimits[this.bucketLimits.length - 1]));
+            }
+
+            str.append(':').append(this.counts[i]);
+        }
+
+        return str.toString();
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros >= 1000L && micros % 1000L == 0L) {
+            return (micros / 1000L) + "ms";
+        }
+
+        return micros + "us";
+    }
+}
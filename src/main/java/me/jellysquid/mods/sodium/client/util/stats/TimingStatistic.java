@@ -0,0 +1,89 @@
+package me.jellysquid.mods.sodium.client.util.stats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Accumulates timing samples which may be recorded from any thread. Samples are collected over a fixed window which is
+ * rolled over by the owner using {@link TimingStatistic#update(long)}, after which the results of the last complete
+ * window can be queried.
+ */
+public class TimingStatistic {
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicInteger count = new AtomicInteger();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    private long windowStart = Long.MIN_VALUE;
+
+    private double lastAverage;
+    private double lastMax;
+    private int lastCount;
+
+    public void record(long nanos) {
+        this.total.addAndGet(nanos);
+        this.count.incrementAndGet();
+        this.max.accumulate(nanos);
+    }
+
+    /**
+     * Rolls over the current window if it has expired. This should only be called from the owning thread.
+     */
+    public void update(long now) {
+        if (this.windowStart == Long.MIN_VALUE) {
+            this.windowStart = now;
+        }
+
+        if (now - this.windowStart < WINDOW_NANOS) {
+            return;
+        }
+
+        int count = this.count.getAndSet(0);
+        long total = this.total.getAndSet(0L);
+
+        this.lastCount = count;
+        this.lastAverage = count > 0 ? (total / (double) count) / 1_000_000.0D : 0.0D;
+        this.lastMax = this.max.getThenReset() / 1_000_000.0D;
+
+        this.windowStart = now;
+    }
+
+    public void reset() {
+        this.total.set(0L);
+        this.count.set(0);
+        this.max.reset();
+
+        this.windowStart = Long.MIN_VALUE;
+
+        this.lastAverage = 0.0D;
+        this.lastMax = 0.0D;
+        this.lastCount = 0;
+    }
+
+    /**
+     * @return The average sample in milliseconds over the last complete window
+     */
+    public double getAverageMillis() {
+        return this.lastAverage;
+    }
+
+    /**
+     * @return The largest sample in milliseconds over the last complete window
+     */
+    public double getMaxMillis() {
+        return this.lastMax;
+    }
+
+    /**
+     * @return The number of samples recorded over the last complete window
+     */
+    public int getCount() {
+        return this.lastCount;
+    }
+
+    public String format() {
+        return String.format("%.2fms avg, %.2fms max, %d/s", this.lastAverage, this.lastMax, this.lastCount);
+    }
+}
@@ -0,0 +1,10 @@
+package me.jellysquid.mods.sodium.client.world;
+
+public interface ChunkSectionExtended {
+    /**
+     * Returns the modification counter of this section. The counter is incremented once before and once after every
+     * modification of the section's block data, meaning that an odd value indicates a write is in progress. Readers on
+     * other threads can compare the counter before and after copying data to detect if they observed a torn write.
+     */
+    int getModificationCount();
+}
@@ -5,6 +5,8 @@ import me.jellysquid.mods.sodium.client.render.chunk.compile.ChunkBuilder;
 import me.jellysquid.mods.sodium.client.world.biome.BiomeCache;
 import me.jellysquid.mods.sodium.client.world.biome.BiomeCacheManager;
 import me.jellysquid.mods.sodium.client.world.biome.ColorizerCache;
+import me.jellysquid.mods.sodium.client.world.cache.ChunkSectionSnapshot;
+import me.jellysquid.mods.sodium.client.world.cache.ChunkSectionSnapshotCache;
 import me.jellysquid.mods.sodium.common.util.arena.ReusableObject;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
@@ -39,11 +41,15 @@ public class WorldSlice extends ReusableObject implements BlockRenderView, Biome
     public static final int SECTION_COUNT = SECTION_LENGTH * SECTION_LENGTH * SECTION_LENGTH;
     public static final int CHUNK_COUNT = SECTION_LENGTH * SECTION_LENGTH;
 
-    private static final ChunkSection EMPTY_SECTION = new ChunkSection(0);
-
     private final BlockState[] blockStates;
+    private final ChunkSection[] sections;
+    private final ChunkSectionSnapshot[] snapshots;
     private final ChunkNibbleArray[] blockLightArrays;
     private final ChunkNibbleArray[] skyLightArrays;
+
+    // The snapshot cache's invalidation stamp for each section at the time its light arrays were captured
+    private final int[] snapshotStamps;
+
     private final BiomeCache[] biomeCaches;
     private final BiomeArray[] biomeArrays;
 
@@ -53,6 +59,7 @@ public class WorldSlice extends ReusableObject implements BlockRenderView, Biome
     private WorldChunk[] chunks;
 
     private BiomeCacheManager biomeCacheManager;
+    private ChunkSectionSnapshotCache snapshotCache;
 
     private int chunkOffsetX;
     private int chunkOffsetY;
@@ -89,12 +96,20 @@ public class WorldSlice extends ReusableObject implements BlockRenderView, Biome
 
     public WorldSlice() {
         this.blockStates = new BlockState[BLOCK_COUNT];
+        this.sections = new ChunkSection[SECTION_COUNT];
+        this.snapshots = new ChunkSectionSnapshot[SECTION_COUNT];
         this.blockLightArrays = new ChunkNibbleArray[SECTION_COUNT];
         this.skyLightArrays = new ChunkNibbleArray[SECTION_COUNT];
+        this.snapshotStamps = new int[SECTION_COUNT];
         this.biomeCaches = new BiomeCache[CHUNK_COUNT];
         this.biomeArrays = new BiomeArray[CHUNK_COUNT];
     }
 
+    /**
+     * Prepares this slice for the given section. This must be called on the main thread and only captures references to
+     * the data needed for rendering, leaving the (much more expensive) copying of block states to
+     * {@link WorldSlice#copyBlockStates()}, which can be called from any thread afterwards.
+     */
     public void init(ChunkBuilder builder, World world, ChunkSectionPos chunkPos, WorldChunk[] chunks) {
         final int minX = chunkPos.getMinX() - BLOCK_RADIUS;
         final int minY = chunkPos.getMinY() - BLOCK_RADIUS;
@@ -123,6 +138,8 @@ public class WorldSlice extends ReusableObject implements BlockRenderView, Biome
         this.chunkOffsetY = chunkPos.getY() - CHUNK_RADIUS;
         this.chunkOffsetZ = chunkPos.getZ() - CHUNK_RADIUS;
 
+        this.snapshotCache = builder.getSectionSnapshotCache();
+
         ChunkLightingView blockLightProvider = this.world.getLightingProvider().get(LightType.BLOCK);
         ChunkLightingView skyLightProvider = this.world.getLightingProvider().get(LightType.SKY);
 
@@ -136,47 +153,82 @@ public class WorldSlice extends ReusableObject implements BlockRenderView, Biome
 
                 this.biomeArrays[chunkIdx] = chunk.getBiomeArray();
 
-                int aX = Math.max(minX, chunkX << 4);
-                int bX = Math.min(maxX, (chunkX + 1) << 4);
-
-                int aZ = Math.max(minZ, chunkZ << 4);
-                int bZ = Math.min(maxZ, (chunkZ + 1) << 4);
-
                 for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
                     int chunkYLocal = chunkY - this.chunkOffsetY;
 
                     ChunkSectionPos sectionPos = ChunkSectionPos.from(chunkX, chunkY, chunkZ);
                     int sectionIdx = getSectionIndex(chunkXLocal, chunkYLocal, chunkZLocal);
 
+                    this.snapshotStamps[sectionIdx] = this.snapshotCache.getStamp(chunkX, chunkY, chunkZ);
                     this.blockLightArrays[sectionIdx] = blockLightProvider.getLightArray(sectionPos);
                     this.skyLightArrays[sectionIdx] = skyLightProvider.getLightArray(sectionPos);
 
-                    ChunkSection section = EMPTY_SECTION;
+                    ChunkSection section = null;
 
                     if (chunkY >= 0 && chunkY < 16) {
                         section = chunk.getSectionArray()[chunkY];
-
-                        if (section == null) {
-                            section = EMPTY_SECTION;
-                        }
                     }
 
+                    this.sections[sectionIdx] = section;
+                }
+            }
+        }
+
+        this.biomeCacheManager = builder.getBiomeCacheManager();
+        this.biomeCacheManager.populateArrays(chunkPos.getX(), chunkPos.getY(), chunkPos.getZ(), this.biomeCaches);
+    }
+
+    /**
+     * Copies the block states of every section captured by {@link WorldSlice#init(ChunkBuilder, World, ChunkSectionPos, WorldChunk[])}
+     * into this slice, using the shared snapshot cache where possible. This is intended to be called from a worker
+     * thread before the slice is first accessed.
+     */
+    public void copyBlockStates() {
+        final int minX = this.blockOffsetX;
+        final int minY = this.blockOffsetY;
+        final int minZ = this.blockOffsetZ;
+
+        final int maxX = minX + BLOCK_LENGTH;
+        final int maxY = minY + BLOCK_LENGTH;
+        final int maxZ = minZ + BLOCK_LENGTH;
+
+        for (int chunkXLocal = 0; chunkXLocal < SECTION_LENGTH; chunkXLocal++) {
+            for (int chunkYLocal = 0; chunkYLocal < SECTION_LENGTH; chunkYLocal++) {
+                for (int chunkZLocal = 0; chunkZLocal < SECTION_LENGTH; chunkZLocal++) {
+                    int chunkX = chunkXLocal + this.chunkOffsetX;
+                    int chunkY = chunkYLocal + this.chunkOffsetY;
+                    int chunkZ = chunkZLocal + this.chunkOffsetZ;
+
+                    int aX = Math.max(minX, chunkX << 4);
+                    int bX = Math.min(maxX, (chunkX + 1) << 4);
+
                     int aY = Math.max(minY, chunkY << 4);
                     int bY = Math.min(maxY, (chunkY + 1) << 4);
 
-                    for (int y = aY; y < bY; y++) {
-                        for (int z = aZ; z < bZ; z++) {
-                            for (int x = aX; x < bX; x++) {
-                                this.blockStates[this.getBlockIndex(x, y, z)] = section.getBlockState(x & 15, y & 15, z & 15);
-                            }
-                        }
-                    }
+                    int aZ = Math.max(minZ, chunkZ << 4);
+                    int bZ = Math.min(maxZ, (chunkZ + 1) << 4);
+
+                    int sectionIdx = getSectionIndex(chunkXLocal, chunkYLocal, chunkZLocal);
+
+                    ChunkSectionSnapshot snapshot = this.snapshotCache.getOrCreate(chunkX, chunkY, chunkZ, this.snapshotStamps[sectionIdx],
+                            this.sections[sectionIdx], this.blockLightArrays[sectionIdx], this.skyLightArrays[sectionIdx]);
+
+                    this.snapshots[sectionIdx] = snapshot;
+
+                    this.copySectionBlockStates(snapshot, aX, aY, aZ, bX, bY, bZ);
                 }
             }
         }
+    }
 
-        this.biomeCacheManager = builder.getBiomeCacheManager();
-        this.biomeCacheManager.populateArrays(chunkPos.getX(), chunkPos.getY(), chunkPos.getZ(), this.biomeCaches);
+    private void copySectionBlockStates(ChunkSectionSnapshot snapshot, int aX, int aY, int aZ, int bX, int bY, int bZ) {
+        for (int y = aY; y < bY; y++) {
+            for (int z = aZ; z < bZ; z++) {
+                for (int x = aX; x < bX; x++) {
+                    this.blockStates[this.getBlockIndex(x, y, z)] = snapshot.getBlockState(x & 15, y & 15, z & 15);
+                }
+            }
+        }
     }
 
     private ColorizerCache getColorizerCache(ColorResolver resolver) {
@@ -229,28 +281,13 @@ public class WorldSlice extends ReusableObject implements BlockRenderView, Biome
 
     @Override
     public int getLightLevel(LightType type, BlockPos pos) {
-        switch (type) {
-            case SKY:
-                return this.getLightLevel(this.skyLightArrays, pos);
-            case BLOCK:
-                return this.getLightLevel(this.blockLightArrays, pos);
-            default:
-                return 0;
-        }
-    }
-
-    private int getLightLevel(ChunkNibbleArray[] arrays, BlockPos pos) {
         int x = pos.getX();
         int y = pos.getY();
         int z = pos.getZ();
 
-        ChunkNibbleArray array = arrays[this.getSectionIndexForBlock(x, y, z)];
-
-        if (array != null) {
-            return array.get(x & 15, y & 15, z & 15);
-        }
+        ChunkSectionSnapshot snapshot = this.snapshots[this.getSectionIndexForBlock(x, y, z)];
 
-        return 0;
+        return snapshot.getLightLevel(type, x & 15, y & 15, z & 15);
     }
 
     // FIX: Do not access state on the main thread
@@ -323,8 +360,11 @@ public class WorldSlice extends ReusableObject implements BlockRenderView, Biome
         Arrays.fill(this.biomeArrays, null);
         Arrays.fill(this.blockLightArrays, null);
         Arrays.fill(this.skyLightArrays, null);
+        Arrays.fill(this.sections, null);
+        Arrays.fill(this.snapshots, null);
 
         this.biomeCacheManager = null;
+        this.snapshotCache = null;
         this.chunks = null;
         this.world = null;
 
@@ -0,0 +1,198 @@
+package me.jellysquid.mods.sodium.client.world.cache;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import me.jellysquid.mods.sodium.client.world.ChunkSectionExtended;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.world.LightType;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.ChunkSection;
+
+/**
+ * An immutable, flattened copy of a chunk section's block states and light data. Block states are stored as indices
+ * into a small palette, and light data is stored as copies of the section's nibble arrays.
+ */
+public class ChunkSectionSnapshot {
+    /**
+     * The number of times we will try to take a consistent copy of a section which is being modified concurrently
+     * before giving up and accepting whatever data was observed.
+     */
+    private static final int MAX_COPY_ATTEMPTS = 8;
+
+    private static final BlockState[] EMPTY_PALETTE = new BlockState[] { Blocks.AIR.getDefaultState() };
+
+    private final ChunkSection section;
+    private final int modCount;
+
+    private final BlockState[] palette;
+    private final short[] indices;
+
+    private final byte[] blockLight;
+    private final byte[] skyLight;
+
+    private ChunkSectionSnapshot(ChunkSection section, int modCount, BlockState[] palette, short[] indices, byte[] blockLight, byte[] skyLight) {
+        this.section = section;
+        this.modCount = modCount;
+        this.palette = palette;
+        this.indices = indices;
+        this.blockLight = blockLight;
+        this.skyLight = skyLight;
+    }
+
+    /**
+     * Creates a snapshot of the given section. If the section is null, the snapshot will only contain air.
+     */
+    public static ChunkSectionSnapshot create(ChunkSection section, ChunkNibbleArray blockLight, ChunkNibbleArray skyLight) {
+        byte[] blockLightData = copyNibbles(blockLight);
+        byte[] skyLightData = copyNibbles(skyLight);
+
+        if (section == null || section.isEmpty()) {
+            return new ChunkSectionSnapshot(section, getModificationCount(section), EMPTY_PALETTE, null, blockLightData, skyLightData);
+        }
+
+        ChunkSectionExtended ext = (ChunkSectionExtended) section;
+
+        // The main thread may modify the section while we're reading it, so we retry the copy until we observe the
+        // same (even) modification count before and after it. A modification which races with us will always schedule
+        // another rebuild of this section and invalidate the snapshot, so accepting a torn copy after a number of
+        // attempts is harmless.
+        for (int attempt = 1; ; attempt++) {
+            int modCount = ext.getModificationCount();
+
+            ChunkSectionSnapshot snapshot;
+
+            try {
+                snapshot = copyBlocks(section, modCount, blockLightData, skyLightData);
+            } catch (RuntimeException e) {
+                // Reading the palette and data array while they are being resized can fail
+                snapshot = null;
+            }
+
+            if (snapshot != null && (modCount & 1) == 0 && ext.getModificationCount() == modCount) {
+                return snapshot;
+            }
+
+            if (attempt >= MAX_COPY_ATTEMPTS) {
+                if (snapshot == null) {
+                    snapshot = new ChunkSectionSnapshot(section, modCount, EMPTY_PALETTE, null, blockLightData, skyLightData);
+                }
+
+                return snapshot;
+            }
+
+            Thread.yield();
+        }
+    }
+
+    private static ChunkSectionSnapshot copyBlocks(ChunkSection section, int modCount, byte[] blockLight, byte[] skyLight) {
+        Reference2IntOpenHashMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+        paletteIds.defaultReturnValue(-1);
+
+        BlockState[] palette = new BlockState[16];
+        short[] indices = new short[16 * 16 * 16];
+
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    BlockState state = section.getBlockState(x, y, z);
+
+                    if (state == null) {
+                        state = Blocks.AIR.getDefaultState();
+                    }
+
+                    int id = paletteIds.getInt(state);
+
+                    if (id == -1) {
+                        id = paletteIds.size();
+                        paletteIds.put(state, id);
+
+                        if (id >= palette.length) {
+                            BlockState[] grown = new BlockState[palette.length * 2];
+                            System.arraycopy(palette, 0, grown, 0, palette.length);
+
+                            palette = grown;
+                        }
+
+                        palette[id] = state;
+                    }
+
+                    indices[getIndex(x, y, z)] = (short) id;
+                }
+            }
+        }
+
+        return new ChunkSectionSnapshot(section, modCount, palette, indices, blockLight, skyLight);
+    }
+
+    private static byte[] copyNibbles(ChunkNibbleArray array) {
+        if (array == null || array.isUninitialized()) {
+            return null;
+        }
+
+        return array.asByteArray().clone();
+    }
+
+    private static int getModificationCount(ChunkSection section) {
+        return section != null ? ((ChunkSectionExtended) section).getModificationCount() : 0;
+    }
+
+    private static int getIndex(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    /**
+     * @return True if this snapshot was taken from the given section and the section has not been modified since
+     */
+    public boolean isValidFor(ChunkSection section) {
+        return this.section == section && this.modCount == getModificationCount(section);
+    }
+
+    /**
+     * Returns the block state at the given section-local coordinates.
+     */
+    public BlockState getBlockState(int x, int y, int z) {
+        if (this.indices == null) {
+            return this.palette[0];
+        }
+
+        return this.palette[this.indices[getIndex(x, y, z)]];
+    }
+
+    /**
+     * Returns the light level of the given type at the given section-local coordinates.
+     */
+    public int getLightLevel(LightType type, int x, int y, int z) {
+        byte[] data = type == LightType.SKY ? this.skyLight : this.blockLight;
+
+        if (data == null) {
+            return 0;
+        }
+
+        // [VanillaCopy] ChunkNibbleArray#get(int, int, int)
+        int idx = getIndex(x, y, z);
+        int shift = (idx & 1) << 2;
+
+        return (data[idx >> 1] >> shift) & 15;
+    }
+
+    /**
+     * @return The approximate number of bytes of heap memory used by this snapshot
+     */
+    public int getSize() {
+        int size = this.palette.length * 8;
+
+        if (this.indices != null) {
+            size += this.indices.length * 2;
+        }
+
+        if (this.blockLight != null) {
+            size += this.blockLight.length;
+        }
+
+        if (this.skyLight != null) {
+            size += this.skyLight.length;
+        }
+
+        return size;
+    }
+}
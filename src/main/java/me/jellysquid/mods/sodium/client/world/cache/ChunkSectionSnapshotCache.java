@@ -0,0 +1,111 @@
+package me.jellysquid.mods.sodium.client.world.cache;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.ChunkSection;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A cache of flattened section snapshots which is shared between all worker threads. When many neighbouring sections
+ * are rebuilt at once (such as when chunks are being loaded), each section only needs to be read from the world once
+ * instead of once for every slice it is a part of.
+ *
+ * Entries are validated against the modification counter of their section when they are retrieved, and are explicitly
+ * invalidated when a section's light or blocks are changed, or when its chunk is loaded or unloaded.
+ */
+public class ChunkSectionSnapshotCache {
+    private static final int CACHE_SIZE = 2048;
+
+    private static final int STAMP_COUNT = 4096;
+    private static final int STAMP_MASK = STAMP_COUNT - 1;
+
+    private final Long2ObjectLinkedOpenHashMap<ChunkSectionSnapshot> snapshots = new Long2ObjectLinkedOpenHashMap<>(CACHE_SIZE, 0.5f);
+
+    /**
+     * Invalidation stamps for buckets of section positions. A snapshot which was being created while its position was
+     * invalidated may contain stale data, and will not be inserted into the cache.
+     */
+    private final AtomicIntegerArray stamps = new AtomicIntegerArray(STAMP_COUNT);
+
+    private long hits, misses;
+
+    /**
+     * Returns the invalidation stamp of a section position. This must be read on the main thread at the same time as the
+     * references to the section's data are captured, so that any invalidation which happens afterwards is detected.
+     */
+    public int getStamp(int x, int y, int z) {
+        return this.stamps.get(getStampIndex(ChunkSectionPos.asLong(x, y, z)));
+    }
+
+    /**
+     * @param stamp The stamp returned by {@link #getStamp(int, int, int)} when the section's data was captured
+     */
+    public ChunkSectionSnapshot getOrCreate(int x, int y, int z, int stamp, ChunkSection section, ChunkNibbleArray blockLight, ChunkNibbleArray skyLight) {
+        long key = ChunkSectionPos.asLong(x, y, z);
+
+        synchronized (this) {
+            ChunkSectionSnapshot snapshot = this.snapshots.getAndMoveToFirst(key);
+
+            if (snapshot != null && snapshot.isValidFor(section)) {
+                this.hits++;
+
+                return snapshot;
+            }
+
+            this.misses++;
+        }
+
+        int stampIdx = getStampIndex(key);
+
+        ChunkSectionSnapshot snapshot = ChunkSectionSnapshot.create(section, blockLight, skyLight);
+
+        synchronized (this) {
+            if (this.stamps.get(stampIdx) == stamp) {
+                if (this.snapshots.size() >= CACHE_SIZE) {
+                    this.snapshots.removeLast();
+                }
+
+                this.snapshots.putAndMoveToFirst(key, snapshot);
+            }
+        }
+
+        return snapshot;
+    }
+
+    public void invalidate(int x, int y, int z) {
+        long key = ChunkSectionPos.asLong(x, y, z);
+
+        synchronized (this) {
+            this.stamps.incrementAndGet(getStampIndex(key));
+            this.snapshots.remove(key);
+        }
+    }
+
+    public void invalidateColumn(int x, int z) {
+        // Light data is tracked for one section above and below the world
+        for (int y = -1; y <= 16; y++) {
+            this.invalidate(x, y, z);
+        }
+    }
+
+    public synchronized void reset() {
+        this.snapshots.clear();
+
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    public synchronized String getDebugString() {
+        long total = this.hits + this.misses;
+
+        return String.format("Section snapshots: %d cached, %.1f%% hit rate", this.snapshots.size(),
+                total > 0 ? (this.hits * 100.0D) / total : 0.0D);
+    }
+
+    private static int getStampIndex(long key) {
+        return (int) HashCommon.mix(key) & STAMP_MASK;
+    }
+}
@@ -0,0 +1,41 @@
+package me.jellysquid.mods.sodium.mixin.chunk_rendering;
+
+import me.jellysquid.mods.sodium.client.world.ChunkSectionExtended;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.PacketByteBuf;
+import net.minecraft.world.chunk.ChunkSection;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ChunkSection.class)
+public class MixinChunkSection implements ChunkSectionExtended {
+    private volatile int modCount;
+
+    @Inject(method = "setBlockState(IIILnet/minecraft/block/BlockState;Z)Lnet/minecraft/block/BlockState;", at = @At("HEAD"))
+    private void beforeSetBlockState(int x, int y, int z, BlockState state, boolean lock, CallbackInfoReturnable<BlockState> cir) {
+        this.modCount++;
+    }
+
+    @Inject(method = "setBlockState(IIILnet/minecraft/block/BlockState;Z)Lnet/minecraft/block/BlockState;", at = @At("RETURN"))
+    private void afterSetBlockState(int x, int y, int z, BlockState state, boolean lock, CallbackInfoReturnable<BlockState> cir) {
+        this.modCount++;
+    }
+
+    @Inject(method = "fromPacket", at = @At("HEAD"))
+    private void beforeReadPacket(PacketByteBuf buf, CallbackInfo ci) {
+        this.modCount++;
+    }
+
+    @Inject(method = "fromPacket", at = @At("RETURN"))
+    private void afterReadPacket(PacketByteBuf buf, CallbackInfo ci) {
+        this.modCount++;
+    }
+
+    @Override
+    public int getModificationCount() {
+        return this.modCount;
+    }
+}
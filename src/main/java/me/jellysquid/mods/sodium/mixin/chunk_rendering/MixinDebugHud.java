@@ -0,0 +1,20 @@
+package me.jellysquid.mods.sodium.mixin.chunk_rendering;
+
+import me.jellysquid.mods.sodium.client.render.chunk.ChunkRenderManager;
+import net.minecraft.client.gui.hud.DebugHud;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.List;
+
+@Mixin(DebugHud.class)
+public class MixinDebugHud {
+    @Inject(method = "getLeftText", at = @At("RETURN"))
+    private void addChunkRendererDebugText(CallbackInfoReturnable<List<String>> cir) {
+        List<String> strings = cir.getReturnValue();
+        strings.add("");
+        strings.addAll(ChunkRenderManager.getInstance().getDebugStrings());
+    }
+}
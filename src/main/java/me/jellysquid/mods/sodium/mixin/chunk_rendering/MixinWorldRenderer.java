@@ -2,12 +2,15 @@ package me.jellysquid.mods.sodium.mixin.chunk_rendering;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import me.jellysquid.mods.sodium.client.render.chunk.ChunkRenderManager;
+import net.minecraft.block.BlockState;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.options.GameOptions;
 import net.minecraft.client.render.*;
 import net.minecraft.client.util.math.Matrix4f;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.BlockView;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Overwrite;
@@ -96,6 +99,15 @@ public abstract class MixinWorldRenderer {
         this.chunkManager.reload();
     }
 
+    /**
+     * @reason Only remesh the slices of blocks surrounding the updated block
+     * @author JellySquid
+     */
+    @Overwrite
+    public void updateBlock(BlockView world, BlockPos pos, BlockState oldState, BlockState newState, int flags) {
+        this.scheduleBlockRenders(pos.getX() - 1, pos.getY() - 1, pos.getZ() - 1, pos.getX() + 1, pos.getY() + 1, pos.getZ() + 1);
+    }
+
     /**
      * @reason Avoid updating the same chunk multiple times
      * @author JellySquid
@@ -110,10 +122,16 @@ public abstract class MixinWorldRenderer {
         int maxChunkY = maxY >> 4;
         int maxChunkZ = maxZ >> 4;
 
-        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
-            for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+        for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+            // Only the slices of each section which are within the range need to be remeshed
+            int minSliceY = Math.max(minY, chunkY << 4) & 15;
+            int maxSliceY = Math.min(maxY, (chunkY << 4) + 15) & 15;
+
+            int slices = ((1 << (maxSliceY + 1)) - 1) & ~((1 << minSliceY) - 1);
+
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
                 for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
-                    this.scheduleChunkRender(chunkX, chunkY, chunkZ, false);
+                    this.chunkManager.scheduleRebuildForSlices(chunkX, chunkY, chunkZ, slices);
                 }
             }
         }
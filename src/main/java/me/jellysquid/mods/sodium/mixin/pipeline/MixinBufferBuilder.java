@@ -1,6 +1,8 @@
 package me.jellysquid.mods.sodium.mixin.pipeline;
 
 import com.google.common.collect.ImmutableList;
+import me.jellysquid.mods.sodium.client.render.chunk.format.ChunkVertexFormats;
+import me.jellysquid.mods.sodium.client.render.chunk.format.CompactVertexEncoder;
 import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuadConsumer;
 import me.jellysquid.mods.sodium.client.render.model.quad.ModelQuadView;
 import me.jellysquid.mods.sodium.client.util.BufferUtil;
@@ -68,6 +70,19 @@ public abstract class MixinBufferBuilder extends FixedColorVertexConsumer implem
     public void write(ModelQuadView quad) {
         int[] data = quad.getVertexData();
 
+        if (ChunkVertexFormats.isCompact(this.format)) {
+            int bytes = CompactVertexEncoder.VERTEX_SIZE * 4;
+
+            this.grow(bytes);
+
+            CompactVertexEncoder.writeQuad(data, this.buffer, this.elementOffset);
+
+            this.vertexCount += 4;
+            this.elementOffset += bytes;
+
+            return;
+        }
+
         int bytes = data.length * 4;
 
         this.grow(bytes);
@@ -82,4 +97,9 @@ public abstract class MixinBufferBuilder extends FixedColorVertexConsumer implem
     public boolean isEmpty() {
         return this.elementOffset <= 0;
     }
+
+    @Override
+    public int getVertexCount() {
+        return this.vertexCount;
+    }
 }
@@ -0,0 +1,29 @@
+#version 120
+
+uniform sampler2D u_BlockTex;
+uniform sampler2D u_LightTex;
+
+// 0 when fog is disabled, otherwise 1 for linear, 2 for exponential and 3 for squared exponential fog
+uniform int u_FogMode;
+
+varying float v_FogDistance;
+
+float getFogFactor() {
+    if (u_FogMode == 1) {
+        return (gl_Fog.end - v_FogDistance) * gl_Fog.scale;
+    } else if (u_FogMode == 2) {
+        return exp(-gl_Fog.density * v_FogDistance);
+    } else if (u_FogMode == 3) {
+        float d = gl_Fog.density * v_FogDistance;
+
+        return exp(-(d * d));
+    }
+
+    return 1.0;
+}
+
+void main() {
+    vec4 color = texture2D(u_BlockTex, gl_TexCoord[0].st) * texture2D(u_LightTex, gl_TexCoord[1].st) * gl_Color;
+
+    gl_FragColor = vec4(mix(gl_Fog.color.rgb, color.rgb, clamp(getFogFactor(), 0.0, 1.0)), color.a);
+}
@@ -0,0 +1,27 @@
+#version 120
+
+// The model-view matrix of the camera, which is set once per layer
+uniform mat4 u_ModelViewMatrix;
+
+// Vertex positions are scaled and then offset by the camera-relative origin of what is being drawn
+uniform float u_ModelScale;
+uniform vec3 u_ModelOffset;
+
+varying float v_FogDistance;
+
+void main() {
+    vec4 pos = u_ModelViewMatrix * vec4((gl_Vertex.xyz * u_ModelScale) + u_ModelOffset, 1.0);
+
+    gl_Position = gl_ProjectionMatrix * pos;
+    gl_FrontColor = gl_Color;
+
+    // The block atlas and lightmap use the same texture units and matrices as the fixed-function pipeline
+    gl_TexCoord[0] = gl_TextureMatrix[0] * gl_MultiTexCoord0;
+    gl_TexCoord[1] = gl_TextureMatrix[2] * gl_MultiTexCoord2;
+
+#ifdef USE_RADIAL_FOG
+    v_FogDistance = length(pos.xyz);
+#else
+    v_FogDistance = abs(pos.z);
+#endif
+}
@@ -0,0 +1,309 @@
+package me.jellysquid.mods.sodium.client.render.chunk;
+
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayFIFOQueue;
+import me.jellysquid.mods.sodium.client.render.backends.ChunkRenderState;
+
+import java.util.Random;
+
+/**
+ * A headless benchmark of the visibility traversal over a synthetic world, which runs the real
+ * {@link ChunkGraphTraversal} over a real {@link ChunkGraphGrid} and compares it against the previous layout, where each
+ * section held its own traversal state along with links to its neighbours and the queue held the sections themselves.
+ * The grid is filled the same way {@link ChunkGraph} fills it, except that the visibility of each section comes from a
+ * synthetic mask rather than a built mesh. The frustum test is skipped, as it is the same for both.
+ *
+ * This isn't run with the tests. Run its main method, optionally passing the render distance and number of traversals.
+ */
+public class ChunkGraphTraversalBenchmark {
+    private static final int[][] OFFSETS = { { 0, -1, 0 }, { 0, 1, 0 }, { 0, 0, -1 }, { 0, 0, 1 }, { -1, 0, 0 }, { 1, 0, 0 } };
+
+    private static final int NORTH = 2, SOUTH = 3, WEST = 4, EAST = 5;
+
+    private final int renderDistance;
+
+    // The synthetic world: which sections can be seen through between each pair of faces
+    private final Long2ObjectOpenHashMap<long[]> visibility = new Long2ObjectOpenHashMap<>();
+
+    private ChunkGraphTraversalBenchmark(int renderDistance, long seed) {
+        this.renderDistance = renderDistance;
+
+        Random random = new Random(seed);
+
+        int loaded = renderDistance + 1;
+
+        for (int x = -loaded; x <= loaded; x++) {
+            for (int z = -loaded; z <= loaded; z++) {
+                long[] column = new long[16];
+
+                for (int y = 0; y < 16; y++) {
+                    column[y] = createVisibility(random, y);
+                }
+
+                this.visibility.put(getColumnKey(x, z), column);
+            }
+        }
+    }
+
+    /**
+     * Creates sections which are roughly like terrain: solid underground, mostly open in the sky, and a mix of both
+     * around the surface.
+     */
+    private static long createVisibility(Random random, int y) {
+        float openness = y < 3 ? 0.05f : y < 5 ? 0.5f : 0.95f;
+
+        long bits = 0L;
+
+        for (int from = 0; from < 6; from++) {
+            for (int to = from; to < 6; to++) {
+                if (random.nextFloat() < openness) {
+                    bits |= ChunkGraphGrid.getVisibilityBit(from, to) | ChunkGraphGrid.getVisibilityBit(to, from);
+                }
+            }
+        }
+
+        return bits;
+    }
+
+    private long getVisibility(int x, int y, int z) {
+        long[] column = this.visibility.get(getColumnKey(x, z));
+
+        return column != null ? column[y] : 0L;
+    }
+
+    private boolean isChunkPresent(int x, int z) {
+        return this.visibility.containsKey(getColumnKey(x, z));
+    }
+
+    private boolean isWithinRenderBounds(int x, int y, int z) {
+        return y >= 0 && y < 16 && Math.abs(x) <= this.renderDistance && Math.abs(z) <= this.renderDistance;
+    }
+
+    private static int getOpposite(int dir) {
+        return dir ^ 1;
+    }
+
+    private static long getColumnKey(int x, int z) {
+        return ((long) x & 0xFFFFFFFFL) | (((long) z & 0xFFFFFFFFL) << 32);
+    }
+
+    /**
+     * The previous traversal, which kept the state of each section on the section itself and found neighbours through
+     * links which were cached on each section the first time they were looked up.
+     */
+    private static class LinkedTraversal {
+        private final ChunkGraphTraversalBenchmark world;
+
+        private final Long2ObjectOpenHashMap<LinkedSection[]> columns = new Long2ObjectOpenHashMap<>();
+        private final ObjectArrayFIFOQueue<LinkedSection> queue = new ObjectArrayFIFOQueue<>();
+
+        private int frame;
+
+        private LinkedTraversal(ChunkGraphTraversalBenchmark world) {
+            this.world = world;
+        }
+
+        private int run() {
+            int frame = ++this.frame;
+            int visited = 0;
+
+            LinkedSection start = this.getOrCreateSection(0, 5, 0);
+            start.direction = -1;
+            start.cullingState = 0;
+            start.rebuildFrame = frame;
+
+            this.queue.enqueue(start);
+
+            while (!this.queue.isEmpty()) {
+                LinkedSection section = this.queue.dequeue();
+                visited++;
+
+                for (int dir = 0; dir < 6; dir++) {
+                    int x = section.x + OFFSETS[dir][0];
+                    int y = section.y + OFFSETS[dir][1];
+                    int z = section.z + OFFSETS[dir][2];
+
+                    if (!this.world.isWithinRenderBounds(x, y, z)) {
+                        continue;
+                    }
+
+                    LinkedSection adj = section.getAdjacent(this, dir);
+
+                    if (adj == null || adj.rebuildFrame == frame) {
+                        continue;
+                    }
+
+                    if ((section.cullingState & (1 << getOpposite(dir))) != 0) {
+                        continue;
+                    }
+
+                    if (section.direction >= 0 && !ChunkGraphGrid.isVisibleThrough(section.visibility, getOpposite(section.direction), dir)) {
+                        continue;
+                    }
+
+                    if (!adj.hasChunkNeighbors(this)) {
+                        continue;
+                    }
+
+                    adj.direction = dir;
+                    adj.rebuildFrame = frame;
+                    adj.cullingState = (byte) (section.cullingState | (1 << dir));
+
+                    this.queue.enqueue(adj);
+                }
+            }
+
+            return visited;
+        }
+
+        private LinkedSection getOrCreateSection(int x, int y, int z) {
+            if (y < 0 || y >= 16) {
+                return null;
+            }
+
+            long key = getColumnKey(x, z);
+            LinkedSection[] column = this.columns.get(key);
+
+            if (column == null) {
+                this.columns.put(key, column = new LinkedSection[16]);
+            }
+
+            LinkedSection section = column[y];
+
+            if (section == null) {
+                section = column[y] = new LinkedSection(x, y, z, this.world.getVisibility(x, y, z), this.world.isChunkPresent(x, z));
+            }
+
+            return section;
+        }
+    }
+
+    private static class LinkedSection {
+        private final int x, y, z;
+        private final long visibility;
+        private final boolean chunkPresent;
+
+        private final LinkedSection[] adjacent = new LinkedSection[6];
+
+        private int direction = -1;
+        private int rebuildFrame = -1;
+        private byte cullingState;
+
+        private LinkedSection(int x, int y, int z, long visibility, boolean chunkPresent) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.visibility = visibility;
+            this.chunkPresent = chunkPresent;
+        }
+
+        private LinkedSection getAdjacent(LinkedTraversal traversal, int dir) {
+            LinkedSection adj = this.adjacent[dir];
+
+            if (adj == null) {
+                adj = this.adjacent[dir] = traversal.getOrCreateSection(this.x + OFFSETS[dir][0], this.y + OFFSETS[dir][1], this.z + OFFSETS[dir][2]);
+            }
+
+            return adj;
+        }
+
+        private boolean hasChunkNeighbors(LinkedTraversal traversal) {
+            return this.isNeighborPresent(traversal, WEST) && this.isNeighborPresent(traversal, NORTH) &&
+                    this.isNeighborPresent(traversal, EAST) && this.isNeighborPresent(traversal, SOUTH);
+        }
+
+        private boolean isNeighborPresent(LinkedTraversal traversal, int dir) {
+            LinkedSection adj = this.getAdjacent(traversal, dir);
+
+            return adj == null || adj.chunkPresent;
+        }
+    }
+
+    /**
+     * The current traversal, which keeps its state in a {@link ChunkGraphGrid} and queues the indices of its cells.
+     * Renders can't be created without a client, so the grid's columns are loaded and given their visibility directly.
+     */
+    private static class GridTraversal {
+        private final ChunkGraphTraversalBenchmark world;
+
+        private final ChunkGraphGrid<ChunkRenderState> grid;
+
+        private final IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+        private final IntArrayList reachableSections = new IntArrayList();
+
+        private int frame;
+
+        private GridTraversal(ChunkGraphTraversalBenchmark world) {
+            this.world = world;
+            this.grid = new ChunkGraphGrid<>(world.renderDistance);
+
+            int loaded = world.renderDistance + 1;
+
+            for (int x = -loaded; x <= loaded; x++) {
+                for (int z = -loaded; z <= loaded; z++) {
+                    this.grid.setColumn(x, z, world.isChunkPresent(x, z));
+
+                    for (int y = 0; y < 16; y++) {
+                        this.grid.setVisibility(x, y, z, world.getVisibility(x, y, z));
+                    }
+                }
+            }
+        }
+
+        private int run() {
+            int renderDistance = this.world.renderDistance;
+
+            // The camera is in the middle of the section at (0, 5, 0)
+            ChunkGraphTraversal traversal = new ChunkGraphTraversal(8.5D, 88.5D, 8.5D, 8, 88, 8, renderDistance,
+                    ++this.frame, true, false, true, this.reachableSections);
+
+            this.reachableSections.clear();
+
+            // Every column is already held by the grid, so this is all that ChunkGraph prepares before each traversal
+            this.grid.updateColumnNeighbors(traversal.getMinChunkX(), traversal.getMinChunkZ(), traversal.getMaxChunkX(), traversal.getMaxChunkZ());
+
+            traversal.run(this.grid, this.queue);
+
+            return this.reachableSections.size();
+        }
+    }
+
+    public static void main(String[] args) {
+        int renderDistance = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        ChunkGraphTraversalBenchmark world = new ChunkGraphTraversalBenchmark(renderDistance, 0x5eedL);
+
+        LinkedTraversal linked = new LinkedTraversal(world);
+        GridTraversal grid = new GridTraversal(world);
+
+        int linkedVisited = linked.run();
+        int gridVisited = grid.run();
+
+        if (linkedVisited != gridVisited) {
+            throw new IllegalStateException("Traversals visited different sections: " + linkedVisited + " vs " + gridVisited);
+        }
+
+        System.out.printf("Render distance %d, %d sections visited per traversal%n", renderDistance, gridVisited);
+
+        // Alternate between the two so that neither benefits from running later, once the JIT has warmed up
+        for (int round = 0; round < 5; round++) {
+            double linkedTime = time(linked::run, iterations);
+            double gridTime = time(grid::run, iterations);
+
+            System.out.printf("Round %d: linked %.3fms, grid %.3fms per traversal%n", round, linkedTime, gridTime);
+        }
+    }
+
+    private static double time(Runnable traversal, int iterations) {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            traversal.run();
+        }
+
+        return (System.nanoTime() - start) / 1_000_000.0D / iterations;
+    }
+}
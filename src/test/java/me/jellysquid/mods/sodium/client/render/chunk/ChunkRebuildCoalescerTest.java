@@ -0,0 +1,156 @@
+package me.jellysquid.mods.sodium.client.render.chunk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkRebuildCoalescerTest {
+    @Test
+    public void mergesSlicesOfRepeatedSections() {
+        ChunkRebuildCoalescer coalescer = new ChunkRebuildCoalescer();
+        coalescer.add(1, 2, 3, 0b0001, false);
+        coalescer.add(1, 2, 3, 0b0100, false);
+        coalescer.add(1, 2, 3, 1 << 15, false);
+
+        assertEquals(1, coalescer.size());
+
+        List<Entry> entries = drain(coalescer, 0.0D, 0.0D, 0.0D);
+
+        assertEquals(1, entries.size());
+        assertEquals(new Entry(1, 2, 3, 0b0101 | (1 << 15), false), entries.get(0));
+    }
+
+    @Test
+    public void ignoresBitsOutsideOfSliceMask() {
+        ChunkRebuildCoalescer coalescer = new ChunkRebuildCoalescer();
+        coalescer.add(0, 0, 0, 0xFFFF0000 | 0b0010, false);
+
+        List<Entry> entries = drain(coalescer, 0.0D, 0.0D, 0.0D);
+
+        assertEquals(new Entry(0, 0, 0, 0b0010, false), entries.get(0));
+    }
+
+    @Test
+    public void keepsImportanceWhenMerged() {
+        ChunkRebuildCoalescer coalescer = new ChunkRebuildCoalescer();
+        coalescer.add(0, 0, 0, 0b0001, true);
+        coalescer.add(0, 0, 0, 0b0010, false);
+
+        coalescer.add(4, 0, 0, 0b0001, false);
+        coalescer.add(4, 0, 0, 0b0010, true);
+
+        coalescer.add(8, 0, 0, 0b0001, false);
+        coalescer.add(8, 0, 0, 0b0010, false);
+
+        List<Entry> entries = drain(coalescer, 0.0D, 0.0D, 0.0D);
+
+        assertEquals(3, entries.size());
+        assertEquals(new Entry(0, 0, 0, 0b0011, true), entries.get(0));
+        assertEquals(new Entry(4, 0, 0, 0b0011, true), entries.get(1));
+        assertEquals(new Entry(8, 0, 0, 0b0011, false), entries.get(2));
+    }
+
+    @Test
+    public void drainsNearestSectionsFirst() {
+        ChunkRebuildCoalescer coalescer = new ChunkRebuildCoalescer();
+
+        // Enough sections to force the coalescer to grow its sorting arrays
+        for (int x = -10; x <= 10; x++) {
+            for (int z = -10; z <= 10; z++) {
+                coalescer.add(x, 5, z, 1, false);
+            }
+        }
+
+        double cameraX = 40.0D, cameraY = 88.0D, cameraZ = -24.0D;
+
+        List<Entry> entries = drain(coalescer, cameraX, cameraY, cameraZ);
+
+        assertEquals(21 * 21, entries.size());
+        assertEquals(new Entry(2, 5, -2, 1, false), entries.get(0));
+
+        double last = -1.0D;
+
+        for (Entry entry : entries) {
+            double distance = entry.getDistanceSq(cameraX, cameraY, cameraZ);
+
+            assertTrue(distance >= last);
+
+            last = distance;
+        }
+    }
+
+    @Test
+    public void drainRemovesPendingSections() {
+        ChunkRebuildCoalescer coalescer = new ChunkRebuildCoalescer();
+        coalescer.add(0, 0, 0, 1, false);
+
+        assertEquals(1, drain(coalescer, 0.0D, 0.0D, 0.0D).size());
+        assertTrue(coalescer.isEmpty());
+        assertEquals(0, drain(coalescer, 0.0D, 0.0D, 0.0D).size());
+
+        // Sections drained earlier should not carry their slices over into later batches
+        coalescer.add(0, 0, 0, 0b0010, false);
+
+        List<Entry> entries = drain(coalescer, 0.0D, 0.0D, 0.0D);
+
+        assertEquals(new Entry(0, 0, 0, 0b0010, false), entries.get(0));
+        assertFalse(entries.get(0).important);
+    }
+
+    private static List<Entry> drain(ChunkRebuildCoalescer coalescer, double x, double y, double z) {
+        List<Entry> entries = new ArrayList<>();
+        coalescer.drain(x, y, z, (cx, cy, cz, slices, important) -> entries.add(new Entry(cx, cy, cz, slices, important)));
+
+        return entries;
+    }
+
+    private static class Entry {
+        private final int x, y, z;
+        private final int slices;
+        private final boolean important;
+
+        private Entry(int x, int y, int z, int slices, boolean important) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.slices = slices;
+            this.important = important;
+        }
+
+        private double getDistanceSq(double x, double y, double z) {
+            double dx = ((this.x << 4) + 8.0D) - x;
+            double dy = ((this.y << 4) + 8.0D) - y;
+            double dz = ((this.z << 4) + 8.0D) - z;
+
+            return (dx * dx) + (dy * dy) + (dz * dz);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+
+            Entry other = (Entry) o;
+
+            return this.x == other.x && this.y == other.y && this.z == other.z &&
+                    this.slices == other.slices && this.important == other.important;
+        }
+
+        @Override
+        public int hashCode() {
+            return (((((this.x * 31) + this.y) * 31) + this.z) * 31 + this.slices) * 31 + (this.important ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%d, %d, %d] slices=%s important=%s", this.x, this.y, this.z,
+                    Integer.toBinaryString(this.slices), this.important);
+        }
+    }
+}
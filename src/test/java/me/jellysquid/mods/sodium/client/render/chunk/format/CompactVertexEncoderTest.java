@@ -0,0 +1,108 @@
+package me.jellysquid.mods.sodium.client.render.chunk.format;
+
+import me.jellysquid.mods.sodium.client.util.QuadUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompactVertexEncoderTest {
+    private static final float POSITION_PRECISION = 1.0f / 2048.0f;
+
+    @Test
+    public void encodesPositionsWithinRange() {
+        for (float pos = -8.0f; pos < 24.0f; pos += 0.01f) {
+            float decoded = CompactVertexEncoder.decodePosition(CompactVertexEncoder.encodePosition(pos));
+
+            // Rounding to the nearest step can be off by half a step, plus some error from float arithmetic
+            assertEquals("position " + pos, pos, decoded, (POSITION_PRECISION / 2.0f) + 1.0e-6f);
+        }
+    }
+
+    @Test
+    public void encodesGridAlignedPositionsExactly() {
+        // Model vertices very often fall on 1/16ths of a block
+        for (int i = -8 * 16; i < 24 * 16; i++) {
+            float pos = i / 16.0f;
+
+            assertEquals(pos, CompactVertexEncoder.decodePosition(CompactVertexEncoder.encodePosition(pos)), 0.0f);
+        }
+    }
+
+    @Test
+    public void encodesPositionRangeBounds() {
+        assertEquals(Short.MIN_VALUE, CompactVertexEncoder.encodePosition(-8.0f));
+        assertEquals(-8.0f, CompactVertexEncoder.decodePosition(Short.MIN_VALUE), 0.0f);
+
+        // The upper bound is exclusive, so the largest position is one step below it
+        assertEquals(Short.MAX_VALUE, CompactVertexEncoder.encodePosition(24.0f - POSITION_PRECISION));
+        assertEquals(24.0f - POSITION_PRECISION, CompactVertexEncoder.decodePosition(Short.MAX_VALUE), 0.0f);
+    }
+
+    @Test
+    public void clampsPositionsOutsideOfRange() {
+        assertEquals(Short.MIN_VALUE, CompactVertexEncoder.encodePosition(-9.0f));
+        assertEquals(Short.MAX_VALUE, CompactVertexEncoder.encodePosition(24.0f));
+        assertEquals(Short.MAX_VALUE, CompactVertexEncoder.encodePosition(100.0f));
+    }
+
+    @Test
+    public void encodesTexelBoundariesExactly() {
+        for (int width = 1; width <= 32768; width *= 2) {
+            for (int texel = 0; texel < width; texel += Math.max(1, width / 256)) {
+                float uv = texel / (float) width;
+
+                assertEquals("texel " + texel + "/" + width, uv,
+                        CompactVertexEncoder.decodeTexture(CompactVertexEncoder.encodeTexture(uv)), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void clampsTextureCoordinateOfOne() {
+        // 1.0 would need a value of 32768, which doesn't fit in a short
+        assertEquals(Short.MAX_VALUE, CompactVertexEncoder.encodeTexture(1.0f));
+        assertEquals(32767.0f / 32768.0f, CompactVertexEncoder.decodeTexture(CompactVertexEncoder.encodeTexture(1.0f)), 0.0f);
+    }
+
+    @Test
+    public void clampsTextureCoordinatesOutsideOfRange() {
+        assertEquals(0, CompactVertexEncoder.encodeTexture(-0.5f));
+        assertEquals(Short.MAX_VALUE, CompactVertexEncoder.encodeTexture(2.0f));
+    }
+
+    @Test
+    public void writesQuadVertices() {
+        int[] data = new int[QuadUtil.VERTEX_SIZE * 4];
+
+        for (int i = 0; i < 4; i++) {
+            int offset = QuadUtil.vertexOffset(i);
+
+            data[offset + QuadUtil.POSITION_INDEX] = Float.floatToIntBits(i);
+            data[offset + QuadUtil.POSITION_INDEX + 1] = Float.floatToIntBits(i + 0.5f);
+            data[offset + QuadUtil.POSITION_INDEX + 2] = Float.floatToIntBits(16.0f - i);
+            data[offset + QuadUtil.COLOR_INDEX] = 0xFF00FF00 | i;
+            data[offset + QuadUtil.TEXTURE_INDEX] = Float.floatToIntBits(i / 8.0f);
+            data[offset + QuadUtil.TEXTURE_INDEX + 1] = Float.floatToIntBits(i / 16.0f);
+            data[offset + QuadUtil.LIGHT_INDEX] = 0x00F000F0 + i;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + (CompactVertexEncoder.VERTEX_SIZE * 4)).order(ByteOrder.nativeOrder());
+        CompactVertexEncoder.writeQuad(data, buffer, 8);
+
+        for (int i = 0; i < 4; i++) {
+            int offset = 8 + (i * CompactVertexEncoder.VERTEX_SIZE);
+
+            assertEquals(i, CompactVertexEncoder.decodePosition(buffer.getShort(offset)), 0.0f);
+            assertEquals(i + 0.5f, CompactVertexEncoder.decodePosition(buffer.getShort(offset + 2)), 0.0f);
+            assertEquals(16.0f - i, CompactVertexEncoder.decodePosition(buffer.getShort(offset + 4)), 0.0f);
+            assertEquals(0, buffer.getShort(offset + 6));
+            assertEquals(0xFF00FF00 | i, buffer.getInt(offset + 8));
+            assertEquals(i / 8.0f, CompactVertexEncoder.decodeTexture(buffer.getShort(offset + 12)), 0.0f);
+            assertEquals(i / 16.0f, CompactVertexEncoder.decodeTexture(buffer.getShort(offset + 14)), 0.0f);
+            assertEquals(0x00F000F0 + i, buffer.getInt(offset + 16));
+        }
+    }
+}
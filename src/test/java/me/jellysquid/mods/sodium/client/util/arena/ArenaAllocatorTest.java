@@ -0,0 +1,365 @@
+package me.jellysquid.mods.sodium.client.util.arena;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArenaAllocatorTest {
+    @Test
+    public void allocatesFirstFitWithAlignment() {
+        ArenaAllocator arena = new ArenaAllocator(1000, 16);
+
+        // The capacity is aligned down
+        assertEquals(992, arena.getCapacity());
+
+        ArenaAllocator.Allocation a = arena.allocate(10);
+        ArenaAllocator.Allocation b = arena.allocate(17);
+        ArenaAllocator.Allocation c = arena.allocate(32);
+
+        assertEquals(0, a.getOffset());
+        assertEquals(16, a.getSize());
+        assertEquals(16, b.getOffset());
+        assertEquals(32, b.getSize());
+        assertEquals(48, c.getOffset());
+
+        assertEquals(80, arena.getUsedBytes());
+        assertEquals(3, arena.getAllocationCount());
+
+        // The freed range is the first one which fits
+        arena.free(b);
+
+        ArenaAllocator.Allocation d = arena.allocate(16);
+
+        assertEquals(16, d.getOffset());
+    }
+
+    @Test
+    public void returnsNullWhenFull() {
+        ArenaAllocator arena = new ArenaAllocator(64, 16);
+
+        assertNotNull(arena.allocate(48));
+        assertNull(arena.allocate(32));
+        assertNotNull(arena.allocate(16));
+        assertNull(arena.allocate(1));
+    }
+
+    @Test
+    public void mergesFreedNeighbours() {
+        ArenaAllocator arena = new ArenaAllocator(64 * 16, 16);
+
+        ArenaAllocator.Allocation[] allocations = new ArenaAllocator.Allocation[8];
+
+        for (int i = 0; i < allocations.length; i++) {
+            allocations[i] = arena.allocate(64);
+        }
+
+        // [0] [1] [2] [3] [4] [5] [6] [7] [free]
+        assertEquals(1, arena.getFreeBlockCount());
+
+        arena.free(allocations[1]);
+        arena.free(allocations[3]);
+        arena.free(allocations[5]);
+
+        assertEquals(4, arena.getFreeBlockCount());
+        assertEquals(512, arena.getLargestFreeBlock());
+
+        // Freeing a range between two free ranges merges all three
+        arena.free(allocations[2]);
+
+        assertEquals(3, arena.getFreeBlockCount());
+        assertEquals(512, arena.getLargestFreeBlock());
+        assertEquals(64 * 3, getFreeBlockAt(arena, 64));
+
+        // Freeing a range before the free tail merges with it
+        arena.free(allocations[7]);
+        arena.free(allocations[6]);
+
+        assertEquals(2, arena.getFreeBlockCount());
+        assertEquals(704, getFreeBlockAt(arena, 320));
+
+        arena.free(allocations[0]);
+        arena.free(allocations[4]);
+
+        assertEquals(1, arena.getFreeBlockCount());
+        assertEquals(arena.getCapacity(), arena.getLargestFreeBlock());
+        assertTrue(arena.isEmpty());
+        assertEquals(0.0f, arena.getFragmentation(), 0.0f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsDoubleFree() {
+        ArenaAllocator arena = new ArenaAllocator(64, 16);
+        ArenaAllocator.Allocation a = arena.allocate(16);
+
+        arena.free(a);
+
+        assertTrue(a.isFreed());
+
+        arena.free(a);
+    }
+
+    @Test
+    public void resizesInPlace() {
+        ArenaAllocator arena = new ArenaAllocator(256, 16);
+
+        ArenaAllocator.Allocation a = arena.allocate(64);
+        ArenaAllocator.Allocation b = arena.allocate(64);
+
+        // Shrinking releases the tail of the range, which can then be reused
+        assertTrue(arena.resize(a, 32));
+        assertEquals(32, a.getSize());
+        assertEquals(96, arena.getUsedBytes());
+        assertEquals(32, arena.allocate(32).getOffset());
+
+        // Growing fails when the next range is in use
+        assertFalse(arena.resize(a, 48));
+        assertEquals(32, a.getSize());
+
+        // ... but succeeds when it is free and large enough
+        assertTrue(arena.resize(b, 128));
+        assertEquals(64, b.getOffset());
+        assertEquals(128, b.getSize());
+        assertFalse(arena.resize(b, 256));
+
+        assertEquals(256 - 64, arena.getUsedBytes());
+    }
+
+    @Test
+    public void growsWithoutMovingAllocations() {
+        ArenaAllocator arena = new ArenaAllocator(64, 16);
+
+        ArenaAllocator.Allocation a = arena.allocate(32);
+        ArenaAllocator.Allocation b = arena.allocate(16);
+
+        assertNull(arena.allocate(32));
+
+        arena.grow(128);
+
+        assertEquals(128, arena.getCapacity());
+        assertEquals(0, a.getOffset());
+        assertEquals(32, b.getOffset());
+
+        // The new space is merged with the free range which was already at the end
+        assertEquals(1, arena.getFreeBlockCount());
+        assertEquals(48, arena.allocate(80).getOffset());
+    }
+
+    @Test
+    public void defragmentsFromTheEnd() {
+        ArenaAllocator arena = new ArenaAllocator(16 * 8, 16);
+
+        ArenaAllocator.Allocation[] allocations = new ArenaAllocator.Allocation[8];
+
+        for (int i = 0; i < allocations.length; i++) {
+            allocations[i] = arena.allocate(16);
+        }
+
+        arena.free(allocations[1]);
+        arena.free(allocations[3]);
+        arena.free(allocations[4]);
+
+        // [0] [ ] [2] [ ] [ ] [5] [6] [7]
+        List<int[]> moves = new ArrayList<>();
+        int moved = arena.defragment(Integer.MAX_VALUE, (allocation, from, to, size) -> moves.add(new int[] { from, to, size }));
+
+        // The last allocation moves into the first hole, then the one before it into the next
+        assertEquals(3, moves.size());
+        assertEquals(48, moved);
+        assertTrue(Arrays.equals(new int[] { 112, 16, 16 }, moves.get(0)));
+        assertTrue(Arrays.equals(new int[] { 96, 48, 16 }, moves.get(1)));
+        assertTrue(Arrays.equals(new int[] { 80, 64, 16 }, moves.get(2)));
+
+        assertEquals(16, allocations[7].getOffset());
+        assertEquals(48, allocations[6].getOffset());
+        assertEquals(64, allocations[5].getOffset());
+
+        assertEquals(1, arena.getFreeBlockCount());
+        assertEquals(48, getFreeBlockAt(arena, 80));
+        assertEquals(0.0f, arena.getFragmentation(), 0.0f);
+    }
+
+    @Test
+    public void defragmentLimitsBytesMoved() {
+        ArenaAllocator arena = new ArenaAllocator(16 * 8, 16);
+
+        ArenaAllocator.Allocation[] allocations = new ArenaAllocator.Allocation[8];
+
+        for (int i = 0; i < allocations.length; i++) {
+            allocations[i] = arena.allocate(16);
+        }
+
+        arena.free(allocations[0]);
+        arena.free(allocations[2]);
+        arena.free(allocations[4]);
+
+        assertEquals(32, arena.defragment(32, (allocation, from, to, size) -> { }));
+        assertEquals(0, allocations[7].getOffset());
+        assertEquals(32, allocations[6].getOffset());
+        assertEquals(80, allocations[5].getOffset());
+    }
+
+    @Test
+    public void defragmentSkipsAllocationsWhichDoNotFit() {
+        ArenaAllocator arena = new ArenaAllocator(16 * 5, 16);
+
+        ArenaAllocator.Allocation a = arena.allocate(16);
+        ArenaAllocator.Allocation b = arena.allocate(32);
+        ArenaAllocator.Allocation c = arena.allocate(32);
+
+        arena.free(a);
+
+        // The only hole is smaller than every allocation after it
+        assertEquals(0, arena.defragment(Integer.MAX_VALUE, (allocation, from, to, size) -> { }));
+        assertEquals(16, b.getOffset());
+        assertEquals(48, c.getOffset());
+    }
+
+    /**
+     * Runs a long random trace of operations against the arena while mirroring each allocation's contents in a byte
+     * array, checking that allocations never overlap and that defragmentation preserves their contents.
+     */
+    @Test
+    public void randomTraceKeepsAllocationsConsistent() {
+        Random random = new Random(0x5eed);
+
+        ArenaAllocator arena = new ArenaAllocator(4096, 16);
+        byte[][] memory = { new byte[arena.getCapacity()] };
+
+        List<ArenaAllocator.Allocation> allocations = new ArrayList<>();
+        List<Byte> contents = new ArrayList<>();
+
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+
+            if (op < 5) {
+                ArenaAllocator.Allocation allocation = arena.allocate(1 + random.nextInt(256));
+
+                if (allocation == null) {
+                    if (arena.getCapacity() < 64 * 1024) {
+                        // Grow the arena, copying the old contents into the start of the larger memory
+                        arena.grow(arena.getCapacity() * 2);
+                        memory[0] = Arrays.copyOf(memory[0], arena.getCapacity());
+                    }
+
+                    continue;
+                }
+
+                byte value = (byte) random.nextInt();
+                Arrays.fill(memory[0], allocation.getOffset(), allocation.getOffset() + allocation.getSize(), value);
+
+                allocations.add(allocation);
+                contents.add(value);
+            } else if (op < 8 && !allocations.isEmpty()) {
+                int i = random.nextInt(allocations.size());
+
+                arena.free(allocations.remove(i));
+                contents.remove(i);
+            } else if (op < 9 && !allocations.isEmpty()) {
+                int i = random.nextInt(allocations.size());
+                ArenaAllocator.Allocation allocation = allocations.get(i);
+
+                if (arena.resize(allocation, 1 + random.nextInt(512))) {
+                    Arrays.fill(memory[0], allocation.getOffset(), allocation.getOffset() + allocation.getSize(), contents.get(i));
+                }
+            } else {
+                arena.defragment(random.nextInt(2048), (allocation, from, to, size) -> {
+                    assertTrue("moves must not overlap", to + size <= from);
+
+                    System.arraycopy(memory[0], from, memory[0], to, size);
+                });
+            }
+
+            checkConsistency(arena, allocations, contents, memory[0]);
+        }
+
+        float fragmentation = arena.getFragmentation();
+
+        // Repeated passes stop once no allocation fits into an earlier hole, with the free space no more fragmented
+        while (arena.defragment(Integer.MAX_VALUE, (allocation, from, to, size) -> System.arraycopy(memory[0], from, memory[0], to, size)) > 0) {
+            checkConsistency(arena, allocations, contents, memory[0]);
+        }
+
+        assertTrue(arena.getFragmentation() <= fragmentation);
+
+        // Once every allocation is freed, the arena is a single free range again
+        while (!allocations.isEmpty()) {
+            arena.free(allocations.remove(allocations.size() - 1));
+        }
+
+        assertEquals(1, arena.getFreeBlockCount());
+        assertEquals(arena.getCapacity(), arena.getLargestFreeBlock());
+    }
+
+    private static void checkConsistency(ArenaAllocator arena, List<ArenaAllocator.Allocation> allocations, List<Byte> contents, byte[] memory) {
+        int used = 0;
+
+        List<ArenaAllocator.Allocation> sorted = new ArrayList<>(allocations);
+        sorted.sort(Comparator.comparingInt(ArenaAllocator.Allocation::getOffset));
+
+        for (int i = 0; i < sorted.size(); i++) {
+            ArenaAllocator.Allocation allocation = sorted.get(i);
+
+            assertEquals(0, allocation.getOffset() % arena.getAlignment());
+            assertTrue(allocation.getOffset() + allocation.getSize() <= arena.getCapacity());
+
+            if (i > 0) {
+                ArenaAllocator.Allocation prev = sorted.get(i - 1);
+
+                assertTrue("allocations must not overlap", prev.getOffset() + prev.getSize() <= allocation.getOffset());
+            }
+
+            used += allocation.getSize();
+        }
+
+        for (int i = 0; i < allocations.size(); i++) {
+            ArenaAllocator.Allocation allocation = allocations.get(i);
+
+            for (int j = allocation.getOffset(); j < allocation.getOffset() + allocation.getSize(); j++) {
+                assertEquals(contents.get(i).byteValue(), memory[j]);
+            }
+        }
+
+        assertEquals(used, arena.getUsedBytes());
+        assertEquals(allocations.size(), arena.getAllocationCount());
+    }
+
+    /**
+     * @return The size of the free range starting at {@param offset}, which must exist
+     */
+    private static int getFreeBlockAt(ArenaAllocator arena, int offset) {
+        // Allocating the whole range and checking where it lands is the only way to see a specific free range
+        ArenaAllocator.Allocation probe = null;
+
+        for (int size = arena.getLargestFreeBlock(); size > 0; size -= arena.getAlignment()) {
+            ArenaAllocator.Allocation allocation = arena.allocate(size);
+
+            if (allocation == null) {
+                continue;
+            }
+
+            if (allocation.getOffset() == offset) {
+                probe = allocation;
+                break;
+            }
+
+            arena.free(allocation);
+        }
+
+        assertNotNull("no free range at " + offset, probe);
+
+        int size = probe.getSize();
+        arena.free(probe);
+
+        return size;
+    }
+}
@@ -0,0 +1,276 @@
+package me.jellysquid.mods.sodium.client.util.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkStealingExecutorTest {
+    private static final int TASK_COUNT = 50_000;
+
+    private WorkStealingExecutor<Context, TestTask> executor;
+
+    @After
+    public void stopExecutor() {
+        if (this.executor != null && this.executor.isRunning()) {
+            this.executor.stop();
+        }
+    }
+
+    @Test
+    public void runsEveryTaskExactlyOnce() throws InterruptedException {
+        this.executor = new WorkStealingExecutor<>("Test Executor", 4, Context::new);
+        this.executor.start();
+
+        AtomicIntegerArray runs = new AtomicIntegerArray(TASK_COUNT);
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+
+        long start = System.nanoTime();
+
+        // Submitted in a burst, which forces workers to batch tasks into their own deques and steal from each other
+        for (int i = 0; i < TASK_COUNT; i++) {
+            int id = i;
+
+            this.executor.submit(new TestTask(i % 16, false, (context) -> {
+                runs.incrementAndGet(id);
+                done.countDown();
+            }));
+        }
+
+        assertTrue("Tasks did not finish in time", done.await(30, TimeUnit.SECONDS));
+
+        long elapsed = System.nanoTime() - start;
+
+        for (int i = 0; i < TASK_COUNT; i++) {
+            assertEquals("Task " + i, 1, runs.get(i));
+        }
+
+        System.out.println(String.format("Ran %d no-op tasks in %.1f ms (%.0f tasks/s)", TASK_COUNT,
+                elapsed / 1_000_000.0D, TASK_COUNT / (elapsed / 1_000_000_000.0D)));
+
+        this.awaitQueueDrained();
+    }
+
+    @Test
+    public void workersDoNotShareContexts() throws InterruptedException {
+        this.executor = new WorkStealingExecutor<>("Test Executor", 4, Context::new);
+        this.executor.start();
+
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+
+        for (int i = 0; i < TASK_COUNT; i++) {
+            this.executor.submit(new TestTask(0, false, (context) -> {
+                if (!context.claim(Thread.currentThread())) {
+                    failures.incrementAndGet();
+                }
+
+                done.countDown();
+            }));
+        }
+
+        assertTrue("Tasks did not finish in time", done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void runsTasksInPriorityOrder() throws InterruptedException {
+        this.executor = new WorkStealingExecutor<>("Test Executor", 1, Context::new);
+        this.executor.start();
+
+        CountDownLatch release = this.block();
+
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(7);
+
+        for (int priority : new int[] { 5, 1, 6, 3, 2, 4 }) {
+            this.executor.submit(new TestTask(priority, false, (context) -> {
+                order.add(priority);
+                done.countDown();
+            }));
+        }
+
+        // Important tasks always come first, even when they have the lowest priority
+        this.executor.submit(new TestTask(100, true, (context) -> {
+            order.add(100);
+            done.countDown();
+        }));
+
+        release.countDown();
+
+        assertTrue("Tasks did not finish in time", done.await(10, TimeUnit.SECONDS));
+        assertEquals(listOf(100, 1, 2, 3, 4, 5, 6), order);
+    }
+
+    @Test
+    public void reprioritizesQueuedTasks() throws InterruptedException {
+        this.executor = new WorkStealingExecutor<>("Test Executor", 1, Context::new);
+        this.executor.start();
+
+        CountDownLatch release = this.block();
+
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(5);
+
+        for (int i = 1; i <= 5; i++) {
+            int id = i;
+
+            this.executor.submit(new TestTask(i, false, (context) -> {
+                order.add(id);
+                done.countDown();
+            }));
+        }
+
+        this.executor.reprioritize((task) -> task.priority = -task.priority);
+
+        release.countDown();
+
+        assertTrue("Tasks did not finish in time", done.await(10, TimeUnit.SECONDS));
+        assertEquals(listOf(5, 4, 3, 2, 1), order);
+    }
+
+    @Test
+    public void stopCancelsPendingTasks() throws InterruptedException {
+        this.executor = new WorkStealingExecutor<>("Test Executor", 1, Context::new);
+        this.executor.start();
+
+        CountDownLatch release = this.block();
+
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger cancels = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            TestTask task = new TestTask(i, false, (context) -> runs.incrementAndGet());
+            task.onCancel = cancels::incrementAndGet;
+
+            this.executor.submit(task);
+        }
+
+        // The blocking task can only be released once the executor has been told to stop, as the worker would
+        // otherwise pick up the remaining tasks
+        Thread releaser = new Thread(() -> {
+            while (this.executor.isRunning()) {
+                Thread.yield();
+            }
+
+            release.countDown();
+        });
+        releaser.start();
+
+        this.executor.stop();
+        releaser.join();
+
+        assertEquals(0, runs.get());
+        assertEquals(100, cancels.get());
+        assertEquals(0, this.executor.getQueuedTasks());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsTasksWhenStopped() {
+        this.executor = new WorkStealingExecutor<>("Test Executor", 1, Context::new);
+        this.executor.submit(new TestTask(0, false, (context) -> { }));
+    }
+
+    /**
+     * Occupies every worker of a single-threaded executor until the returned latch is released, so that tasks
+     * submitted in the meantime pile up in the shared queue.
+     */
+    private CountDownLatch block() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        this.executor.submit(new TestTask(Integer.MIN_VALUE, true, (context) -> {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        assertTrue("Blocking task never started", started.await(10, TimeUnit.SECONDS));
+
+        return release;
+    }
+
+    private void awaitQueueDrained() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (this.executor.getQueuedTasks() > 0) {
+            assertTrue("Queue never drained", System.nanoTime() < deadline);
+
+            Thread.sleep(1);
+        }
+    }
+
+    private static List<Integer> listOf(Integer... values) {
+        List<Integer> list = new ArrayList<>();
+        Collections.addAll(list, values);
+
+        return list;
+    }
+
+    private static class Context {
+        private Thread owner;
+
+        private synchronized boolean claim(Thread thread) {
+            if (this.owner == null) {
+                this.owner = thread;
+            }
+
+            return this.owner == thread;
+        }
+    }
+
+    private interface Action {
+        void run(Context context);
+    }
+
+    private static class TestTask implements WorkStealingExecutor.Task<Context>, Comparable<TestTask> {
+        private final boolean important;
+        private final Action action;
+
+        private int priority;
+        private Runnable onCancel = () -> { };
+
+        private TestTask(int priority, boolean important, Action action) {
+            this.priority = priority;
+            this.important = important;
+            this.action = action;
+        }
+
+        @Override
+        public void run(Context context) {
+            this.action.run(context);
+        }
+
+        @Override
+        public void cancel() {
+            this.onCancel.run();
+        }
+
+        @Override
+        public boolean isImportant() {
+            return this.important;
+        }
+
+        @Override
+        public int compareTo(TestTask o) {
+            if (this.important != o.important) {
+                return this.important ? -1 : 1;
+            }
+
+            return Integer.compare(this.priority, o.priority);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package me.jellysquid.mods.sodium.client.util.staging;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StagingRingTest {
+    private FakeFenceSource fences;
+    private StagingRing ring;
+
+    @Before
+    public void setup() {
+        this.fences = new FakeFenceSource();
+        this.ring = new StagingRing(ByteBuffer.allocate(100), this.fences);
+    }
+
+    @Test
+    public void reservesRangesInOrder() {
+        assertEquals(0, this.ring.reserve(40).getOffset());
+        assertEquals(40, this.ring.reserve(40).getOffset());
+        assertEquals(80, this.ring.reserve(20).getOffset());
+
+        assertEquals(100, this.ring.getReservedBytes());
+    }
+
+    @Test
+    public void failsWhenFull() {
+        this.ring.reserve(60);
+
+        assertNull(this.ring.reserve(41));
+        assertEquals(1, this.ring.getFailedReservations());
+
+        assertNotNull(this.ring.reserve(40));
+        assertNull(this.ring.reserve(1));
+        assertEquals(2, this.ring.getFailedReservations());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRangesLargerThanRing() {
+        this.ring.reserve(101);
+    }
+
+    @Test
+    public void wrapsAroundWhenEndIsFull() {
+        StagingRing.Range a = this.ring.reserve(40);
+        this.ring.reserve(40);
+        this.ring.reserve(20);
+
+        this.ring.discard(a);
+
+        // The head is at the end of the ring, so the next range starts over from the front
+        StagingRing.Range b = this.ring.reserve(30);
+
+        assertEquals(0, b.getOffset());
+
+        // The head is now chasing the tail, with only 10 bytes between them
+        assertNull(this.ring.reserve(20));
+        assertEquals(30, this.ring.reserve(10).getOffset());
+        assertNull(this.ring.reserve(1));
+    }
+
+    @Test
+    public void skipsEndOfRingWhenRangeDoesNotFit() {
+        StagingRing.Range a = this.ring.reserve(60);
+        this.ring.reserve(30);
+
+        this.ring.discard(a);
+
+        // Only 10 bytes are left at the end, so the range is placed at the front instead
+        assertEquals(0, this.ring.reserve(20).getOffset());
+
+        // The skipped bytes at the end aren't handed out while the head is behind the tail
+        assertEquals(20, this.ring.reserve(40).getOffset());
+        assertNull(this.ring.reserve(1));
+    }
+
+    @Test
+    public void doesNotWrapOntoTail() {
+        StagingRing.Range a = this.ring.reserve(30);
+        this.ring.reserve(50);
+
+        this.ring.discard(a);
+
+        // There are 20 bytes at the end and 30 at the front, so neither fits 31 bytes
+        assertNull(this.ring.reserve(31));
+        assertEquals(0, this.ring.reserve(30).getOffset());
+    }
+
+    @Test
+    public void resetsHeadWhenEmpty() {
+        StagingRing.Range a = this.ring.reserve(70);
+        this.ring.discard(a);
+
+        // With nothing reserved, a range larger than the space after the old head still fits
+        assertEquals(0, this.ring.reserve(100).getOffset());
+    }
+
+    @Test
+    public void retiresReleasedRangesOnceFenceIsSignaled() {
+        StagingRing.Range a = this.ring.reserve(50);
+        this.ring.reserve(50);
+
+        this.ring.release(a);
+        this.ring.endFrame();
+
+        assertEquals(1, this.ring.getPendingFenceCount());
+        assertEquals(100, this.ring.getReservedBytes());
+        assertNull(this.ring.reserve(50));
+
+        this.fences.signalAll();
+        this.ring.endFrame();
+
+        assertEquals(0, this.ring.getPendingFenceCount());
+        assertEquals(50, this.ring.getReservedBytes());
+        assertEquals(0, this.ring.reserve(50).getOffset());
+
+        assertTrue(this.fences.live.isEmpty());
+    }
+
+    @Test
+    public void retiresFencesInOrder() {
+        StagingRing.Range a = this.ring.reserve(25);
+        StagingRing.Range b = this.ring.reserve(25);
+
+        this.ring.release(a);
+        this.ring.endFrame();
+        long first = this.fences.last;
+
+        this.ring.release(b);
+        this.ring.endFrame();
+        long second = this.fences.last;
+
+        // The later fence completing first doesn't retire anything until the earlier one has too
+        this.fences.signal(second);
+        this.ring.endFrame();
+
+        assertEquals(2, this.ring.getPendingFenceCount());
+        assertEquals(50, this.ring.getReservedBytes());
+
+        this.fences.signal(first);
+        this.ring.endFrame();
+
+        assertEquals(0, this.ring.getPendingFenceCount());
+        assertEquals(0, this.ring.getReservedBytes());
+    }
+
+    @Test
+    public void tailWaitsForEarlierRanges() {
+        StagingRing.Range a = this.ring.reserve(50);
+        StagingRing.Range b = this.ring.reserve(50);
+
+        // Retiring the second range doesn't free any space while the first is still in use
+        this.ring.discard(b);
+
+        assertEquals(50, this.ring.getReservedBytes());
+        assertNull(this.ring.reserve(1));
+
+        this.ring.discard(a);
+
+        assertEquals(0, this.ring.reserve(100).getOffset());
+    }
+
+    @Test
+    public void doesNotCreateFencesForEmptyFrames() {
+        this.ring.endFrame();
+        this.ring.endFrame();
+
+        assertEquals(0, this.fences.created);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsReleasingTwice() {
+        StagingRing.Range a = this.ring.reserve(10);
+
+        this.ring.release(a);
+        this.ring.release(a);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsDiscardingReleasedRange() {
+        StagingRing.Range a = this.ring.reserve(10);
+
+        this.ring.release(a);
+        this.ring.discard(a);
+    }
+
+    @Test
+    public void writesDataIntoRange() {
+        ByteBuffer memory = ByteBuffer.allocate(16);
+        StagingRing ring = new StagingRing(memory, this.fences);
+
+        ring.reserve(4);
+
+        ByteBuffer data = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+        StagingRing.Range range = ring.write(data);
+
+        assertEquals(4, range.getOffset());
+        assertEquals(3, range.getSize());
+        assertEquals(3, data.remaining());
+
+        assertEquals(1, memory.get(4));
+        assertEquals(2, memory.get(5));
+        assertEquals(3, memory.get(6));
+    }
+
+    @Test
+    public void deleteReleasesPendingFences() {
+        StagingRing.Range a = this.ring.reserve(10);
+
+        this.ring.release(a);
+        this.ring.endFrame();
+
+        this.ring.delete();
+
+        assertTrue(this.fences.live.isEmpty());
+        assertEquals(0, this.ring.getReservedBytes());
+        assertEquals(0, this.ring.reserve(100).getOffset());
+    }
+
+    private static class FakeFenceSource implements StagingRing.FenceSource {
+        private final Set<Long> live = new HashSet<>();
+        private final Set<Long> signaled = new HashSet<>();
+
+        private long last;
+        private int created;
+
+        @Override
+        public long createFence() {
+            this.last++;
+            this.created++;
+            this.live.add(this.last);
+
+            return this.last;
+        }
+
+        @Override
+        public boolean isSignaled(long fence) {
+            assertTrue("fence was deleted", this.live.contains(fence));
+
+            return this.signaled.contains(fence);
+        }
+
+        @Override
+        public void deleteFence(long fence) {
+            assertTrue("fence was deleted twice", this.live.remove(fence));
+        }
+
+        private void signal(long fence) {
+            this.signaled.add(fence);
+        }
+
+        private void signalAll() {
+            this.signaled.addAll(this.live);
+        }
+    }
+}